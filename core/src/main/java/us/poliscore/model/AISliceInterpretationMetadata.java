@@ -2,12 +2,14 @@ package us.poliscore.model;
 
 import java.time.LocalDate;
 
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import lombok.Data;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import us.poliscore.model.bill.BillSlice;
 
 @Data
 @DynamoDbBean
+@RegisterForReflection
 public class AISliceInterpretationMetadata extends AIInterpretationMetadata {
 	
 	protected String start;
@@ -0,0 +1,46 @@
+package us.poliscore.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+
+/**
+ * A single marker item which the DatabaseBuilder bumps when a build finishes. Anything caching what the build wrote (the webapp's list
+ * responses) compares versions to know when its entries have gone stale.
+ */
+@Data
+@DynamoDbBean
+@RegisterForReflection
+@NoArgsConstructor
+@AllArgsConstructor
+public class DataVersion implements Persistable {
+	
+	public static final String ID_CLASS_PREFIX = "VER";
+	
+	public static final String ID = ID_CLASS_PREFIX + "/data";
+	
+	/**
+	 * When the build finished, in epoch millis.
+	 */
+	protected long version;
+	
+	public static DataVersion now()
+	{
+		return new DataVersion(System.currentTimeMillis());
+	}
+	
+	@DynamoDbPartitionKey
+	public String getId() { return ID; }
+	
+	public void setId(String id) { }
+	
+	@Override @JsonIgnore @DynamoDbSecondaryPartitionKey(indexNames = { Persistable.OBJECT_BY_DATE_INDEX }) public String getStorageBucket() { return ID_CLASS_PREFIX; }
+	@Override @JsonIgnore public void setStorageBucket(String prefix) { }
+
+}
@@ -40,6 +40,14 @@ public class Bill implements Persistable {
 	
 	public static final Double DEFAULT_IMPACT_LAW_WEIGHT = 100.0d;
 	
+	/**
+	 * The ddb attributes needed to render a bill in a listing. Leaves out the long explanation, slice and press interpretations, which are the
+	 * bulk of a bill item and are only shown on the bill's own page.
+	 */
+	public static final List<String> LIST_PROJECTION = List.of("namespace", "session", "type", "status", "number", "name", "sponsor", "cosponsors",
+			"introducedDate", "lastActionDate", "interpretation.id", "interpretation.billId", "interpretation.issueStats", "interpretation.genBillTitle",
+			"interpretation.shortExplain", "interpretation.author", "interpretation.confidence", "interpretation.origin");
+	
 	/**
 	 * An optional grouping mechanism, beyond the ID_CLASS_PREFIX concept, which allows you to group objects of the same class in different
 	 * "storage buckets". Really only used in DynamoDb at the moment, and is used for querying on the object indexes with objects that exist
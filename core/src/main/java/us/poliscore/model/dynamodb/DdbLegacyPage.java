@@ -0,0 +1,19 @@
+package us.poliscore.model.dynamodb;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the getter of a data page attribute which is no longer written, but may still be stored on old items. The page is read like a
+ * @DdbDataPage (its setter is handed whatever it holds) and is deleted by the first write of an item whose head doesn't yet have the page
+ * counts of the class's @DdbListPage attributes, so it's only supported on classes which have list pages. The getter is never called.
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DdbLegacyPage {
+
+	String value() default "1";
+
+}
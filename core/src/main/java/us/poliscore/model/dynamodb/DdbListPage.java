@@ -5,10 +5,18 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Marks a collection getter whose elements are spread across as many ddb pages as it takes to keep each page item under maxBytes once
+ * encoded with the attribute's converter. Pages are stored under the sort keys "&lt;attribute&gt;/00000", "&lt;attribute&gt;/00001" etc. and
+ * the number of pages is kept on the head item, so that pages left over from a longer version of the list are deleted when it's rewritten.
+ */
 @Target({ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface DdbListPage {
 
-	int value() default 600;
+	/**
+	 * The maximum encoded size of a single page. DynamoDb items are limited to 400 KB, so leave headroom for the keys and other attributes.
+	 */
+	int maxBytes() default 300 * 1024;
 
 }
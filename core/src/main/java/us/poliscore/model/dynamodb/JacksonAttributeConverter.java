@@ -15,6 +15,7 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import lombok.Cleanup;
 import lombok.SneakyThrows;
@@ -40,11 +41,11 @@ public class JacksonAttributeConverter <T> implements AttributeConverter<T> {
 	private static Logger logger = LoggerFactory.getLogger(JacksonAttributeConverter.class);
 	
     protected final Class<T> clazz;
-    protected static final ObjectMapper mapper = PoliscoreUtil.getObjectMapper();
-
-    static {
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
-    }
+    
+    // Sorted map entries keep the encoded bytes stable across JVMs, so that unchanged values produce unchanged ddb item fingerprints
+    protected static final ObjectMapper mapper = PoliscoreUtil.getObjectMapper().copy()
+    		.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true)
+    		.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
 
     public JacksonAttributeConverter(Class<T> clazz) {
         this.clazz = clazz;
@@ -90,10 +91,10 @@ public class JacksonAttributeConverter <T> implements AttributeConverter<T> {
 		@Override
 		@SneakyThrows
 	    public AttributeValue transformFrom(T input) {
-			@Cleanup val baos = new ByteArrayOutputStream();
-			@Cleanup val zos = new GZIPOutputStream(baos);
-			zos.write(mapper.writeValueAsString(input).getBytes());
-			zos.close();
+			val baos = new ByteArrayOutputStream();
+			
+			// Jackson streams straight into the compressor and closes it, which finishes the payload
+			mapper.writeValue(new GZIPOutputStream(baos), input);
 			
             return AttributeValue
                     .builder()
@@ -105,9 +106,9 @@ public class JacksonAttributeConverter <T> implements AttributeConverter<T> {
 	    @SneakyThrows
 	    public T transformTo(AttributeValue input) {
 	    	try {
-		    	@Cleanup val bais = new GZIPInputStream(new ByteArrayInputStream(input.b().asByteArray()));
+		    	@Cleanup val is = new GZIPInputStream(new ByteArrayInputStream(input.b().asByteArrayUnsafe()), 8192);
 		    	
-	        	return mapper.readValue(bais.readAllBytes(), this.clazz);
+	        	return mapper.readValue(is, this.clazz);
 	    	}
 	    	catch (Exception e) {
 	    		logger.error("Error transforming compressed attribute value", e);
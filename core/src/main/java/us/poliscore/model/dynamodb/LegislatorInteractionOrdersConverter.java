@@ -0,0 +1,111 @@
+package us.poliscore.model.dynamodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
+
+/**
+ * Stores LegislatorInteractionOrders as the list size and then each order's key followed by its ordinals as varints, gzipped. A
+ * legislator with a couple thousand interactions comes to a few tens of KB.
+ */
+public class LegislatorInteractionOrdersConverter implements AttributeConverter<LegislatorInteractionOrders> {
+	
+	@Override
+	@SneakyThrows
+	public AttributeValue transformFrom(LegislatorInteractionOrders input)
+	{
+		val baos = new ByteArrayOutputStream();
+		
+		try (val out = new DataOutputStream(new GZIPOutputStream(baos))) {
+			writeVarInt(out, input.getSize());
+			writeVarInt(out, input.getOrders().size());
+			
+			for (val order : input.getOrders().entrySet()) {
+				out.writeUTF(order.getKey());
+				writeVarInt(out, order.getValue().length);
+				
+				for (val ordinal : order.getValue()) {
+					writeVarInt(out, ordinal);
+				}
+			}
+		}
+		
+		return AttributeValue.builder().b(SdkBytes.fromByteArray(baos.toByteArray())).build();
+	}
+	
+	@Override
+	@SneakyThrows
+	public LegislatorInteractionOrders transformTo(AttributeValue input)
+	{
+		byte[] packed;
+		try (val is = new GZIPInputStream(new ByteArrayInputStream(input.b().asByteArrayUnsafe()), 8192)) {
+			packed = is.readAllBytes();
+		}
+		
+		val in = new DataInputStream(new ByteArrayInputStream(packed));
+		val result = new LegislatorInteractionOrders();
+		
+		result.setSize(readVarInt(in));
+		
+		val count = readVarInt(in);
+		for (int i = 0; i < count; ++i) {
+			val key = in.readUTF();
+			val order = new int[readVarInt(in)];
+			
+			for (int j = 0; j < order.length; ++j) {
+				order[j] = readVarInt(in);
+			}
+			
+			result.getOrders().put(key, order);
+		}
+		
+		return result;
+	}
+	
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		
+		out.writeByte(value);
+	}
+	
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int v = 0;
+		
+		for (int shift = 0; ; shift += 7) {
+			val b = in.readByte();
+			v |= (b & 0x7F) << shift;
+			
+			if ((b & 0x80) == 0) return v;
+		}
+	}
+	
+	@Override
+	public EnhancedType<LegislatorInteractionOrders> type()
+	{
+		return EnhancedType.of(LegislatorInteractionOrders.class);
+	}
+	
+	@Override
+	public AttributeValueType attributeValueType()
+	{
+		return AttributeValueType.B;
+	}
+}
@@ -0,0 +1,292 @@
+package us.poliscore.model.dynamodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.model.IssueStats;
+import us.poliscore.model.TrackedIssue;
+import us.poliscore.model.VoteStatus;
+import us.poliscore.model.dynamodb.JacksonAttributeConverter.CompressedLegislatorBillInteractionListConverter;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillCosponsor;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillVote;
+
+/**
+ * Stores a LegislatorBillInteractionList in a compact binary format instead of JSON. All strings (legislator ids, bill ids, bill names,
+ * explanations, vote statuses and issue names) go into a string table and are referenced by index, dates are stored as epoch days, status
+ * progress and cosponsor percent as fixed width floats, and issue stats as a bitmask of the issues present followed by their ratings.
+ * The packed body is then gzipped.
+ *
+ * Payloads start with the FORMAT_HEADER byte. The first version of the format (FORMAT_HEADER_V1) wrote strings with writeUTF, which can't
+ * hold 64KB, and an int bitmask, and is still read. Anything else is assumed to be one of the older compressed JSON blobs and is read as such.
+ */
+public class PackedLegislatorBillInteractionListConverter implements AttributeConverter<LegislatorBillInteractionList> {
+	
+	/**
+	 * Must never collide with the first byte of the gzip magic number. Strings are length prefixed UTF-8, and issue bitmasks are longs.
+	 */
+	public static final byte FORMAT_HEADER = 0x51;
+	
+	public static final byte FORMAT_HEADER_V1 = 0x50;
+	
+	private static final byte TYPE_VOTE = 0;
+	
+	private static final byte TYPE_SPONSOR = 1;
+	
+	private static final byte TYPE_COSPONSOR = 2;
+	
+	private static final CompressedLegislatorBillInteractionListConverter legacy = new CompressedLegislatorBillInteractionListConverter();
+	
+	static {
+		// A bit per issue, leaving the sign bit clear so that no bitmask is mistaken for the -1 written for missing stats
+		if (TrackedIssue.values().length >= Long.SIZE) {
+			throw new IllegalStateException("Issue bitmasks hold at most " + (Long.SIZE - 1) + " issues, there are " + TrackedIssue.values().length);
+		}
+	}
+	
+	@Override
+	@SneakyThrows
+	public AttributeValue transformFrom(LegislatorBillInteractionList input)
+	{
+		val strings = new LinkedHashMap<String, Integer>();
+		val body = new ByteArrayOutputStream();
+		val out = new DataOutputStream(body);
+		
+		writeVarInt(out, input.size());
+		
+		for (val interact : input) {
+			if (interact instanceof LegislatorBillVote) {
+				out.writeByte(TYPE_VOTE);
+				writeString(out, strings, ((LegislatorBillVote) interact).getVoteStatus().name());
+			} else if (interact instanceof LegislatorBillSponsor) {
+				out.writeByte(TYPE_SPONSOR);
+			} else if (interact instanceof LegislatorBillCosponsor) {
+				out.writeByte(TYPE_COSPONSOR);
+			} else {
+				throw new UnsupportedOperationException("Unknown interaction type " + interact.getClass().getName());
+			}
+			
+			writeString(out, strings, interact.getLegId());
+			writeString(out, strings, interact.getBillId());
+			writeString(out, strings, interact.getBillName());
+			writeString(out, strings, interact.getShortExplain());
+			out.writeInt(interact.getDate() == null ? Integer.MIN_VALUE : (int) interact.getDate().toEpochDay());
+			out.writeFloat(interact.getStatusProgress());
+			out.writeFloat(interact.getCosponsorPercent());
+			
+			val stats = interact.getIssueStats();
+			if (stats == null) {
+				writeVarInt(out, -1);
+			} else {
+				val issues = TrackedIssue.values();
+				long mask = 0;
+				for (int i = 0; i < issues.length; ++i) {
+					if (stats.hasStat(issues[i])) mask |= (1L << i);
+				}
+				
+				writeVarInt(out, mask);
+				
+				for (int i = 0; i < issues.length; ++i) {
+					if (stats.hasStat(issues[i])) writeVarInt(out, stats.getStat(issues[i]));
+				}
+			}
+		}
+		
+		out.flush();
+		
+		// The string table, and the issue names the stat bitmasks refer to, go first so the reader can resolve references as it goes
+		val packed = new ByteArrayOutputStream(body.size() + strings.size() * 32);
+		val header = new DataOutputStream(packed);
+		
+		writeVarInt(header, strings.size());
+		for (val s : strings.keySet()) {
+			writeUtf8(header, s);
+		}
+		
+		writeVarInt(header, TrackedIssue.values().length);
+		for (val issue : TrackedIssue.values()) {
+			writeUtf8(header, issue.name());
+		}
+		
+		body.writeTo(header);
+		header.flush();
+		
+		val baos = new ByteArrayOutputStream();
+		baos.write(FORMAT_HEADER);
+		
+		try (val compressed = new GZIPOutputStream(baos)) {
+			packed.writeTo(compressed);
+		}
+		
+		return AttributeValue.builder().b(SdkBytes.fromByteArray(baos.toByteArray())).build();
+	}
+	
+	@Override
+	@SneakyThrows
+	public LegislatorBillInteractionList transformTo(AttributeValue input)
+	{
+		val payload = input.b().asByteArrayUnsafe();
+		
+		if (payload.length == 0 || (payload[0] != FORMAT_HEADER && payload[0] != FORMAT_HEADER_V1)) {
+			return legacy.transformTo(input);
+		}
+		
+		val v1 = payload[0] == FORMAT_HEADER_V1;
+		
+		byte[] packed;
+		try (val is = new GZIPInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1), 8192)) {
+			packed = is.readAllBytes();
+		}
+		
+		// Decoding reads a byte at a time, which is far cheaper from an array than through the inflater
+		val in = new DataInputStream(new ByteArrayInputStream(packed));
+		
+		val strings = new String[readVarInt(in)];
+		for (int i = 0; i < strings.length; ++i) {
+			strings[i] = v1 ? in.readUTF() : readUtf8(in);
+		}
+		
+		val issues = new TrackedIssue[readVarInt(in)];
+		for (int i = 0; i < issues.length; ++i) {
+			issues[i] = TrackedIssue.valueOf(v1 ? in.readUTF() : readUtf8(in));
+		}
+		
+		val size = readVarInt(in);
+		val result = new LegislatorBillInteractionList();
+		result.ensureCapacity(size);
+		
+		for (int n = 0; n < size; ++n) {
+			val type = in.readByte();
+			
+			LegislatorBillInteraction interact;
+			if (type == TYPE_VOTE) {
+				val vote = new LegislatorBillVote();
+				vote.setVoteStatus(VoteStatus.valueOf(readString(in, strings)));
+				interact = vote;
+			} else if (type == TYPE_SPONSOR) {
+				interact = new LegislatorBillSponsor();
+			} else if (type == TYPE_COSPONSOR) {
+				interact = new LegislatorBillCosponsor();
+			} else {
+				throw new IOException("Unknown interaction type " + type);
+			}
+			
+			interact.setLegId(readString(in, strings));
+			interact.setBillId(readString(in, strings));
+			interact.setBillName(readString(in, strings));
+			interact.setShortExplain(readString(in, strings));
+			
+			val epochDay = in.readInt();
+			if (epochDay != Integer.MIN_VALUE) interact.setDate(LocalDate.ofEpochDay(epochDay));
+			
+			interact.setStatusProgress(in.readFloat());
+			interact.setCosponsorPercent(in.readFloat());
+			
+			val mask = readVarLong(in);
+			if (mask != -1) {
+				val stats = new IssueStats();
+				
+				for (int i = 0; i < issues.length; ++i) {
+					if ((mask & (1L << i)) != 0) stats.setStat(issues[i], readVarInt(in));
+				}
+				
+				interact.setIssueStats(stats);
+			}
+			
+			result.add(interact);
+		}
+		
+		return result;
+	}
+	
+	private static void writeString(DataOutputStream out, Map<String, Integer> strings, String s) throws IOException
+	{
+		// 0 is reserved for null
+		writeVarInt(out, s == null ? 0 : strings.computeIfAbsent(s, k -> strings.size()) + 1);
+	}
+	
+	private static String readString(DataInputStream in, String[] strings) throws IOException
+	{
+		val ref = readVarInt(in);
+		return ref == 0 ? null : strings[ref - 1];
+	}
+	
+	private static void writeUtf8(DataOutputStream out, String s) throws IOException
+	{
+		val bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readUtf8(DataInputStream in) throws IOException
+	{
+		val bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Zigzag encoded varint, so small negative ratings stay small too. Ints and longs encode the same way, so a value written as an int can
+	 * be read as a long.
+	 */
+	private static void writeVarInt(DataOutputStream out, long value) throws IOException
+	{
+		long v = (value << 1) ^ (value >> 63);
+		
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		
+		out.writeByte((int) v);
+	}
+	
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		return (int) readVarLong(in);
+	}
+	
+	private static long readVarLong(DataInputStream in) throws IOException
+	{
+		long v = 0;
+		
+		for (int shift = 0; ; shift += 7) {
+			val b = in.readByte();
+			v |= (long) (b & 0x7F) << shift;
+			
+			if ((b & 0x80) == 0) break;
+		}
+		
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	@Override
+	public EnhancedType<LegislatorBillInteractionList> type()
+	{
+		return EnhancedType.of(LegislatorBillInteractionList.class);
+	}
+	
+	@Override
+	public AttributeValueType attributeValueType()
+	{
+		return AttributeValueType.B;
+	}
+}
@@ -7,6 +7,7 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import lombok.Cleanup;
 import lombok.SneakyThrows;
@@ -21,7 +22,8 @@ import us.poliscore.model.Party;
 import us.poliscore.model.session.SessionInterpretation.PartyInterpretation;
 
 public class PartyStatsMapAttributeConverter implements AttributeConverter<Map<Party, PartyInterpretation>> {
-  protected static final ObjectMapper mapper = PoliscoreUtil.getObjectMapper();
+  // Its own copy, so that ordering the map entries (for stable item fingerprints) can't leak into anyone else's JSON
+  private static final ObjectMapper mapper = PoliscoreUtil.getObjectMapper().copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
 
   @Override
   @SneakyThrows
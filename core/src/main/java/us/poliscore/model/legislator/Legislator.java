@@ -3,10 +3,14 @@ package us.poliscore.model.legislator;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -20,6 +24,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.val;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbConvertedBy;
@@ -35,10 +40,13 @@ import us.poliscore.model.Party;
 import us.poliscore.model.Persistable;
 import us.poliscore.model.TrackedIssue;
 import us.poliscore.model.dynamodb.DdbDataPage;
+import us.poliscore.model.dynamodb.DdbLegacyPage;
+import us.poliscore.model.dynamodb.DdbListPage;
 import us.poliscore.model.dynamodb.IssueStatsMapLongAttributeConverter;
-import us.poliscore.model.dynamodb.JacksonAttributeConverter.CompressedLegislatorBillInteractionListConverter;
+import us.poliscore.model.dynamodb.LegislatorInteractionOrdersConverter;
 import us.poliscore.model.dynamodb.JacksonAttributeConverter.LegislatorBillInteractionSetConverterProvider;
 import us.poliscore.model.dynamodb.JacksonAttributeConverter.LegislatorLegislativeTermSortedSetConverter;
+import us.poliscore.model.dynamodb.PackedLegislatorBillInteractionListConverter;
 
 @Data
 @DynamoDbBean
@@ -48,6 +56,27 @@ public class Legislator implements Persistable, Comparable<Legislator> {
 	
 	public static final String ID_CLASS_PREFIX = "LEG";
 	
+	public static final int DEFAULT_INTERACTIONS_PAGE_SIZE = 25;
+	
+	/**
+	 * One more than the default page, so that the default first page can also tell whether there's more data without loading the list.
+	 */
+	public static final int INTERACTIONS_PREVIEW_SIZE = DEFAULT_INTERACTIONS_PAGE_SIZE + 1;
+	
+	public static final String INTERACTION_ORDERS_PAGE = "3";
+	
+	/**
+	 * The order interactions are shown in when a legislator is first viewed.
+	 */
+	public static final Comparator<LegislatorBillInteraction> DEFAULT_INTERACTION_ORDER = Comparator.comparing(LegislatorBillInteraction::getRatingAbs).reversed();
+	
+	/**
+	 * The ddb attributes needed to render a legislator in a listing. Leaves out the long explanation and interpretation metadata (interactions
+	 * live on separate data pages and are never part of an index query).
+	 */
+	public static final List<String> LIST_PROJECTION = List.of("name", "session", "bioguideId", "thomasId", "lisId", "wikidataId", "birthday",
+			"impactMap", "terms", "interpretation.id", "interpretation.issueStats", "interpretation.shortExplain", "interpretation.hash");
+	
 	/**
 	 * An optional grouping mechanism, beyond the ID_CLASS_PREFIX concept, which allows you to group objects of the same class in different
 	 * "storage buckets". Really only used in DynamoDb at the moment, and is used for querying on the object indexes with objects that exist
@@ -84,39 +113,69 @@ public class Legislator implements Persistable, Comparable<Legislator> {
 	@Getter(onMethod = @__({ @DynamoDbConvertedBy(LegislatorLegislativeTermSortedSetConverter.class) }))
 	protected LegislatorLegislativeTermSortedSet terms;
 	
-	private LegislatorBillInteractionList interactionsPrivate1 = new LegislatorBillInteractionList();
-	@DdbDataPage
-	@DynamoDbConvertedBy(CompressedLegislatorBillInteractionListConverter.class)
+	private LegislatorBillInteractionList interactions = new LegislatorBillInteractionList();
+	
+	/**
+	 * The first INTERACTIONS_PREVIEW_SIZE interactions in DEFAULT_INTERACTION_ORDER, kept on the head item so that the first view of a
+	 * legislator can be served from a single GetItem. Legislators which have a preview also have their interactions stored in
+	 * DEFAULT_INTERACTION_ORDER and their interpretation already linked (see LegislatorBillLinker). Null on items written before that.
+	 */
+	@Getter(onMethod = @__({ @JsonIgnore, @DynamoDbConvertedBy(PackedLegislatorBillInteractionListConverter.class) }))
+	@Setter(onMethod = @__({ @JsonIgnore }))
+	protected LegislatorBillInteractionList interactionsPreview;
+	
+	/**
+	 * Precomputed sort orders of the interactions as stored, so the webapp can page them in any order without sorting. Lives on its own data
+	 * page, which is only read when paging in an order other than DEFAULT_INTERACTION_ORDER. Null on items written before it existed.
+	 */
+	@Getter(onMethod = @__({ @JsonIgnore, @DdbDataPage(INTERACTION_ORDERS_PAGE), @DynamoDbConvertedBy(LegislatorInteractionOrdersConverter.class) }))
+	@Setter(onMethod = @__({ @JsonIgnore }))
+	protected LegislatorInteractionOrders interactionOrders;
+	
+	/**
+	 * Legacy data page from before interactions were stored as list pages. Interactions read from an old item are kept until list pages
+	 * replace them, and the page is deleted by the item's next write.
+	 */
+	@DdbLegacyPage
+	@DynamoDbConvertedBy(PackedLegislatorBillInteractionListConverter.class)
 	@JsonIgnore
 	public LegislatorBillInteractionList getInteractionsPrivate1() {
-		return interactionsPrivate1;
+		return null;
 	}
-	private LegislatorBillInteractionList interactionsPrivate2 = new LegislatorBillInteractionList();
-	@DdbDataPage("2")
-	@DynamoDbConvertedBy(CompressedLegislatorBillInteractionListConverter.class)
+	@JsonIgnore
+	public void setInteractionsPrivate1(LegislatorBillInteractionList list) {
+		interactions.addAll(list);
+	}
+	
+	/**
+	 * Overflow page from when interactions were split at 1000 items. Appended on read and deleted, same as page 1.
+	 */
+	@DdbLegacyPage("2")
+	@DynamoDbConvertedBy(PackedLegislatorBillInteractionListConverter.class)
 	@JsonIgnore
 	public LegislatorBillInteractionList getInteractionsPrivate2() {
-		return interactionsPrivate2;
+		return null;
+	}
+	@JsonIgnore
+	public void setInteractionsPrivate2(LegislatorBillInteractionList list) {
+		interactions.addAll(list);
 	}
 	
+	/**
+	 * All of the legislator's interactions, in the packed binary format, split across as many list pages as they need.
+	 */
 	@JsonProperty
+	@DdbListPage
+	@DynamoDbConvertedBy(PackedLegislatorBillInteractionListConverter.class)
 	public LegislatorBillInteractionList getInteractions()
 	{
-		var result = new LegislatorBillInteractionList();
-		result.addAll(interactionsPrivate1);
-		result.addAll(interactionsPrivate2);
-		return result;
+		return interactions;
 	}
 	
 	@JsonProperty
 	public void setInteractions(LegislatorBillInteractionList list)
 	{
-		interactionsPrivate1 = new LegislatorBillInteractionList();
-		interactionsPrivate1.addAll(list.subList(0, Math.min(1000, list.size())));
-		
-		interactionsPrivate2 = new LegislatorBillInteractionList();
-		if (list.size() > 1000)
-			interactionsPrivate2.addAll(list.subList(1000, list.size()));
+		interactions = list;
 	}
 	
 	@DynamoDbPartitionKey
@@ -132,12 +191,6 @@ public class Legislator implements Persistable, Comparable<Legislator> {
 	
 	public void addBillInteraction(LegislatorBillInteraction incoming)
 	{
-		var interactions = interactionsPrivate1;
-		if (interactions.size() >= 1000)
-		{
-			interactions = interactionsPrivate2;
-		}
-		
 		interactions.removeIf(existing -> incoming.supercedes(existing));
 		
 		if (!interactions.contains(incoming)) {
@@ -174,10 +227,24 @@ public class Legislator implements Persistable, Comparable<Legislator> {
 		if (this.terms == null || this.terms.size() == 0) return false;
 		
 		return this.terms.stream().anyMatch(t -> t.getStartDate().isBefore(session.getEndDate()) && t.getEndDate().isAfter(session.getStartDate()));
-		
+
 //		return Integer.valueOf(session.getNumber()).equals(this.session);
 	}
 	
+	/**
+	 * Up to pageSize + 1 interactions from start in DEFAULT_INTERACTION_ORDER (the extra one telling whether there's more data), if the
+	 * preview holds all of them. Empty when the full list is needed.
+	 */
+	public Optional<LegislatorBillInteractionList> previewSlice(int start, int pageSize)
+	{
+		if (interactionsPreview == null) return Optional.empty();
+		
+		// Previews were once DEFAULT_INTERACTIONS_PAGE_SIZE long, so only a shorter one is known to be the whole list
+		if (start + pageSize >= interactionsPreview.size() && interactionsPreview.size() >= DEFAULT_INTERACTIONS_PAGE_SIZE) return Optional.empty();
+		
+		return Optional.of(interactionsPreview.stream().skip(start).limit(pageSize + 1).collect(Collectors.toCollection(LegislatorBillInteractionList::new)));
+	}
+	
 	public static String generateId(LegislativeNamespace ns, Integer session, String bioguideId)
 	{
 		return generateId(ns, session.toString(), bioguideId);
@@ -256,7 +323,7 @@ public class Legislator implements Persistable, Comparable<Legislator> {
 		protected Party party;
 		
 		protected LegislativeChamber chamber;
-
+		
 		@Override
 		public int compareTo(LegislativeTerm o) {
 			return this.startDate.compareTo(o.startDate);
@@ -272,10 +339,10 @@ public class Legislator implements Persistable, Comparable<Legislator> {
 	
 	@DynamoDbBean
 	public static class LegislatorLegislativeTermSortedSet extends TreeSet<LegislativeTerm> {}
-
+	
 	@Override
 	public int compareTo(Legislator o) {
 		return Integer.valueOf(this.getRating()).compareTo(o.getRating());
 	}
-	
+
 }
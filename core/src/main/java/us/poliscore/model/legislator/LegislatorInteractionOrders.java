@@ -0,0 +1,136 @@
+package us.poliscore.model.legislator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+import us.poliscore.model.Persistable;
+import us.poliscore.model.TrackedIssue;
+
+/**
+ * Every order a legislator's interactions can be paged through, precomputed by the databuilder so that the webapp can serve any page by
+ * slicing instead of sorting. Each order is a permutation of ordinals into the interactions list as stored, in ascending order. Descending
+ * pages are read from the end.
+ *
+ * Hot decays every interaction by the same factor as time passes, so its order stays valid after the build.
+ */
+@Getter
+@Setter
+@RegisterForReflection
+public class LegislatorInteractionOrders {
+	
+	/**
+	 * The index the webapp pages per issue ratings through, with the issue as the sort key.
+	 */
+	public static final String TRACKED_ISSUE_INDEX = "TrackedIssue";
+	
+	public static final List<String> INDEXES = List.of(Persistable.OBJECT_BY_DATE_INDEX, Persistable.OBJECT_BY_RATING_INDEX, Persistable.OBJECT_BY_RATING_ABS_INDEX,
+			Persistable.OBJECT_BY_IMPACT_INDEX, Persistable.OBJECT_BY_IMPACT_ABS_INDEX, Persistable.OBJECT_BY_HOT_INDEX);
+	
+	/**
+	 * The length of the interactions list the orders were computed over, which they're only valid for.
+	 */
+	private int size;
+	
+	private Map<String, int[]> orders = new LinkedHashMap<String, int[]>();
+	
+	public static LegislatorInteractionOrders of(List<LegislatorBillInteraction> interactions)
+	{
+		val result = new LegislatorInteractionOrders();
+		result.size = interactions.size();
+		
+		val keys = new ArrayList<String[]>();
+		INDEXES.forEach(index -> keys.add(new String[] { index, null }));
+		Arrays.stream(TrackedIssue.values()).forEach(issue -> keys.add(new String[] { TRACKED_ISSUE_INDEX, issue.name() }));
+		
+		for (val key : keys) {
+			val comparator = comparator(key[0], key[1]);
+			val filter = filter(key[0], key[1]);
+			
+			// Sorting is stable, so ties keep their stored order
+			result.orders.put(key(key[0], key[1]), IntStream.range(0, interactions.size())
+					.filter(i -> filter.test(interactions.get(i)))
+					.boxed()
+					.sorted((a, b) -> comparator.compare(interactions.get(a), interactions.get(b)))
+					.mapToInt(Integer::intValue)
+					.toArray());
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * The ascending order for the index, if it was precomputed.
+	 */
+	public Optional<int[]> get(String index, String sortKey)
+	{
+		return Optional.ofNullable(orders.get(key(index, sortKey)));
+	}
+	
+	public static String key(String index, String sortKey)
+	{
+		return TRACKED_ISSUE_INDEX.equals(index) ? index + "/" + sortKey : index;
+	}
+	
+	public static Comparator<LegislatorBillInteraction> comparator(String index, String sortKey)
+	{
+		if (index.equals(Persistable.OBJECT_BY_DATE_INDEX)) {
+			return Comparator.comparing(LegislatorBillInteraction::getDate);
+		} else if (index.equals(Persistable.OBJECT_BY_RATING_INDEX)) {
+			return Comparator.comparing(LegislatorBillInteraction::getRating);
+		} else if (index.equals(Persistable.OBJECT_BY_RATING_ABS_INDEX)) {
+			return Comparator.comparing(LegislatorBillInteraction::getRatingAbs);
+		} else if (index.equals(Persistable.OBJECT_BY_IMPACT_INDEX)) {
+			return Comparator.comparing(LegislatorBillInteraction::getImpact);
+		} else if (index.equals(Persistable.OBJECT_BY_IMPACT_ABS_INDEX)) {
+			return Comparator.comparing(LegislatorBillInteraction::getImpactAbs);
+		} else if (index.equals(Persistable.OBJECT_BY_HOT_INDEX)) {
+			return Comparator.comparing(LegislatorBillInteraction::getHot);
+		} else if (index.equals(TRACKED_ISSUE_INDEX)) {
+			val issue = TrackedIssue.valueOf(sortKey);
+			return (a, b) -> Integer.valueOf(a.getRating(issue)).compareTo(b.getRating(issue));
+		} else {
+			throw new UnsupportedOperationException(index);
+		}
+	}
+	
+	/**
+	 * Which interactions appear in the index at all. Per issue orders only include interactions with a stat for the issue.
+	 */
+	public static Predicate<LegislatorBillInteraction> filter(String index, String sortKey)
+	{
+		if (index.equals(TRACKED_ISSUE_INDEX)) {
+			val issue = TrackedIssue.valueOf(sortKey);
+			return lbi -> lbi.getIssueStats().hasStat(issue);
+		}
+		
+		return lbi -> true;
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if (!(o instanceof LegislatorInteractionOrders)) return false;
+		
+		val other = (LegislatorInteractionOrders) o;
+		if (size != other.size || !orders.keySet().equals(other.orders.keySet())) return false;
+		
+		return orders.entrySet().stream().allMatch(e -> Arrays.equals(e.getValue(), other.orders.get(e.getKey())));
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return orders.entrySet().stream().mapToInt(e -> e.getKey().hashCode() ^ Arrays.hashCode(e.getValue())).sum() + size;
+	}
+}
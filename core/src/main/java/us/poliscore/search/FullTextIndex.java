@@ -0,0 +1,323 @@
+package us.poliscore.search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import lombok.val;
+
+/**
+ * A BM25 full-text index over interpretations, built ahead of time by the databuilder and searched by the webapp straight out of a (memory
+ * mapped) ByteBuffer, so that nothing but the scores of the query at hand lives on the heap.
+ *
+ * Each document is an id, a name and a summary, which are stored for display, plus the text it's searched by. Terms in the name count
+ * TITLE_WEIGHT times. Terms are lower cased letters and digits, less stop words and plural endings.
+ *
+ * Format, big endian with absolute offsets: int VERSION, int document count, float average document length, int term count, then for each
+ * document its stored offset and length, then for each term (ordered by UTF-8 bytes) its entry offset. A term entry is the term's UTF-8 bytes,
+ * its document frequency and its postings, which are document ordinal deltas each followed by the term frequency. A stored document is its
+ * id, name and summary. Numbers within entries are varints and strings are a varint length followed by UTF-8.
+ */
+public class FullTextIndex {
+	
+	public static final int VERSION = 1;
+	
+	public static float K1 = 1.2f;
+	
+	public static float B = 0.75f;
+	
+	public static int TITLE_WEIGHT = 3;
+	
+	private static final int HEADER_SIZE = 16;
+	
+	private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "been", "by", "for", "from", "has", "have",
+			"in", "into", "is", "it", "its", "of", "on", "or", "that", "the", "their", "this", "to", "was", "were", "which", "will", "with");
+	
+	private final ByteBuffer buffer;
+	
+	private final int docCount;
+	
+	private final float averageLength;
+	
+	private final int termCount;
+	
+	private final int termsAt;
+	
+	private FullTextIndex(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		
+		val version = buffer.getInt(0);
+		if (version != VERSION) throw new IllegalArgumentException("Unsupported full-text index version " + version);
+		
+		docCount = buffer.getInt(4);
+		averageLength = buffer.getFloat(8);
+		termCount = buffer.getInt(12);
+		termsAt = HEADER_SIZE + 8 * docCount;
+	}
+	
+	/**
+	 * An index over the buffer, which is only ever read with absolute gets so that it can be shared between threads.
+	 */
+	public static FullTextIndex of(ByteBuffer buffer)
+	{
+		return new FullTextIndex(buffer);
+	}
+	
+	public int size()
+	{
+		return docCount;
+	}
+	
+	/**
+	 * The documents ranked start through start + count - 1 for the query, best first. Documents match any of the query's terms.
+	 */
+	public List<SearchHit> search(String query, int start, int count)
+	{
+		val results = new ArrayList<SearchHit>();
+		if (start < 0 || count <= 0 || docCount == 0) return results;
+		
+		val scores = new float[docCount];
+		
+		for (val term : new LinkedHashSet<String>(tokenize(query))) {
+			val entry = find(term);
+			if (entry < 0) continue;
+			
+			val pos = new int[] { entry };
+			val length = readVarInt(pos);
+			pos[0] += length;
+			
+			val df = readVarInt(pos);
+			val idf = (float) Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+			
+			int doc = 0;
+			for (int p = 0; p < df; ++p) {
+				doc += readVarInt(pos);
+				val tf = readVarInt(pos);
+				val norm = K1 * (1 - B + B * buffer.getInt(HEADER_SIZE + 8 * doc + 4) / averageLength);
+				
+				scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+			}
+		}
+		
+		// The worst of the best so far on top, ordered by score and then by ordinal
+		val limit = start + count;
+		val best = new PriorityQueue<Integer>(limit + 1, (a, b) -> scores[a] != scores[b] ? Float.compare(scores[a], scores[b]) : Integer.compare(b, a));
+		
+		for (int doc = 0; doc < docCount; ++doc) {
+			if (scores[doc] <= 0) continue;
+			if (best.size() == limit && scores[doc] <= scores[best.peek()]) continue;
+			
+			best.add(doc);
+			if (best.size() > limit) best.poll();
+		}
+		
+		val ranked = new int[best.size()];
+		for (int i = ranked.length - 1; i >= 0; --i) {
+			ranked[i] = best.poll();
+		}
+		
+		for (int i = start; i < ranked.length; ++i) {
+			val pos = new int[] { buffer.getInt(HEADER_SIZE + 8 * ranked[i]) };
+			results.add(new SearchHit(readString(pos), readString(pos), readString(pos), scores[ranked[i]]));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * The offset of the term's entry, or -1 if no document has it.
+	 */
+	private int find(String term)
+	{
+		val bytes = term.getBytes(StandardCharsets.UTF_8);
+		int lo = 0, hi = termCount - 1;
+		
+		while (lo <= hi) {
+			val mid = (lo + hi) >>> 1;
+			val entry = buffer.getInt(termsAt + 4 * mid);
+			val pos = new int[] { entry };
+			val length = readVarInt(pos);
+			
+			int cmp = 0;
+			for (int i = 0; i < Math.min(length, bytes.length) && cmp == 0; ++i) {
+				cmp = Integer.compare(buffer.get(pos[0] + i) & 0xFF, bytes[i] & 0xFF);
+			}
+			if (cmp == 0) cmp = Integer.compare(length, bytes.length);
+			
+			if (cmp < 0) lo = mid + 1;
+			else if (cmp > 0) hi = mid - 1;
+			else return entry;
+		}
+		
+		return -1;
+	}
+	
+	private int readVarInt(int[] pos)
+	{
+		int v = 0;
+		
+		for (int shift = 0; ; shift += 7) {
+			val b = buffer.get(pos[0]++);
+			v |= (b & 0x7F) << shift;
+			
+			if ((b & 0x80) == 0) return v;
+		}
+	}
+	
+	private String readString(int[] pos)
+	{
+		val bytes = new byte[readVarInt(pos)];
+		buffer.get(pos[0], bytes);
+		pos[0] += bytes.length;
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	public static List<String> tokenize(String text)
+	{
+		val terms = new ArrayList<String>();
+		if (text == null) return terms;
+		
+		val lower = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		
+		for (int i = 0; i <= lower.length(); ++i) {
+			val inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+			
+			if (inWord && start == -1) {
+				start = i;
+			} else if (!inWord && start != -1) {
+				val word = lower.substring(start, i);
+				if (word.length() > 1 && !STOP_WORDS.contains(word)) terms.add(stem(word));
+				
+				start = -1;
+			}
+		}
+		
+		return terms;
+	}
+	
+	/**
+	 * Strips plural endings, so that "firearms" finds "firearm" and "policies" finds "policy".
+	 */
+	private static String stem(String word)
+	{
+		if (word.length() > 4 && word.endsWith("ies")) return word.substring(0, word.length() - 3) + "y";
+		if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")) return word.substring(0, word.length() - 1);
+		
+		return word;
+	}
+	
+	public static class Builder {
+		
+		private final List<String[]> stored = new ArrayList<String[]>();
+		
+		private final List<Integer> lengths = new ArrayList<Integer>();
+		
+		/**
+		 * Postings by term, as pairs of document ordinal and term frequency.
+		 */
+		private final HashMap<String, List<int[]>> postings = new HashMap<String, List<int[]>>();
+		
+		public Builder add(String id, String name, String summary, String... texts)
+		{
+			val doc = stored.size();
+			val frequencies = new HashMap<String, Integer>();
+			
+			tokenize(name).forEach(t -> frequencies.merge(t, TITLE_WEIGHT, Integer::sum));
+			for (val text : texts) {
+				tokenize(text).forEach(t -> frequencies.merge(t, 1, Integer::sum));
+			}
+			
+			stored.add(new String[] { id, name == null ? "" : name, summary == null ? "" : summary });
+			lengths.add(frequencies.values().stream().mapToInt(Integer::intValue).sum());
+			frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, k -> new ArrayList<int[]>()).add(new int[] { doc, tf }));
+			
+			return this;
+		}
+		
+		public void write(OutputStream os) throws IOException
+		{
+			val terms = postings.keySet().stream().map(t -> t.getBytes(StandardCharsets.UTF_8)).sorted(Arrays::compareUnsigned).toList();
+			
+			val entries = new ByteArrayOutputStream();
+			val entryOffsets = new int[terms.size()];
+			
+			for (int t = 0; t < terms.size(); ++t) {
+				entryOffsets[t] = entries.size();
+				
+				val termPostings = postings.get(new String(terms.get(t), StandardCharsets.UTF_8));
+				writeBytes(entries, terms.get(t));
+				writeVarInt(entries, termPostings.size());
+				
+				int last = 0;
+				for (val posting : termPostings) {
+					writeVarInt(entries, posting[0] - last);
+					writeVarInt(entries, posting[1]);
+					last = posting[0];
+				}
+			}
+			
+			val docs = new ByteArrayOutputStream();
+			val docOffsets = new int[stored.size()];
+			
+			for (int d = 0; d < stored.size(); ++d) {
+				docOffsets[d] = docs.size();
+				
+				for (val s : stored.get(d)) {
+					writeBytes(docs, s.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			
+			val entriesAt = HEADER_SIZE + 8 * stored.size() + 4 * terms.size();
+			val docsAt = entriesAt + entries.size();
+			val out = new DataOutputStream(os);
+			
+			out.writeInt(VERSION);
+			out.writeInt(stored.size());
+			out.writeFloat(stored.isEmpty() ? 0 : (float) lengths.stream().mapToInt(Integer::intValue).average().getAsDouble());
+			out.writeInt(terms.size());
+			
+			for (int d = 0; d < stored.size(); ++d) {
+				out.writeInt(docsAt + docOffsets[d]);
+				out.writeInt(lengths.get(d));
+			}
+			
+			for (val offset : entryOffsets) {
+				out.writeInt(entriesAt + offset);
+			}
+			
+			entries.writeTo(out);
+			docs.writeTo(out);
+			out.flush();
+		}
+		
+		private static void writeBytes(ByteArrayOutputStream out, byte[] bytes)
+		{
+			writeVarInt(out, bytes.length);
+			out.writeBytes(bytes);
+		}
+		
+		private static void writeVarInt(ByteArrayOutputStream out, int value)
+		{
+			while ((value & ~0x7F) != 0) {
+				out.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			
+			out.write(value);
+		}
+	}
+}
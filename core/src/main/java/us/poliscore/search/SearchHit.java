@@ -0,0 +1,23 @@
+package us.poliscore.search;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A FullTextIndex search result. The kind of object matched can be told from its id's class prefix.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@RegisterForReflection
+public class SearchHit {
+	private String id;
+	
+	private String name;
+	
+	private String summary;
+	
+	private float score;
+}
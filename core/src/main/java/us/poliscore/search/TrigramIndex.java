@@ -0,0 +1,302 @@
+package us.poliscore.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import lombok.Getter;
+import lombok.val;
+
+/**
+ * A type-ahead search over (id, name) entries, built ahead of time by the databuilder and loaded by the webapp as a binary resource.
+ *
+ * An entry matches a query when its normalized (lower cased and trimmed) name or id contains the normalized query. Every trigram of the
+ * normalized names and ids is indexed, so queries of three or more characters only look at the entries holding all of their trigrams, and
+ * shorter ones scan the normalized strings. Matches are ranked by the edit distance of their name to the query and only the best limit are
+ * kept, skipping the distance computation for entries whose length alone rules them out.
+ *
+ * Format: int VERSION, entry count, then for each entry its id, name, normalized id and normalized name, then the trigram count and for
+ * each trigram (in ascending order) its packed chars and its posting list of entry ordinals, delta encoded as varints.
+ */
+public class TrigramIndex {
+	
+	public static final int VERSION = 1;
+	
+	@Getter
+	private final String[] ids;
+	
+	@Getter
+	private final String[] names;
+	
+	private final String[] normalizedIds;
+	
+	private final String[] normalizedNames;
+	
+	/**
+	 * Trigrams packed into the low 48 bits, sorted so that postings can be found by binary search.
+	 */
+	private final long[] trigrams;
+	
+	private final int[][] postings;
+	
+	private TrigramIndex(String[] ids, String[] names, String[] normalizedIds, String[] normalizedNames, long[] trigrams, int[][] postings)
+	{
+		this.ids = ids;
+		this.names = names;
+		this.normalizedIds = normalizedIds;
+		this.normalizedNames = normalizedNames;
+		this.trigrams = trigrams;
+		this.postings = postings;
+	}
+	
+	public static String normalize(String s)
+	{
+		return s.toLowerCase(Locale.ROOT).trim();
+	}
+	
+	/**
+	 * Indexes the entries, which are lists of (id, name). Ranking ties are broken by the entries' order here.
+	 */
+	public static TrigramIndex build(List<List<String>> entries)
+	{
+		val n = entries.size();
+		val ids = new String[n];
+		val names = new String[n];
+		val normalizedIds = new String[n];
+		val normalizedNames = new String[n];
+		val index = new TreeMap<Long, List<Integer>>();
+		
+		for (int i = 0; i < n; ++i) {
+			ids[i] = entries.get(i).get(0);
+			names[i] = entries.get(i).get(1);
+			normalizedIds[i] = normalize(ids[i]);
+			normalizedNames[i] = normalize(names[i]);
+			
+			for (val s : new String[] { normalizedIds[i], normalizedNames[i] }) {
+				for (int j = 0; j + 3 <= s.length(); ++j) {
+					val postings = index.computeIfAbsent(trigram(s, j), k -> new ArrayList<Integer>());
+					if (postings.isEmpty() || postings.get(postings.size() - 1) != i) postings.add(i);
+				}
+			}
+		}
+		
+		return new TrigramIndex(ids, names, normalizedIds, normalizedNames,
+				index.keySet().stream().mapToLong(Long::longValue).toArray(),
+				index.values().stream().map(p -> p.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new));
+	}
+	
+	public int size()
+	{
+		return ids.length;
+	}
+	
+	/**
+	 * The ordinals of the best matching entries, best first.
+	 */
+	public int[] query(String text, int limit)
+	{
+		val q = normalize(text);
+		if (q.isEmpty() || limit <= 0) return new int[0];
+		
+		val candidates = q.length() < 3 ? null : candidates(q);
+		if (candidates != null && candidates.length == 0) return new int[0];
+		
+		// The worst of the best matches so far on top, ordered by distance and then by ordinal
+		val best = new PriorityQueue<long[]>(limit + 1, (a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]));
+		val count = candidates == null ? ids.length : candidates.length;
+		
+		for (int c = 0; c < count; ++c) {
+			val i = candidates == null ? c : candidates[c];
+			if (!normalizedNames[i].contains(q) && !normalizedIds[i].contains(q)) continue;
+			
+			// The edit distance is never less than the difference in length, which rules most long names out once we've got enough matches
+			val worst = best.size() < limit ? Integer.MAX_VALUE : (int) best.peek()[0];
+			if (Math.abs(names[i].length() - text.length()) > worst) continue;
+			
+			val distance = distance(names[i], text, worst);
+			if (distance < 0 || best.size() == limit && distance >= worst) continue;
+			
+			best.add(new long[] { distance, i });
+			if (best.size() > limit) best.poll();
+		}
+		
+		val result = new int[best.size()];
+		for (int i = result.length - 1; i >= 0; --i) {
+			result[i] = (int) best.poll()[1];
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * The entries holding every trigram of the query, by intersecting their posting lists from the shortest up.
+	 */
+	private int[] candidates(String q)
+	{
+		val lists = new int[q.length() - 2][];
+		
+		for (int j = 0; j < lists.length; ++j) {
+			val at = Arrays.binarySearch(trigrams, trigram(q, j));
+			if (at < 0) return new int[0];
+			
+			lists[j] = postings[at];
+		}
+		
+		Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+		
+		var result = lists[0];
+		var size = result.length;
+		
+		for (int l = 1; l < lists.length && size > 0; ++l) {
+			val other = lists[l];
+			val next = result == lists[0] ? new int[size] : result;
+			int kept = 0;
+			
+			for (int a = 0, b = 0; a < size && b < other.length; ) {
+				if (result[a] < other[b]) a++;
+				else if (result[a] > other[b]) b++;
+				else { next[kept++] = result[a]; a++; b++; }
+			}
+			
+			result = next;
+			size = kept;
+		}
+		
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+	
+	/**
+	 * Levenshtein distance, or -1 if it's more than the threshold. Two rows, so a query allocates next to nothing.
+	 */
+	static int distance(String a, String b, int threshold)
+	{
+		if (a.length() < b.length()) { val t = a; a = b; b = t; }
+		
+		var prev = new int[b.length() + 1];
+		var cur = new int[b.length() + 1];
+		
+		for (int j = 0; j <= b.length(); ++j) prev[j] = j;
+		
+		for (int i = 1; i <= a.length(); ++i) {
+			cur[0] = i;
+			int rowMin = cur[0];
+			
+			for (int j = 1; j <= b.length(); ++j) {
+				val cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+				rowMin = Math.min(rowMin, cur[j]);
+			}
+			
+			if (rowMin > threshold) return -1;
+			
+			val t = prev; prev = cur; cur = t;
+		}
+		
+		return prev[b.length()] > threshold ? -1 : prev[b.length()];
+	}
+	
+	private static long trigram(String s, int at)
+	{
+		return ((long) s.charAt(at) << 32) | ((long) s.charAt(at + 1) << 16) | s.charAt(at + 2);
+	}
+	
+	public void write(OutputStream os) throws IOException
+	{
+		val out = new DataOutputStream(os);
+		
+		out.writeInt(VERSION);
+		writeVarInt(out, ids.length);
+		
+		for (int i = 0; i < ids.length; ++i) {
+			out.writeUTF(ids[i]);
+			out.writeUTF(names[i]);
+			out.writeUTF(normalizedIds[i]);
+			out.writeUTF(normalizedNames[i]);
+		}
+		
+		writeVarInt(out, trigrams.length);
+		
+		for (int t = 0; t < trigrams.length; ++t) {
+			out.writeChar((int) (trigrams[t] >>> 32));
+			out.writeChar((int) (trigrams[t] >>> 16));
+			out.writeChar((int) trigrams[t]);
+			
+			writeVarInt(out, postings[t].length);
+			
+			int last = 0;
+			for (val ordinal : postings[t]) {
+				writeVarInt(out, ordinal - last);
+				last = ordinal;
+			}
+		}
+		
+		out.flush();
+	}
+	
+	public static TrigramIndex read(InputStream is) throws IOException
+	{
+		val in = new DataInputStream(is);
+		
+		val version = in.readInt();
+		if (version != VERSION) throw new IOException("Unsupported trigram index version " + version);
+		
+		val n = readVarInt(in);
+		val ids = new String[n];
+		val names = new String[n];
+		val normalizedIds = new String[n];
+		val normalizedNames = new String[n];
+		
+		for (int i = 0; i < n; ++i) {
+			ids[i] = in.readUTF();
+			names[i] = in.readUTF();
+			normalizedIds[i] = in.readUTF();
+			normalizedNames[i] = in.readUTF();
+		}
+		
+		val trigrams = new long[readVarInt(in)];
+		val postings = new int[trigrams.length][];
+		
+		for (int t = 0; t < trigrams.length; ++t) {
+			trigrams[t] = ((long) in.readChar() << 32) | ((long) in.readChar() << 16) | in.readChar();
+			postings[t] = new int[readVarInt(in)];
+			
+			int last = 0;
+			for (int p = 0; p < postings[t].length; ++p) {
+				last += readVarInt(in);
+				postings[t][p] = last;
+			}
+		}
+		
+		return new TrigramIndex(ids, names, normalizedIds, normalizedNames, trigrams, postings);
+	}
+	
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		
+		out.writeByte(value);
+	}
+	
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int v = 0;
+		
+		for (int shift = 0; ; shift += 7) {
+			val b = in.readByte();
+			v |= (b & 0x7F) << shift;
+			
+			if ((b & 0x80) == 0) return v;
+		}
+	}
+}
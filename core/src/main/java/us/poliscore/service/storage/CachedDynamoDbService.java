@@ -9,6 +9,7 @@ import io.quarkus.arc.DefaultBean;
 import io.quarkus.logging.Log;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.val;
 import us.poliscore.PoliscoreUtil;
@@ -26,6 +27,12 @@ public class CachedDynamoDbService implements ApplicationDataStoreIF
 	
 	@Inject
 	private ObjectMapper mapper;
+	
+	/**
+	 * Concurrent misses on the same id share one DynamoDb read (but not the object it returns).
+	 */
+	@Getter
+	private final SingleFlight loads = new SingleFlight();
 
 	@Override
 	public void put(Persistable obj) {
@@ -42,12 +49,24 @@ public class CachedDynamoDbService implements ApplicationDataStoreIF
 			return memory.get(id, clazz);
 		}
 		
+		// Everyone who waited on the load gets their own copy, as they would from the memory store
+		return loads.load(id, () -> load(id, clazz), result -> result.map(obj -> snapshot(obj, clazz)));
+	}
+	
+	private <T extends Persistable> Optional<T> load(String id, Class<T> clazz)
+	{
+		// The previous load of this id may have finished between our miss and taking the flight
+		if (memory.exists(id, clazz))
+		{
+			return memory.get(id, clazz);
+		}
+		
 		Optional<T> result = dynamodb.get(id, clazz);
 		
 		if (result.isPresent())
 		{
 			try {
-				memory.put(mapper.treeToValue(mapper.valueToTree(result.get()), clazz));
+				memory.put(snapshot(result.get(), clazz));
 			} catch(Throwable t) {
 				Log.error(t);
 			}
@@ -79,10 +98,24 @@ public class CachedDynamoDbService implements ApplicationDataStoreIF
 		val list = dynamodb.query(clazz, pageSize, index, ascending, exclusiveStartKey, sortKey);
 		
 		for (T obj : list) {
-			memory.put(mapper.treeToValue(mapper.valueToTree(obj), clazz));
+			memory.put(snapshot(obj, clazz));
 		}
 		
 		return list;
 	}
 	
+	/**
+	 * A copy of the object for the memory store, so that callers mutating what they were handed can't corrupt the cache.
+	 */
+	private <T extends Persistable> T snapshot(T obj, Class<T> clazz)
+	{
+		return ObjectCopier.copy(obj, o -> jsonCopy(o, clazz));
+	}
+	
+	@SneakyThrows
+	private <T extends Persistable> T jsonCopy(T obj, Class<T> clazz)
+	{
+		return mapper.treeToValue(mapper.valueToTree(obj), clazz);
+	}
+	
 }
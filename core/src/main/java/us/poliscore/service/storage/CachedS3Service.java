@@ -6,6 +6,7 @@ import java.util.Optional;
 import io.quarkus.arc.DefaultBean;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import lombok.Getter;
 import lombok.val;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
@@ -21,6 +22,12 @@ public class CachedS3Service implements ApplicationDataStoreIF
 	@Inject
 	private S3PersistenceService s3;
 	
+	/**
+	 * Concurrent misses on the same id share one S3 read.
+	 */
+	@Getter
+	private final SingleFlight loads = new SingleFlight();
+	
 	@Override
 	public void put(Persistable obj) {
 		memory.put(obj);
@@ -35,6 +42,17 @@ public class CachedS3Service implements ApplicationDataStoreIF
 			return memory.get(id, clazz);
 		}
 		
+		return loads.load(id, () -> load(id, clazz));
+	}
+	
+	private <T extends Persistable> Optional<T> load(String id, Class<T> clazz)
+	{
+		// The previous load of this id may have finished between our miss and taking the flight
+		if (memory.exists(id, clazz))
+		{
+			return memory.get(id, clazz);
+		}
+		
 		Optional<T> result = s3.get(id, clazz);
 		
 		if (result.isPresent())
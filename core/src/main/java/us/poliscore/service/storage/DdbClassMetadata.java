@@ -0,0 +1,406 @@
+package us.poliscore.service.storage;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.BeanTableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.model.Persistable;
+import us.poliscore.model.dynamodb.DdbDataPage;
+import us.poliscore.model.dynamodb.DdbKeyProvider;
+import us.poliscore.model.dynamodb.DdbLegacyPage;
+import us.poliscore.model.dynamodb.DdbListPage;
+
+/**
+ * Everything DynamoDbPersistenceService needs to know about a Persistable class, resolved once via reflection and then cached for the
+ * lifetime of the JVM. Accessors are held as MethodHandles and converters are instantiated once, so the per-call cost of reading or writing
+ * an object is just the conversion itself.
+ */
+public final class DdbClassMetadata<T extends Persistable> {
+	
+	private static final Map<Class<?>, DdbClassMetadata<?>> registry = new ConcurrentHashMap<Class<?>, DdbClassMetadata<?>>();
+	
+	@SuppressWarnings("unchecked")
+	public static <T extends Persistable> DdbClassMetadata<T> of(Class<T> clazz, DynamoDbEnhancedClient ddbe, String tableName)
+	{
+		return (DdbClassMetadata<T>) registry.computeIfAbsent(clazz, c -> new DdbClassMetadata<T>(clazz, ddbe, tableName));
+	}
+	
+	@Getter
+	private final Class<T> clazz;
+	
+	@Getter
+	private final BeanTableSchema<T> schema;
+	
+	@Getter
+	private final boolean hasSortKey;
+	
+	@Getter
+	private final DynamoDbTable<T> table;
+	
+	private final Map<String, DynamoDbIndex<T>> indexes = new ConcurrentHashMap<String, DynamoDbIndex<T>>();
+	
+	/**
+	 * All @DdbDataPage attributes, grouped by the page they're stored on.
+	 */
+	@Getter
+	private final Map<String, List<PageAttribute>> pages;
+	
+	private final Map<String, PageAttribute> pageAttributes;
+	
+	/**
+	 * The pages of all @DdbLegacyPage attributes, which are read but never written.
+	 */
+	@Getter
+	private final Set<String> legacyPages;
+	
+	/**
+	 * All @DdbListPage attributes, by attribute name.
+	 */
+	@Getter
+	private final Map<String, ListAttribute> listAttributes;
+	
+	/**
+	 * The names of all attributes stored on the head item.
+	 */
+	@Getter
+	private final List<String> headAttributeNames;
+	
+	private final MethodHandle keyProvider;
+	
+	@SneakyThrows
+	private static Supplier<Collection<Object>> collectionFactory(Class<?> type)
+	{
+		if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+			val constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+			
+			return () -> newCollection(constructor);
+		}
+		
+		if (Set.class.isAssignableFrom(type)) return LinkedHashSet::new;
+		
+		return ArrayList::new;
+	}
+	
+	@SneakyThrows
+	@SuppressWarnings("unchecked")
+	private static Collection<Object> newCollection(MethodHandle constructor)
+	{
+		return (Collection<Object>) (Object) constructor.invokeExact();
+	}
+	
+	@SneakyThrows
+	private DdbClassMetadata(Class<T> clazz, DynamoDbEnhancedClient ddbe, String tableName)
+	{
+		this.clazz = clazz;
+		this.schema = TableSchema.fromBean(clazz);
+		this.hasSortKey = schema.tableMetadata().primarySortKey().isPresent();
+		this.table = ddbe.table(tableName, schema);
+		
+		val lookup = MethodHandles.publicLookup();
+		val pages = new LinkedHashMap<String, List<PageAttribute>>();
+		val pageAttributes = new HashMap<String, PageAttribute>();
+		val listAttributes = new LinkedHashMap<String, ListAttribute>();
+		val legacyPages = new LinkedHashSet<String>();
+		MethodHandle keyProvider = null;
+		
+		for (Method m : clazz.getDeclaredMethods())
+		{
+			if (m.isAnnotationPresent(DdbKeyProvider.class) && Modifier.isStatic(m.getModifiers()) && keyProvider == null) {
+				keyProvider = lookup.unreflect(m).asType(MethodType.methodType(Key.class, String.class));
+			}
+			
+			// Classes with a sort key are stored as single items, so their page annotations don't apply
+			if (hasSortKey) continue;
+			
+			val list = attribute(m, DdbListPage.class, a -> null);
+			if (list != null) {
+				listAttributes.put(list.name, new ListAttribute(list.name, m.getAnnotation(DdbListPage.class).maxBytes(), list.converter, list.getter,
+						list.setter, collectionFactory(m.getReturnType())));
+			}
+			
+			val data = attribute(m, DdbDataPage.class, DdbDataPage::value);
+			if (data != null) {
+				pages.computeIfAbsent(data.page, p -> new ArrayList<PageAttribute>()).add(data);
+				pageAttributes.put(data.name, data);
+			}
+			
+			val legacy = attribute(m, DdbLegacyPage.class, DdbLegacyPage::value);
+			if (legacy != null) {
+				pageAttributes.put(legacy.name, legacy);
+				legacyPages.add(legacy.page);
+			}
+		}
+		
+		this.pages = Collections.unmodifiableMap(pages);
+		this.pageAttributes = Collections.unmodifiableMap(pageAttributes);
+		this.listAttributes = Collections.unmodifiableMap(listAttributes);
+		this.legacyPages = Collections.unmodifiableSet(legacyPages);
+		this.keyProvider = keyProvider;
+		this.headAttributeNames = schema.attributeNames().stream().filter(a -> !pageAttributes.containsKey(a) && !listAttributes.containsKey(a)).toList();
+	}
+	
+	/**
+	 * Resolves the attribute of a getter carrying the given page annotation (its name, converter and accessors), or returns null if the
+	 * getter isn't annotated with it.
+	 */
+	@SneakyThrows
+	private <A extends Annotation> PageAttribute attribute(Method getter, Class<A> kind, Function<A, String> page)
+	{
+		val annotation = getter.getAnnotation(kind);
+		if (annotation == null) return null;
+		
+		val lookup = MethodHandles.publicLookup();
+		val attr = StringUtils.uncapitalize(getter.getName().replace("get", ""));
+		val setter = clazz.getMethod("set" + StringUtils.capitalize(attr), getter.getReturnType());
+		
+		@SuppressWarnings("unchecked")
+		val converter = (AttributeConverter<Object>) (AttributeConverter<?>) schema.converterForAttribute(attr);
+		
+		return new PageAttribute(attr, page.apply(annotation), converter,
+				lookup.unreflect(getter).asType(MethodType.methodType(Object.class, Object.class)),
+				lookup.unreflect(setter).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+	}
+	
+	public DynamoDbIndex<T> index(String indexName)
+	{
+		return indexes.computeIfAbsent(indexName, i -> table.index(i));
+	}
+	
+	/**
+	 * The names of all attributes which are stored outside of the head item, either on a data page or on list pages.
+	 */
+	public Set<String> getPageAttributeNames()
+	{
+		val names = new HashSet<String>(pageAttributes.keySet());
+		names.addAll(listAttributes.keySet());
+		return names;
+	}
+	
+	public PageAttribute getPageAttribute(String attr)
+	{
+		return pageAttributes.get(attr);
+	}
+	
+	/**
+	 * Returns the list attribute stored on the given page, or null if the page isn't a list page.
+	 */
+	public ListAttribute getListAttributeForPage(String page)
+	{
+		val separator = page.indexOf(ListAttribute.PAGE_SEPARATOR);
+		
+		return separator == -1 ? null : listAttributes.get(page.substring(0, separator));
+	}
+	
+	@SneakyThrows
+	public Key key(String id)
+	{
+		if (keyProvider == null) throw new UnsupportedOperationException(clazz.getSimpleName() + " has a sort key but no @DdbKeyProvider");
+		
+		return (Key) keyProvider.invokeExact(id);
+	}
+	
+	public static final class PageAttribute {
+		
+		@Getter
+		private final String name;
+		
+		@Getter
+		private final String page;
+		
+		@Getter
+		private final AttributeConverter<Object> converter;
+		
+		private final MethodHandle getter;
+		
+		private final MethodHandle setter;
+		
+		private PageAttribute(String name, String page, AttributeConverter<Object> converter, MethodHandle getter, MethodHandle setter)
+		{
+			this.name = name;
+			this.page = page;
+			this.converter = converter;
+			this.getter = getter;
+			this.setter = setter;
+		}
+		
+		@SneakyThrows
+		public AttributeValue read(Object obj)
+		{
+			return converter.transformFrom((Object) getter.invokeExact(obj));
+		}
+		
+		@SneakyThrows
+		public void write(Object obj, AttributeValue value)
+		{
+			setter.invokeExact(obj, converter.transformTo(value));
+		}
+	}
+	
+	/**
+	 * A @DdbListPage collection. The collection is split into chunks of as many elements as fit in maxBytes once encoded, and each chunk is
+	 * stored as its own page item along with the total number of chunks. The count is also kept on the head item, where the next write finds
+	 * it and deletes the chunks it no longer needs. Since those deletes aren't atomic with the write, readers only trust chunks whose index is
+	 * below the count stored on the first chunk.
+	 */
+	public static final class ListAttribute {
+		
+		public static final String PAGE_SEPARATOR = "/";
+		
+		public static final String PAGE_COUNT_ATTRIBUTE = "pageCount";
+		
+		/**
+		 * Chunks are sized to this fraction of maxBytes, since compressed sizes don't scale linearly with element count.
+		 */
+		private static final double RESIZE_MARGIN = 0.9;
+		
+		@Getter
+		private final String name;
+		
+		@Getter
+		private final int maxBytes;
+		
+		@Getter
+		private final AttributeConverter<Object> converter;
+		
+		private final MethodHandle getter;
+		
+		private final MethodHandle setter;
+		
+		private final Supplier<Collection<Object>> factory;
+		
+		private ListAttribute(String name, int maxBytes, AttributeConverter<Object> converter, MethodHandle getter, MethodHandle setter, Supplier<Collection<Object>> factory)
+		{
+			this.name = name;
+			this.maxBytes = maxBytes;
+			this.converter = converter;
+			this.getter = getter;
+			this.setter = setter;
+			this.factory = factory;
+		}
+		
+		public String page(int index)
+		{
+			return name + PAGE_SEPARATOR + String.format("%05d", index);
+		}
+		
+		public String pagePrefix()
+		{
+			return name + PAGE_SEPARATOR;
+		}
+		
+		public int pageIndex(String page)
+		{
+			return Integer.parseInt(page.substring(pagePrefix().length()));
+		}
+		
+		/**
+		 * The head item attribute which holds the number of chunks.
+		 */
+		public String countAttribute()
+		{
+			return name + StringUtils.capitalize(PAGE_COUNT_ATTRIBUTE);
+		}
+		
+		/**
+		 * Encodes the object's collection as one or more chunks, each no larger than maxBytes (unless a single element is larger on its own).
+		 * An empty collection is still written as a single empty chunk, so that it replaces whatever was stored before.
+		 */
+		@SneakyThrows
+		@SuppressWarnings("unchecked")
+		public List<AttributeValue> read(Object obj)
+		{
+			val collection = (Collection<Object>) (Object) getter.invokeExact(obj);
+			val elements = collection == null ? List.<Object>of() : new ArrayList<Object>(collection);
+			val chunks = new ArrayList<AttributeValue>();
+			
+			// Usually the whole collection fits on one page, which costs a single encoding
+			val whole = encode(elements);
+			val size = DynamoDbPersistenceService.estimateAttributeSize(whole);
+			
+			if (size <= maxBytes || elements.size() <= 1) {
+				chunks.add(whole);
+				return chunks;
+			}
+			
+			// Otherwise it's split evenly into as many chunks as its encoded size calls for, and each chunk is encoded once
+			val count = (int) Math.min(elements.size(), Math.ceil(size / (maxBytes * RESIZE_MARGIN)));
+			
+			for (int i = 0; i < count; ++i) {
+				encodeChunks(elements.subList((int) ((long) i * elements.size() / count), (int) ((long) (i + 1) * elements.size() / count)), chunks);
+			}
+			
+			return chunks;
+		}
+		
+		/**
+		 * Encodes the elements as a chunk, splitting them in half (and so on) in the rare case the chunk comes out larger than maxBytes.
+		 */
+		private void encodeChunks(List<Object> elements, List<AttributeValue> into)
+		{
+			val encoded = encode(elements);
+			
+			if (elements.size() > 1 && DynamoDbPersistenceService.estimateAttributeSize(encoded) > maxBytes) {
+				val half = elements.size() / 2;
+				encodeChunks(elements.subList(0, half), into);
+				encodeChunks(elements.subList(half, elements.size()), into);
+				return;
+			}
+			
+			into.add(encoded);
+		}
+		
+		private AttributeValue encode(List<Object> elements)
+		{
+			val chunk = factory.get();
+			chunk.addAll(elements);
+			
+			return converter.transformFrom(chunk);
+		}
+		
+		@SuppressWarnings("unchecked")
+		public Collection<Object> decode(AttributeValue value)
+		{
+			return (Collection<Object>) converter.transformTo(value);
+		}
+		
+		public Collection<Object> newCollection()
+		{
+			return factory.get();
+		}
+		
+		@SneakyThrows
+		public void write(Object obj, Collection<Object> value)
+		{
+			setter.invokeExact(obj, (Object) value);
+		}
+	}
+}
@@ -1,13 +1,21 @@
 package us.poliscore.service.storage;
 
-import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -17,26 +25,25 @@ import lombok.Data;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.val;
-import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
-import software.amazon.awssdk.enhanced.dynamodb.DefaultAttributeConverterProvider;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
-import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.mapper.BeanTableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbConvertedBy;
+import software.amazon.awssdk.enhanced.dynamodb.NestedAttributeName;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 import us.poliscore.model.Persistable;
-import us.poliscore.model.dynamodb.DdbDataPage;
-import us.poliscore.model.dynamodb.DdbKeyProvider;
-import us.poliscore.model.dynamodb.DdbListPage;
+import us.poliscore.service.storage.DdbClassMetadata.ListAttribute;
 
 @ApplicationScoped
 public class DynamoDbPersistenceService implements ObjectStorageServiceIF
@@ -45,6 +52,26 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 	
 	public static final String HEAD_PAGE = "0";
 	
+	public static final int MAX_BATCH_WRITE_ITEMS = 25;
+	
+	public static final int MAX_BATCH_WRITE_RETRIES = 10;
+	
+	public static final int MAX_BATCH_GET_ITEMS = 100;
+	
+	public static final String FINGERPRINT_ATTRIBUTE = "fingerprint";
+	
+	/**
+	 * If enabled, put, putAll and the databuilder's DdbWritePipeline skip writes of items whose content fingerprint matches what's already
+	 * stored. See withoutUnchanged. A check costs a fingerprint-only BatchGetItem unless we wrote the item ourselves, which is far cheaper
+	 * than the write it saves on builds that rewrite mostly unchanged data.
+	 */
+	public static boolean SKIP_UNCHANGED_WRITES = true;
+	
+	/**
+	 * How many fingerprints of our own writes are remembered, least recently used first out.
+	 */
+	public static int MAX_KNOWN_FINGERPRINTS = 100_000;
+	
 	@Data
 	public static class DdbPage {
 		public static DdbPage ALL = new DdbPage(null);
@@ -68,7 +95,17 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 	@Inject
 	DynamoDbClient ddb;
 	
-	private Map<Class<?>, BeanTableSchema<?>> schemas  = new HashMap<Class<?>, BeanTableSchema<?>>();
+	/**
+	 * Fingerprints of items this process has written, by item key. Only ever filled by acknowledged writes.
+	 */
+	private final Map<String, String> knownFingerprints = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_KNOWN_FINGERPRINTS;
+		}
+	});
+	
+	private final AtomicLong skippedWrites = new AtomicLong();
 	
 	public <T extends Persistable> void delete(T obj)
 	{
@@ -76,6 +113,7 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 		attrMap.put("id", AttributeValue.fromS(obj.getId()));
 		attrMap.put("page", AttributeValue.fromS(HEAD_PAGE));
 		
+		recordDeleted(List.of(attrMap));
 		ddb.deleteItem(DeleteItemRequest.builder()
 				.tableName(TABLE_NAME)
 //				.key(Key.builder().partitionValue(obj.getId()).build().primaryKeyMap(getSchema(obj.getClass())))
@@ -83,128 +121,404 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 				.build());
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <T extends Persistable> BeanTableSchema<T> getSchema(Class<T> clazz) {
-		if (!schemas.containsKey(clazz)) {
-			schemas.put(clazz, TableSchema.fromBean(clazz));
+	public <T extends Persistable> DdbClassMetadata<T> metadata(Class<T> clazz) {
+		return DdbClassMetadata.of(clazz, ddbe, TABLE_NAME);
+	}
+	
+	public <T extends Persistable> void put(T obj)
+	{
+		val items = toItems(obj);
+		val stale = staleKeys(obj.getClass(), items);
+		
+		for (val item : SKIP_UNCHANGED_WRITES ? withoutUnchanged(items) : items) {
+			ddb.putItem(PutItemRequest.builder()
+					.tableName(TABLE_NAME)
+					.item(item)
+					.build());
+			
+			recordWritten(List.of(item));
 		}
 		
-		return (BeanTableSchema<T>) schemas.get(clazz);
+		recordDeleted(stale);
+		
+		for (val key : stale) {
+			ddb.deleteItem(DeleteItemRequest.builder()
+					.tableName(TABLE_NAME)
+					.key(key)
+					.build());
+		}
+	}
+	
+	/**
+	 * Writes all of the provided objects (including all of their data pages) using BatchWriteItem. Items are sent in chunks of
+	 * {@link #MAX_BATCH_WRITE_ITEMS} and any unprocessed items returned by DynamoDb are retried with an exponential backoff. Use
+	 * this instead of put when persisting many objects at once, since it costs one round trip per 25 items instead of one per item.
+	 */
+	public void putAll(Collection<? extends Persistable> objs)
+	{
+		// BatchWriteItem rejects requests which contain the same key twice, so the last write for any given key wins.
+		val items = new LinkedHashMap<String, Map<String, AttributeValue>>();
+		val stale = new LinkedHashMap<String, Map<String, AttributeValue>>();
+		
+		for (val obj : objs) {
+			val objItems = toItems(obj);
+			
+			for (val key : staleKeys(obj.getClass(), objItems)) {
+				stale.put(itemKey(key), key);
+			}
+			
+			for (val item : objItems) {
+				items.put(itemKey(item), item);
+			}
+		}
+		
+		// Never delete what's being written
+		stale.keySet().removeAll(items.keySet());
+		
+		val requests = new ArrayList<WriteRequest>();
+		(SKIP_UNCHANGED_WRITES ? withoutUnchanged(items.values()) : items.values()).forEach(item -> requests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build()));
+		stale.values().forEach(key -> requests.add(WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(key).build()).build()));
+		recordDeleted(stale.values());
+		
+		val batch = new ArrayList<WriteRequest>();
+		
+		for (val request : requests) {
+			batch.add(request);
+			
+			if (batch.size() >= MAX_BATCH_WRITE_ITEMS) {
+				batchWrite(batch);
+				batch.clear();
+			}
+		}
+		
+		if (batch.size() > 0) {
+			batchWrite(batch);
+		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	@SneakyThrows
-	public <T extends Persistable> void put(T obj)
+	private void batchWrite(List<WriteRequest> requests)
 	{
-//		val table = ((DynamoDbTable<T>) ddbe.table(TABLE_NAME, getSchema(obj.getClass())));
-		
-		Map<String, Map<String, AttributeValue>> pages = new HashMap<String, Map<String, AttributeValue>>();
-		val schema = (BeanTableSchema<T>) getSchema(obj.getClass());
-		
-		var hasSortKey = schema.tableMetadata().primarySortKey().isPresent();
-		
-		if (!hasSortKey) {
-			for (Method getter : obj.getClass().getDeclaredMethods())
-			{
-			    if (getter.isAnnotationPresent(DdbDataPage.class) || getter.isAnnotationPresent(DdbListPage.class))
-		        {
-			    	val attr = StringUtils.uncapitalize(getter.getName().replace("get", ""));
-			    	
-	//		    	getter.setAccessible(true); // TODO : Necessary? Not sure.
-			    	Object rawValue = getter.invoke(obj);
-			    	
-			    	if (getter.isAnnotationPresent(DdbDataPage.class)) {
-			    		val page = getter.getAnnotation(DdbDataPage.class).value();
-			    		
-			    		// incompatible types: software.amazon.awssdk.enhanced.dynamodb.AttributeConverter<T> cannot be converted to software.amazon.awssdk.enhanced.dynamodb.AttributeConverter<java.lang.Object>
-//			    		val val = ((AttributeConverter<Object>) schema.converterForAttribute(attr)).transformFrom(rawValue);
-			    		
-			    		AttributeValue val;
-				    	
-				    	if (getter.isAnnotationPresent(DynamoDbConvertedBy.class)) {
-				    		val a2 = getter.getAnnotation(DynamoDbConvertedBy.class);
-				    		
-				    		val converter = a2.value().getDeclaredConstructor().newInstance();
-				    		
-				    		val = converter.transformFrom(rawValue);
-				    	} else {
-				            @SuppressWarnings("unchecked")
-				            AttributeConverter<Object> converter = (AttributeConverter<Object>) new DefaultAttributeConverterProvider()
-				                    .converterFor(EnhancedType.of(rawValue.getClass()));
-
-				            val = converter.transformFrom(rawValue);
-				    	}
-			    		
-				    	
-				    	val values = pages.getOrDefault(page, new HashMap<String, AttributeValue>());
-				    	values.put(attr, val);
-				    	pages.put(page, values);
-			    	} else {
-			    		throw new UnsupportedOperationException();
-			    		
-	//		    		val limit = getter.getAnnotation(DdbListPage.class).value();
-	//		    		val all = (Collection<?>) rawValue;
-	//		    		
-	//		    		val it = all.iterator();
-	//		    		var page = new ArrayList<Object>();
-	//		    		int i = 0;
-	//		    		int pnum = 1;
-	//		    		while (it.hasNext()) {
-	//		    			if (i >= limit) {
-	////		    				pages.put(String.valueOf(pnum), page);
-	////		    				val val = schema.converterForAttribute(attr).transformFrom((T) rawValue);
-	//		    				
-	//					    	val values = pages.getOrDefault(page, new HashMap<String, AttributeValue>());
-	//					    	values.put(attr, val);
-	//					    	pages.put(page, values);
-	//		    				
-	//		    				i = 0;
-	//		    				page = new ArrayList<Object>();
-	//		    				pnum++;
-	//		    			}
-	//		    			page.add(it.next());
-	//		    			i++;
-	//		    		}
-			    	}
-		        }
+		Map<String, List<WriteRequest>> unprocessed = Map.of(TABLE_NAME, new ArrayList<WriteRequest>(requests));
+		
+		for (int attempt = 0; !unprocessed.isEmpty(); ++attempt) {
+			if (attempt > 0) {
+				if (attempt > MAX_BATCH_WRITE_RETRIES)
+					throw new RuntimeException("Unable to write " + unprocessed.get(TABLE_NAME).size() + " items to ddb after " + MAX_BATCH_WRITE_RETRIES + " retries");
+				
+				Thread.sleep(Math.min(50l * (1l << attempt), 5000l));
+			}
+			
+			unprocessed = ddb.batchWriteItem(BatchWriteItemRequest.builder()
+					.requestItems(unprocessed)
+					.build()).unprocessedItems();
+		}
+		
+		recordWritten(requests.stream().filter(r -> r.putRequest() != null).map(r -> r.putRequest().item()).toList());
+	}
+	
+	/**
+	 * Filters out any items whose content fingerprint matches what is already stored in DynamoDb, so that unchanged objects and data pages are
+	 * never re-written.
+	 * 
+	 * Stored fingerprints are taken from our own acknowledged writes (see recordWritten), and any we haven't written are fetched with a (much
+	 * cheaper than writing) fingerprint-only BatchGetItem, which blocks. Fetched fingerprints are only used for this call, since another
+	 * writer may change the item at any time. Our own may be stale in the same way, which is why forgetFingerprints is called between stages.
+	 */
+	public List<Map<String, AttributeValue>> withoutUnchanged(Collection<Map<String, AttributeValue>> items)
+	{
+		val stored = new HashMap<String, String>();
+		
+		for (val item : items) {
+			val known = item.containsKey(FINGERPRINT_ATTRIBUTE) ? knownFingerprints.get(itemKey(item)) : null;
+			if (known != null) stored.put(itemKey(item), known);
+		}
+		
+		fetchFingerprints(items.stream()
+				.filter(i -> i.containsKey(FINGERPRINT_ATTRIBUTE) && !stored.containsKey(itemKey(i)))
+				.map(i -> itemKey(i))
+				.distinct()
+				.toList(), stored);
+		
+		val changed = new ArrayList<Map<String, AttributeValue>>();
+		
+		for (val item : items) {
+			val fingerprint = item.get(FINGERPRINT_ATTRIBUTE);
+			
+			if (fingerprint != null && fingerprint.s().equals(stored.get(itemKey(item)))) {
+				skippedWrites.incrementAndGet();
+				continue;
+			}
+			
+			changed.add(item);
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * Remembers the fingerprints of items which DynamoDb has acknowledged writing. Every write path records its writes, whether or not it
+	 * skips unchanged ones itself, since any of them may be followed by a skipping write of the same item.
+	 */
+	public void recordWritten(Collection<Map<String, AttributeValue>> items)
+	{
+		for (val item : items) {
+			if (item.containsKey(FINGERPRINT_ATTRIBUTE)) knownFingerprints.put(itemKey(item), item.get(FINGERPRINT_ATTRIBUTE).s());
+			else knownFingerprints.remove(itemKey(item));
+		}
+	}
+	
+	/**
+	 * Forgets the fingerprints of items about to be deleted, so that a later write of the same content isn't taken as unchanged.
+	 */
+	public void recordDeleted(Collection<Map<String, AttributeValue>> keys)
+	{
+		for (val key : keys) {
+			knownFingerprints.remove(itemKey(key));
+		}
+	}
+	
+	/**
+	 * Forgets the fingerprints of our own writes, so that the next writes check what's actually stored.
+	 */
+	public void forgetFingerprints()
+	{
+		knownFingerprints.clear();
+	}
+	
+	/**
+	 * Returns how many item writes have been skipped because their content was unchanged, and resets the counter.
+	 */
+	public long drainSkippedWrites()
+	{
+		return skippedWrites.getAndSet(0);
+	}
+	
+	@SneakyThrows
+	private void fetchFingerprints(List<String> itemKeys, Map<String, String> into)
+	{
+		for (int i = 0; i < itemKeys.size(); i += MAX_BATCH_GET_ITEMS) {
+			val keys = itemKeys.subList(i, Math.min(itemKeys.size(), i + MAX_BATCH_GET_ITEMS)).stream()
+					.map(k -> Map.of(
+							"id", AttributeValue.fromS(k.substring(0, k.lastIndexOf("~"))),
+							"page", AttributeValue.fromS(k.substring(k.lastIndexOf("~") + 1))))
+					.toList();
+			
+			Map<String, KeysAndAttributes> unprocessed = Map.of(TABLE_NAME, KeysAndAttributes.builder()
+					.keys(keys)
+					.projectionExpression("id, page, " + FINGERPRINT_ATTRIBUTE)
+					.build());
+			
+			for (int attempt = 0; !unprocessed.isEmpty(); ++attempt) {
+				if (attempt > 0) {
+					if (attempt > MAX_BATCH_WRITE_RETRIES)
+						throw new RuntimeException("Unable to read item fingerprints from ddb after " + MAX_BATCH_WRITE_RETRIES + " retries");
+					
+					Thread.sleep(Math.min(50l * (1l << attempt), 5000l));
+				}
+				
+				val resp = ddb.batchGetItem(BatchGetItemRequest.builder().requestItems(unprocessed).build());
+				
+				resp.responses().getOrDefault(TABLE_NAME, List.of()).stream()
+						.filter(item -> item.containsKey(FINGERPRINT_ATTRIBUTE))
+						.forEach(item -> into.put(itemKey(item), item.get(FINGERPRINT_ATTRIBUTE).s()));
+				
+				unprocessed = resp.unprocessedKeys();
 			}
 		}
+	}
+	
+	public static String itemKey(Map<String, AttributeValue> item)
+	{
+		return item.get("id").s() + "~" + item.get("page").s();
+	}
+	
+	public static Map<String, AttributeValue> itemKey(String id, String page)
+	{
+		return Map.of("id", AttributeValue.fromS(id), "page", AttributeValue.fromS(page));
+	}
+	
+	/**
+	 * Computes a stable digest of the item's content (excluding the fingerprint attribute itself). Map attributes are digested in key order, so
+	 * the result doesn't depend on HashMap iteration order.
+	 */
+	@SneakyThrows
+	public static String fingerprint(Map<String, AttributeValue> item)
+	{
+		val md = MessageDigest.getInstance("MD5");
+		
+		item.keySet().stream().filter(k -> !k.equals(FINGERPRINT_ATTRIBUTE)).sorted().forEach(k -> {
+			md.update(k.getBytes(StandardCharsets.UTF_8));
+			digest(md, item.get(k));
+		});
+		
+		return Base64.getEncoder().withoutPadding().encodeToString(md.digest());
+	}
+	
+	private static void digest(MessageDigest md, AttributeValue av)
+	{
+		if (av.s() != null) { md.update((byte) 1); md.update(av.s().getBytes(StandardCharsets.UTF_8)); }
+		else if (av.n() != null) { md.update((byte) 2); md.update(av.n().getBytes(StandardCharsets.UTF_8)); }
+		else if (av.b() != null) { md.update((byte) 3); md.update(av.b().asByteArrayUnsafe()); }
+		else if (av.bool() != null) { md.update((byte) 4); md.update((byte) (av.bool() ? 1 : 0)); }
+		else if (av.nul() != null) { md.update((byte) 5); }
+		else if (av.hasSs()) { md.update((byte) 6); av.ss().stream().sorted().forEach(v -> md.update(v.getBytes(StandardCharsets.UTF_8))); }
+		else if (av.hasNs()) { md.update((byte) 7); av.ns().stream().sorted().forEach(v -> md.update(v.getBytes(StandardCharsets.UTF_8))); }
+		else if (av.hasBs()) { md.update((byte) 8); av.bs().forEach(v -> md.update(v.asByteArrayUnsafe())); }
+		else if (av.hasM()) {
+			md.update((byte) 9);
+			av.m().keySet().stream().sorted().forEach(k -> {
+				md.update(k.getBytes(StandardCharsets.UTF_8));
+				digest(md, av.m().get(k));
+			});
+		}
+		else if (av.hasL()) {
+			md.update((byte) 10);
+			av.l().forEach(v -> digest(md, v));
+		}
+		
+		md.update((byte) 0);
+	}
+	
+	/**
+	 * Returns the approximate size of the item in bytes, following DynamoDb's item size rules (attribute names plus attribute values).
+	 */
+	public static long estimateItemSize(Map<String, AttributeValue> item)
+	{
+		long size = 0;
+		
+		for (val e : item.entrySet()) {
+			size += e.getKey().length() + estimateAttributeSize(e.getValue());
+		}
+		
+		return size;
+	}
+	
+	static long estimateAttributeSize(AttributeValue av)
+	{
+		if (av.s() != null) return av.s().getBytes(StandardCharsets.UTF_8).length;
+		if (av.n() != null) return av.n().length();
+		if (av.b() != null) return av.b().asByteArrayUnsafe().length;
+		if (av.hasSs()) return av.ss().stream().mapToLong(v -> v.getBytes(StandardCharsets.UTF_8).length).sum();
+		if (av.hasNs()) return av.ns().stream().mapToLong(v -> v.length()).sum();
+		if (av.hasBs()) return av.bs().stream().mapToLong(v -> v.asByteArrayUnsafe().length).sum();
+		if (av.hasM()) return 3 + estimateItemSize(av.m()) + av.m().size();
+		if (av.hasL()) return 3 + av.l().stream().mapToLong(v -> 1 + estimateAttributeSize(v)).sum();
+		
+		return 1;
+	}
+	
+	/**
+	 * Converts the object into the raw ddb items which represent it. The first item is always the head item, followed by one item
+	 * for each of the object's data pages and then one for each chunk of its list pages.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Persistable> List<Map<String, AttributeValue>> toItems(T obj)
+	{
+		val meta = metadata((Class<T>) obj.getClass());
 		
-		@SuppressWarnings("rawtypes")
-		Class clazz = obj.getClass();
+		// Page data is only ever encoded for its own page
+		Map<String, AttributeValue> objAttrs = new HashMap<String, AttributeValue>(meta.getSchema().itemToMap(obj, meta.getHeadAttributeNames()));
+		objAttrs.values().removeIf(av -> Boolean.TRUE.equals(av.nul()));
+		objAttrs.put("page", AttributeValue.fromS(HEAD_PAGE));
 		
-		@SuppressWarnings("unchecked")
-		Map<String, AttributeValue> objAttrs = new HashMap<String, AttributeValue>(getSchema(clazz).itemToMap(clazz.cast(obj), true));
+		val items = new ArrayList<Map<String, AttributeValue>>();
+		items.add(objAttrs);
 		
-//		if (!hasSortKey) {
-			objAttrs.put("page", AttributeValue.fromS(HEAD_PAGE));
+		for (val page : meta.getPages().entrySet()) {
+			val pageAttrs = new HashMap<String, AttributeValue>();
 			
-			// Remove all page data from head object
-			for (String fieldName : pages.values().stream().map(v -> v.keySet()).reduce(new HashSet<String>(), (a,b) -> { a.addAll(b); return a; })) {
-				objAttrs.remove(fieldName);
+			for (val attr : page.getValue()) {
+				pageAttrs.put(attr.getName(), attr.read(obj));
 			}
-//		}
+			
+			pageAttrs.put("id", AttributeValue.fromS(obj.getId()));
+			pageAttrs.put("page", AttributeValue.fromS(page.getKey()));
+			
+			items.add(pageAttrs);
+		}
+		
+		for (val list : meta.getListAttributes().values()) {
+			val chunks = list.read(obj);
+			
+			for (int i = 0; i < chunks.size(); ++i) {
+				val chunkAttrs = new HashMap<String, AttributeValue>();
+				chunkAttrs.put("id", AttributeValue.fromS(obj.getId()));
+				chunkAttrs.put("page", AttributeValue.fromS(list.page(i)));
+				chunkAttrs.put(list.getName(), chunks.get(i));
+				chunkAttrs.put(ListAttribute.PAGE_COUNT_ATTRIBUTE, AttributeValue.fromN(String.valueOf(chunks.size())));
+				
+				items.add(chunkAttrs);
+			}
+			
+			objAttrs.put(list.countAttribute(), AttributeValue.fromN(String.valueOf(chunks.size())));
+		}
 		
-		// Apply head object
-		ddb.putItem(PutItemRequest.builder()
+		if (!meta.isHasSortKey()) {
+			for (val item : items) {
+				item.put(FINGERPRINT_ATTRIBUTE, AttributeValue.fromS(fingerprint(item)));
+			}
+		}
+		
+		return items;
+	}
+	
+	/**
+	 * The keys of stored items which writing the given items (as returned by toItems) would leave behind, which are the list page chunks
+	 * beyond the new chunk counts, and any @DdbLegacyPage pages of items written before the counts were kept on the head. Costs a GetItem of
+	 * the counts on the stored head item, so it has to be called before the items are written. Objects without list pages never leave
+	 * anything behind and cost nothing.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Map<String, AttributeValue>> staleKeys(Class<? extends Persistable> clazz, List<Map<String, AttributeValue>> items)
+	{
+		val meta = metadata((Class<Persistable>) clazz);
+		val stale = new ArrayList<Map<String, AttributeValue>>();
+		if (meta.getListAttributes().isEmpty()) return stale;
+		
+		val head = items.get(0);
+		val id = head.get("id").s();
+		
+		val resp = ddb.getItem(GetItemRequest.builder()
 				.tableName(TABLE_NAME)
-				.item(objAttrs)
+				.key(itemKey(id, HEAD_PAGE))
+				.projectionExpression(Stream.concat(Stream.of("id"), meta.getListAttributes().values().stream().map(l -> l.countAttribute())).collect(Collectors.joining(", ")))
 				.build());
 		
-//		if (!hasSortKey) {
-			// Apply all pages
-			for (String page : pages.keySet()) {
-				val pageAttrs = pages.get(page);
-				
-				pageAttrs.put("id", AttributeValue.fromS(obj.getId()));
-				pageAttrs.put("page", AttributeValue.fromS(page));
-				
-				ddb.putItem(PutItemRequest.builder()
-						.tableName(TABLE_NAME)
-						.item(pageAttrs)
-						.build());
+		// Never written
+		if (!resp.hasItem() || resp.item().isEmpty()) return stale;
+		
+		// Only items from before the counts were kept can still have legacy pages, so they're deleted once
+		if (meta.getListAttributes().values().stream().anyMatch(l -> !resp.item().containsKey(l.countAttribute()))) {
+			meta.getLegacyPages().forEach(page -> stale.add(itemKey(id, page)));
+		}
+		
+		for (val list : meta.getListAttributes().values()) {
+			val written = Integer.parseInt(head.get(list.countAttribute()).n());
+			val stored = resp.item().containsKey(list.countAttribute())
+					? Integer.parseInt(resp.item().get(list.countAttribute()).n())
+					: storedPageCount(id, list);
+			
+			for (int i = written; i < stored; ++i) {
+				stale.add(itemKey(id, list.page(i)));
 			}
-//		}
+		}
+		
+		return stale;
+	}
+	
+	/**
+	 * The chunk count of a list written before the count was also kept on the head item.
+	 */
+	private int storedPageCount(String id, ListAttribute list)
+	{
+		val resp = ddb.getItem(GetItemRequest.builder()
+				.tableName(TABLE_NAME)
+				.key(itemKey(id, list.page(0)))
+				.projectionExpression(ListAttribute.PAGE_COUNT_ATTRIBUTE)
+				.build());
+		
+		return resp.hasItem() && resp.item().containsKey(ListAttribute.PAGE_COUNT_ATTRIBUTE) ? Integer.parseInt(resp.item().get(ListAttribute.PAGE_COUNT_ATTRIBUTE).n()) : 0;
 	}
 	
 	@Override
@@ -213,63 +527,184 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 		return get(id, clazz, DdbPage.ALL);
 	}
 	
-	@SuppressWarnings("unchecked")
-	@SneakyThrows
 	public <T extends Persistable> Optional<T> get(@NonNull String id, @NonNull Class<T> clazz, @NonNull DdbPage page)
 	{
-		val schema = getSchema(clazz);
-		var hasSortKey = schema.tableMetadata().primarySortKey().isPresent();
+		return get(id, clazz, page, null);
+	}
+	
+	/**
+	 * Fetches the object, reading only the attributes named in the projection (dot separated paths into nested beans are allowed). Attributes
+	 * which are not projected are left at their defaults, so a projected object must never be written back. A null projection reads everything.
+	 */
+	@SneakyThrows
+	public <T extends Persistable> Optional<T> get(@NonNull String id, @NonNull Class<T> clazz, @NonNull DdbPage page, List<String> projection)
+	{
+		val meta = metadata(clazz);
 		
-		if (hasSortKey) {
-			val key = (Key) Arrays.asList(clazz.getDeclaredMethods()).stream().filter(m -> m.isAnnotationPresent(DdbKeyProvider.class)).findFirst().orElseThrow().invoke(null, id);
+		if (meta.isHasSortKey()) {
+			if (projection == null) return Optional.ofNullable(meta.getTable().getItem(meta.key(id)));
 			
-			@SuppressWarnings("unchecked")
-			val table = ((DynamoDbTable<T>) ddbe.table(TABLE_NAME, getSchema(clazz)));
+			// GetItem has no projection support in the enhanced client, but a key-equals query on the full primary key is equivalent
+			val request = QueryEnhancedRequest.builder().queryConditional(QueryConditional.keyEqualTo(meta.key(id))).limit(1);
+			projection.forEach(path -> request.addNestedAttributesToProject(NestedAttributeName.create(path.split("\\."))));
 			
-			return Optional.ofNullable(table.getItem(key));
+			return meta.getTable().query(request.build()).items().stream().findFirst();
 		}
 		
-		var keyExpression = "id=:id";
-		val eav = new HashMap<String,AttributeValue>(Map.of(":id", AttributeValue.fromS(id)));
+		Map<String, String> names = projection == null ? null : new HashMap<String, String>();
 		
+		// A single page is a plain GetItem, which is what the common head-only reads should cost
 		if (!page.equals(DdbPage.ALL)) {
-			keyExpression += " AND page=:page";
-			eav.put(":page", AttributeValue.fromS(page.getPage()));
+			val request = GetItemRequest.builder()
+					.tableName(TABLE_NAME)
+					.key(Map.of("id", AttributeValue.fromS(id), "page", AttributeValue.fromS(page.getPage())));
+			
+			if (projection != null) request.projectionExpression(projectionExpression(projection, names)).expressionAttributeNames(names);
+			
+			val resp = ddb.getItem(request.build());
+			
+			return resp.hasItem() ? Optional.of(assemble(meta, List.of(resp.item()).iterator())) : Optional.empty();
 		}
 		
-		val results = ddb.query(QueryRequest.builder()
+		val request = QueryRequest.builder()
 				.tableName(TABLE_NAME)
-				.keyConditionExpression(keyExpression)
-				.expressionAttributeValues(eav)
-				.build()).items().iterator();
+				.keyConditionExpression("id=:id")
+				.expressionAttributeValues(Map.of(":id", AttributeValue.fromS(id)));
+		
+		if (projection != null) request.projectionExpression(projectionExpression(projection, names)).expressionAttributeNames(names);
+		
+		// Paginated, since an object with large list pages can easily be more than the 1 MB a single query returns
+		val results = ddb.queryPaginator(request.build()).items().iterator();
+		
+		return results.hasNext() ? Optional.of(assemble(meta, results)) : Optional.empty();
+	}
+	
+	/**
+	 * Builds the object from its raw items, which must be in sort key order. The first item is mapped as the head (even if it isn't one, as
+	 * when reading a single page) and the rest are applied as data and list pages.
+	 */
+	private <T extends Persistable> T assemble(DdbClassMetadata<T> meta, Iterator<Map<String, AttributeValue>> results)
+	{
+		val first = results.next();
 		
-		if (!results.hasNext()) return Optional.empty();
+		T head = meta.getSchema().mapToItem(first);
+		val lists = new ListPageAssembler(meta);
 		
-		T head = schema.mapToItem(results.next());
+		if (!first.get("page").s().equals(HEAD_PAGE)) lists.add(first);
 		
 		while (results.hasNext()) {
 			val next = results.next();
 			
+			if (lists.add(next)) continue;
+			
 			for (val attr : next.keySet()) {
-				if (!attr.equals("page") && !attr.equals("id")) {
-					copyFields(clazz, schema, head, attr, next.get(attr));
+				val pageAttr = meta.getPageAttribute(attr);
+				
+				if (pageAttr != null) {
+					pageAttr.write(head, next.get(attr));
 				}
 			}
 		}
 		
-		return Optional.of(head);
+		lists.writeTo(head);
+		
+		return head;
 	}
-
-	@SneakyThrows
-	private <T extends Persistable> void copyFields(Class<T> clazz, BeanTableSchema<T> tableSchema,  T head, String attr, AttributeValue rawValue) {
-		val getter = clazz.getMethod("get" + StringUtils.capitalize(attr));
+	
+	/**
+	 * Lazily streams the elements of a @DdbListPage attribute. Chunks are fetched one request at a time as the stream is consumed, so callers
+	 * which only need the first few elements never pay for the rest.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Persistable, E> Stream<E> streamList(@NonNull String id, @NonNull Class<T> clazz, @NonNull String attribute)
+	{
+		val list = listAttribute(clazz, attribute);
+		
+		val request = QueryRequest.builder()
+				.tableName(TABLE_NAME)
+				.keyConditionExpression("id=:id AND begins_with(page, :prefix)")
+				.expressionAttributeValues(Map.of(":id", AttributeValue.fromS(id), ":prefix", AttributeValue.fromS(list.pagePrefix())))
+				.limit(1)
+				.build();
+		
+		val count = new int[] { Integer.MAX_VALUE };
+		
+		return ddb.queryPaginator(request).items().stream()
+				.peek(item -> {
+					if (list.pageIndex(item.get("page").s()) == 0) count[0] = Integer.parseInt(item.get(ListAttribute.PAGE_COUNT_ATTRIBUTE).n());
+				})
+				.takeWhile(item -> list.pageIndex(item.get("page").s()) < count[0])
+				.flatMap(item -> list.decode(item.get(attribute)).stream().map(e -> (E) e));
+	}
+	
+	private <T extends Persistable> ListAttribute listAttribute(Class<T> clazz, String attribute)
+	{
+		val list = metadata(clazz).getListAttributes().get(attribute);
+		if (list == null) throw new IllegalArgumentException(clazz.getSimpleName() + "." + attribute + " is not a @DdbListPage attribute");
 		
-		Object convertedVal;
+		return list;
+	}
+	
+	/**
+	 * Collects list page chunks as they're read (in sort key order) and sets the reassembled collections on the object once all have been read.
+	 */
+	private static class ListPageAssembler {
 		
-		convertedVal = tableSchema.converterForAttribute(attr).transformTo(rawValue);
+		private final DdbClassMetadata<?> meta;
 		
-		val setter = clazz.getMethod("set" + StringUtils.capitalize(attr), getter.getReturnType());
-		setter.invoke(head, convertedVal);
+		private final Map<ListAttribute, Collection<Object>> collections = new LinkedHashMap<ListAttribute, Collection<Object>>();
+		
+		private final Map<ListAttribute, Integer> counts = new HashMap<ListAttribute, Integer>();
+		
+		public ListPageAssembler(DdbClassMetadata<?> meta) {
+			this.meta = meta;
+		}
+		
+		/**
+		 * Returns true if the item was a list page chunk.
+		 */
+		public boolean add(Map<String, AttributeValue> item)
+		{
+			val page = item.get("page").s();
+			val list = meta.getListAttributeForPage(page);
+			if (list == null) return false;
+			
+			// Chunks missing their attribute were filtered out by a projection
+			if (!item.containsKey(list.getName())) return true;
+			
+			val index = list.pageIndex(page);
+			if (index == 0 && item.containsKey(ListAttribute.PAGE_COUNT_ATTRIBUTE)) counts.put(list, Integer.parseInt(item.get(ListAttribute.PAGE_COUNT_ATTRIBUTE).n()));
+			
+			// Stale chunks from a previously longer list
+			if (index >= counts.getOrDefault(list, Integer.MAX_VALUE)) return true;
+			
+			collections.computeIfAbsent(list, l -> l.newCollection()).addAll(list.decode(item.get(list.getName())));
+			return true;
+		}
+		
+		public void writeTo(Object obj)
+		{
+			collections.forEach((list, collection) -> list.write(obj, collection));
+		}
+	}
+	
+	/**
+	 * Builds a ProjectionExpression for the given attribute paths (plus the table keys), registering placeholder names for every path element
+	 * so that reserved words like "name" and "status" can be projected.
+	 */
+	private static String projectionExpression(List<String> projection, Map<String, String> names)
+	{
+		val paths = new ArrayList<String>();
+		
+		for (val path : Stream.concat(Stream.of("id", "page", ListAttribute.PAGE_COUNT_ATTRIBUTE), projection.stream()).distinct().toList()) {
+			paths.add(Arrays.stream(path.split("\\.")).map(element -> {
+				val placeholder = "#p" + names.size();
+				names.put(placeholder, element);
+				return placeholder;
+			}).collect(Collectors.joining(".")));
+		}
+		
+		return String.join(", ", paths);
 	}
 	
 	private String fieldForIndex(String index) {
@@ -329,15 +764,71 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 		return query(clazz, pageSize, index, ascending, exclusiveStartKey, sortKey, Persistable.getClassStorageBucket(clazz));
 	}
 	
-	@SneakyThrows
 	public <T extends Persistable> PaginatedList<T> query(Class<T> clazz, int pageSize, String index, Boolean ascending, String exclusiveStartKey, String sortKey, String storageBucket)
+	{
+		return query(clazz, pageSize, index, ascending, exclusiveStartKey, sortKey, storageBucket, null);
+	}
+	
+	/**
+	 * Queries the index, reading only the attributes named in the projection (dot separated paths into nested beans are allowed). See get for
+	 * the caveats around projected objects. A null projection reads everything.
+	 * 
+	 * The page size is passed to DynamoDb as the request limit, so a page only reads (roughly) the items it returns. The returned
+	 * lastEvaluatedKey identifies the last item in the page and can be passed back in as the exclusiveStartKey to fetch the next page. It is
+	 * null once there is nothing left to read.
+	 */
+	@SneakyThrows
+	public <T extends Persistable> PaginatedList<T> query(Class<T> clazz, int pageSize, String index, Boolean ascending, String exclusiveStartKey, String sortKey, String storageBucket, List<String> projection)
 	{
 		if (StringUtils.isBlank(index)) index = Persistable.OBJECT_BY_DATE_INDEX;
-		if (ascending == null) ascending = Boolean.TRUE;
-		val field = fieldForIndex(index);
 		
-		@SuppressWarnings("unchecked")
-		val table = ((DynamoDbTable<T>) ddbe.table(TABLE_NAME, TableSchema.fromBean(clazz))).index(index);
+		val meta = metadata(clazz);
+		val request = queryRequest(index, ascending, exclusiveStartKey, sortKey, storageBucket, projection);
+		
+		if (pageSize != -1) {
+			request.limit(pageSize);
+		}
+		
+		val pageIt = meta.index(index).query(request.build()).iterator();
+		
+		List<T> results = new ArrayList<T>();
+		
+		String lastEvaluatedKey = null;
+		
+		while ((pageSize == -1 || results.size() < pageSize) && pageIt.hasNext()) {
+			val page = pageIt.next();
+			val items = page.items();
+			val remaining = pageSize == -1 ? items.size() : Math.min(items.size(), pageSize - results.size());
+			
+			results.addAll(items.subList(0, remaining));
+			
+			if (remaining < items.size()) {
+				// A short (1 MB capped) page pushed us past the limit, so the page's own key would skip whatever we trimmed
+				lastEvaluatedKey = cursor(meta, index, results.get(results.size() - 1));
+			} else {
+				lastEvaluatedKey = page.lastEvaluatedKey() == null ? null : cursor(index, page.lastEvaluatedKey());
+			}
+		}
+		
+		return new PaginatedList<T>(results, pageSize, exclusiveStartKey, lastEvaluatedKey);
+	}
+	
+	/**
+	 * Lazily streams every object in the index, fetching fetchSize items from DynamoDb at a time as the stream is consumed. Meant for batch
+	 * jobs which walk (a prefix of) an index and don't want to hold it all in memory or pay to read more than they consume.
+	 */
+	public <T extends Persistable> Stream<T> stream(Class<T> clazz, int fetchSize, String index, Boolean ascending, String sortKey, String storageBucket, List<String> projection)
+	{
+		if (StringUtils.isBlank(index)) index = Persistable.OBJECT_BY_DATE_INDEX;
+		
+		val request = queryRequest(index, ascending, null, sortKey, storageBucket, projection).limit(fetchSize);
+		
+		return metadata(clazz).index(index).query(request.build()).stream().flatMap(page -> page.items().stream());
+	}
+	
+	private QueryEnhancedRequest.Builder queryRequest(String index, Boolean ascending, String exclusiveStartKey, String sortKey, String storageBucket, List<String> projection)
+	{
+		if (ascending == null) ascending = Boolean.TRUE;
 		
 		QueryConditional condition;
 		if (sortKey == null) {
@@ -349,10 +840,6 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 		val request = QueryEnhancedRequest.builder()
 				.queryConditional(condition);
 		
-		
-//		if (pageSize != -1) {
-//			request.limit(pageSize);
-//		}
 		if (exclusiveStartKey != null && (index.equals(Persistable.OBJECT_BY_ISSUE_IMPACT_INDEX) || index.equals(Persistable.OBJECT_BY_ISSUE_RATING_INDEX))) {
 			HashMap<String,AttributeValue> map = new HashMap<String,AttributeValue>();
 			
@@ -389,26 +876,26 @@ public class DynamoDbPersistenceService implements ObjectStorageServiceIF
 		}
 		request.scanIndexForward(ascending);
 		
-		var pageIt = table.query(request.build()).iterator();
-		
-		List<T> results = new ArrayList<T>();
-		
-		String lastEvaluatedKey = null;
-		
-		while (pageIt.hasNext() && results.size() < pageSize) {
-			val page = pageIt.next();
-			
-			results.addAll(page.items());
-			
-			lastEvaluatedKey = page.lastEvaluatedKey() == null ? null : readValue(index, page.lastEvaluatedKey().get(field));
+		if (projection != null) {
+			projection.forEach(path -> request.addNestedAttributesToProject(NestedAttributeName.create(path.split("\\."))));
 		}
 		
-		if (pageSize != -1)
-			results = results.stream().limit(pageSize).toList();
-		
-		return new PaginatedList<T>(results, pageSize, exclusiveStartKey, lastEvaluatedKey);
+		return request;
 	}
-
+	
+	/**
+	 * Encodes a query cursor in the "id~`~sortValue" form accepted as an exclusiveStartKey.
+	 */
+	private String cursor(String index, Map<String, AttributeValue> lastEvaluatedKey)
+	{
+		return lastEvaluatedKey.get("id").s() + "~`~" + readValue(index, lastEvaluatedKey.get(fieldForIndex(index)));
+	}
+	
+	private <T extends Persistable> String cursor(DdbClassMetadata<T> meta, String index, T item)
+	{
+		return item.getId() + "~`~" + readValue(index, meta.getSchema().attributeValue(item, fieldForIndex(index)));
+	}
+	
 	@Override
 	public <T extends Persistable> boolean exists(String id, Class<T> clazz) {
 		return get(id, clazz).isPresent();
@@ -0,0 +1,109 @@
+package us.poliscore.service.storage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+
+import io.quarkus.logging.Log;
+import lombok.SneakyThrows;
+import lombok.val;
+
+/**
+ * Tracks the files of the local store in least recently used order along with their total size, and evicts the least recently used files
+ * once the store grows past maxBytes. Files already on disk when the index is first used are ordered by their last modified time.
+ */
+public class LocalCacheIndex {
+	
+	/**
+	 * Eviction frees space down to this fraction of maxBytes, so that it isn't triggered again by the very next write.
+	 */
+	public static double LOW_WATERMARK = 0.9;
+	
+	private final File root;
+	
+	private final long maxBytes;
+	
+	/**
+	 * File sizes by path, in access order.
+	 */
+	private LinkedHashMap<String, Long> sizes;
+	
+	private long totalBytes = 0;
+	
+	public LocalCacheIndex(File root, long maxBytes)
+	{
+		this.root = root;
+		this.maxBytes = maxBytes;
+	}
+	
+	public synchronized void touch(File f)
+	{
+		sizes().get(f.getPath());
+	}
+	
+	/**
+	 * Records a file which has just been written, evicting others if the store is now over its limit.
+	 */
+	public synchronized void record(File f)
+	{
+		val previous = sizes().put(f.getPath(), f.length());
+		totalBytes += f.length() - (previous == null ? 0 : previous);
+		
+		if (totalBytes > maxBytes) evict();
+	}
+	
+	public synchronized void remove(File f)
+	{
+		val previous = sizes().remove(f.getPath());
+		if (previous != null) totalBytes -= previous;
+	}
+	
+	public synchronized long getTotalBytes()
+	{
+		sizes();
+		return totalBytes;
+	}
+	
+	private void evict()
+	{
+		val target = (long) (maxBytes * LOW_WATERMARK);
+		val it = sizes.entrySet().iterator();
+		int evicted = 0;
+		
+		while (totalBytes > target && it.hasNext()) {
+			val e = it.next();
+			
+			new File(e.getKey()).delete();
+			totalBytes -= e.getValue();
+			it.remove();
+			evicted++;
+		}
+		
+		Log.info("Evicted " + evicted + " files from the local store, which is now " + (totalBytes / (1024 * 1024)) + " MB");
+	}
+	
+	@SneakyThrows
+	private LinkedHashMap<String, Long> sizes()
+	{
+		if (sizes == null) {
+			sizes = new LinkedHashMap<String, Long>(16, 0.75f, true);
+			
+			if (root.exists()) {
+				try (val files = Files.walk(root.toPath())) {
+					files.filter(Files::isRegularFile)
+						.map(p -> p.toFile())
+						.sorted(Comparator.comparingLong(File::lastModified))
+						.forEach(f -> {
+							sizes.put(f.getPath(), f.length());
+							totalBytes += f.length();
+						});
+				}
+			}
+			
+			if (totalBytes > maxBytes) evict();
+		}
+		
+		return sizes;
+	}
+}
@@ -1,20 +1,51 @@
 package us.poliscore.service.storage;
 
+import java.io.File;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import io.quarkus.arc.DefaultBean;
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import lombok.Data;
+import lombok.Getter;
 import lombok.val;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import us.poliscore.model.Persistable;
 
+/**
+ * Reads through memory, then the local file store, then S3.
+ *
+ * The local store is a cache of S3 and is treated as one: it's bounded to MAX_LOCAL_BYTES (least recently used files are evicted, see
+ * LocalCacheIndex), and a local file is only served while it's known to be current. Each file is revalidated against the S3 object's last
+ * modified time at most once per FRESHNESS_WINDOW, which costs nothing for buckets with an exists manifest (see
+ * S3PersistenceService.optimizeExists) and a HEAD request otherwise. Objects which S3 doesn't have are remembered for NEGATIVE_TTL.
+ */
 @ApplicationScoped
 @DefaultBean
 public class LocalCachedS3Service implements ApplicationDataStoreIF
 {
+	public static long MAX_LOCAL_BYTES = 10L * 1024 * 1024 * 1024;
+	
+	public static Duration FRESHNESS_WINDOW = Duration.ofHours(6);
+	
+	public static Duration NEGATIVE_TTL = Duration.ofMinutes(15);
+	
+	/**
+	 * How much older than the S3 object a local file may be and still count as current. Older files were written just before their upload,
+	 * and this also absorbs clock skew between us and S3.
+	 */
+	public static Duration MODIFIED_TOLERANCE = Duration.ofSeconds(10);
+	
 	@Inject
 	private MemoryObjectService memory;
 	
@@ -23,12 +54,55 @@ public class LocalCachedS3Service implements ApplicationDataStoreIF
 	
 	@Inject
 	private LocalFilePersistenceService local;
+	
+	private LocalCacheIndex localIndex;
+	
+	/**
+	 * When each local file was last confirmed to be current.
+	 */
+	private final Map<String, Long> validated = new ConcurrentHashMap<String, Long>();
+	
+	/**
+	 * Ids which S3 didn't have, and until when to believe that.
+	 */
+	private final Map<String, Long> misses = new ConcurrentHashMap<String, Long>();
+	
+	@Getter
+	private final CacheStats stats = new CacheStats();
+	
+	/**
+	 * Concurrent misses on the same id share one local read or S3 fetch.
+	 */
+	@Getter
+	private final SingleFlight loads = new SingleFlight();
+	
+	@Data
+	public static class CacheStats {
+		private final AtomicLong memoryHits = new AtomicLong();
+		
+		private final AtomicLong localHits = new AtomicLong();
+		
+		private final AtomicLong negativeHits = new AtomicLong();
+		
+		private final AtomicLong misses = new AtomicLong();
+		
+		private final AtomicLong revalidations = new AtomicLong();
+		
+		private final AtomicLong staleFiles = new AtomicLong();
+		
+		private final AtomicLong s3Fetches = new AtomicLong();
+		
+		private final AtomicLong bytesFetched = new AtomicLong();
+	}
 
 	@Override
 	public void put(Persistable obj) {
 		memory.put(obj);
-		local.put(obj);
 		s3.put(obj);
+		local.put(obj);
+		
+		// Written after the upload, so the local copy is at least as new as the S3 object
+		cached(obj.getId());
 	}
 
 	@Override
@@ -36,11 +110,32 @@ public class LocalCachedS3Service implements ApplicationDataStoreIF
 	{
 		if (memory.exists(id, clazz))
 		{
+			stats.memoryHits.incrementAndGet();
+			return memory.get(id, clazz);
+		}
+		
+		if (isKnownMiss(id))
+		{
+			stats.negativeHits.incrementAndGet();
+			return Optional.empty();
+		}
+		
+		return loads.load(id, () -> load(id, clazz));
+	}
+	
+	private <T extends Persistable> Optional<T> load(String id, Class<T> clazz)
+	{
+		// The previous load of this id may have finished between our miss and taking the flight
+		if (memory.exists(id, clazz))
+		{
+			stats.memoryHits.incrementAndGet();
 			return memory.get(id, clazz);
 		}
 		
-		if (local.exists(id, clazz))
+		if (local.exists(id, clazz) && isCurrent(id, clazz))
 		{
+			stats.localHits.incrementAndGet();
+			localIndex().touch(local.fileFor(id));
 			return local.get(id, clazz);
 		}
 		
@@ -50,15 +145,111 @@ public class LocalCachedS3Service implements ApplicationDataStoreIF
 		{
 			memory.put(result.get());
 			local.put(result.get());
+			
+			val file = cached(id);
+			stats.s3Fetches.incrementAndGet();
+			stats.bytesFetched.addAndGet(file.length());
+		}
+		else
+		{
+			stats.misses.incrementAndGet();
+			evictLocal(id, clazz);
+			misses.put(id, System.currentTimeMillis() + NEGATIVE_TTL.toMillis());
 		}
 		
 		return result;
 	}
 	
+	/**
+	 * Whether the local file for the id is still current with S3. Checked at most once per FRESHNESS_WINDOW.
+	 */
+	private <T extends Persistable> boolean isCurrent(String id, Class<T> clazz)
+	{
+		val now = System.currentTimeMillis();
+		val lastValidated = validated.get(id);
+		
+		if (lastValidated != null && now - lastValidated < FRESHNESS_WINDOW.toMillis()) return true;
+		
+		stats.revalidations.incrementAndGet();
+		
+		val s3Modified = s3.lastModified(id, clazz);
+		val current = s3Modified.isPresent() && s3Modified.getAsLong() <= local.fileFor(id).lastModified() + MODIFIED_TOLERANCE.toMillis();
+		
+		if (current) validated.put(id, now);
+		else stats.staleFiles.incrementAndGet();
+		
+		return current;
+	}
+	
+	private boolean isKnownMiss(String id)
+	{
+		val until = misses.get(id);
+		if (until == null) return false;
+		
+		if (until > System.currentTimeMillis()) return true;
+		
+		misses.remove(id);
+		return false;
+	}
+	
+	/**
+	 * Records a freshly written local file as current.
+	 */
+	private File cached(String id)
+	{
+		val file = local.fileFor(id);
+		
+		validated.put(id, System.currentTimeMillis());
+		misses.remove(id);
+		localIndex().record(file);
+		
+		return file;
+	}
+	
+	private <T extends Persistable> void evictLocal(String id, Class<T> clazz)
+	{
+		if (!local.exists(id, clazz)) return;
+		
+		localIndex().remove(local.fileFor(id));
+		local.delete(id, clazz);
+		validated.remove(id);
+	}
+	
+	private synchronized LocalCacheIndex localIndex()
+	{
+		if (localIndex == null)
+		{
+			localIndex = new LocalCacheIndex(local.getLocalStorage(), MAX_LOCAL_BYTES);
+		}
+		
+		return localIndex;
+	}
+	
+	@PreDestroy
+	public void logStats()
+	{
+		Log.info("Local S3 cache stats: " + stats + ", " + loads + (localIndex == null ? "" : ", local store is " + (localIndex.getTotalBytes() / (1024 * 1024)) + " MB"));
+	}
+	
+	/**
+	 * Streams the object's JSON from the local store, or failing that from S3, without caching it. Meant for objects large enough that
+	 * holding them in memory is a problem.
+	 */
+	public <T extends Persistable> Optional<InputStream> getStream(String id, Class<T> clazz)
+	{
+		val cached = local.getStream(id, clazz);
+		if (cached.isPresent()) return cached;
+		
+		return s3.getStream(id, clazz);
+	}
+	
 	@Override
 	public <T extends Persistable> boolean exists(String id, Class<T> clazz)
 	{
-		return memory.exists(id, clazz) || local.exists(id, clazz) || s3.exists(id, clazz);
+		if (memory.exists(id, clazz)) return true;
+		if (isKnownMiss(id)) return false;
+		
+		return (local.exists(id, clazz) && isCurrent(id, clazz)) || s3.exists(id, clazz);
 	}
 
 	@Override
@@ -79,6 +270,10 @@ public class LocalCachedS3Service implements ApplicationDataStoreIF
 		return s3.query(clazz, storageBucket, key, pageSize, ascending);
 	}
 	
+	public <T extends Persistable> void forEach(Class<T> clazz, String storageBucket, String key, Consumer<T> consumer) {
+		s3.forEach(clazz, storageBucket, key, consumer);
+	}
+	
 	public <T extends Persistable> void optimizeExists(Class<T> clazz) {
 		s3.optimizeExists(clazz);
 	}
@@ -90,7 +285,7 @@ public class LocalCachedS3Service implements ApplicationDataStoreIF
 	public <T extends Persistable> void delete(String id, Class<T> clazz)
 	{
 		s3.delete(id, clazz);
-		local.delete(id, clazz);
+		evictLocal(id, clazz);
 	}
 	
 }
@@ -1,7 +1,10 @@
 package us.poliscore.service.storage;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -17,6 +20,11 @@ import us.poliscore.model.Persistable;
 @ApplicationScoped
 public class LocalFilePersistenceService implements ObjectStorageServiceIF
 {
+	
+	/**
+	 * Pretty printed files are easier to eyeball, but a good deal larger and slower to read back.
+	 */
+	public static boolean PRETTY_PRINT = false;
 
 	protected File getLocalStorage()
 	{
@@ -57,7 +65,7 @@ public class LocalFilePersistenceService implements ObjectStorageServiceIF
 		File f = fileFor(obj.getId());
 		
 		var mapper = PoliscoreUtil.getObjectMapper();
-		mapper.writerWithDefaultPrettyPrinter().writeValue(f, obj);
+		(PRETTY_PRINT ? mapper.writerWithDefaultPrettyPrinter() : mapper.writer()).writeValue(f, obj);
 		
 //		Log.info("Wrote file to " + out.getAbsolutePath());
 	}
@@ -84,6 +92,20 @@ public class LocalFilePersistenceService implements ObjectStorageServiceIF
 		return Optional.of(mapper.readValue(f, clazz));
 	}
 
+	/**
+	 * Opens the object's JSON as a stream. The caller must close it.
+	 */
+	@SneakyThrows
+	public <T extends Persistable> Optional<InputStream> getStream(String id, Class<T> clazz)
+	{
+		File f = fileFor(id);
+		
+		if (!f.exists())
+			return Optional.empty();
+		
+		return Optional.of(new BufferedInputStream(new FileInputStream(f)));
+	}
+
 	@Override
 	public <T extends Persistable> boolean exists(String id, Class<T> clazz) {
 		File f = fileFor(id);
@@ -1,44 +1,190 @@
 package us.poliscore.service.storage;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
+import io.quarkus.logging.Log;
 import jakarta.enterprise.context.ApplicationScoped;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.val;
+import us.poliscore.PoliscoreUtil;
 import us.poliscore.model.Persistable;
 import us.poliscore.model.bill.Bill;
+import us.poliscore.model.legislator.Legislator;
 
+/**
+ * Objects are indexed by id, and also partitioned by class and then storage bucket, so that queries only ever touch the partitions they
+ * return. All mutation is safe to do from multiple threads.
+ *
+ * The id index is ordered, and since ids are hierarchical (BIL/us/congress/119/hr/1234) any subtree of them can be reached with a seek
+ * through scanPrefix or rangeScan.
+ *
+ * Setting MAX_WEIGHT bounds the heap the store uses. Objects of the classes in WEIGHERS are weighed as they're put, and once the total
+ * goes over MAX_WEIGHT the least recently used ones are serialized to a SpillFile. A spilled object is faulted back in by get. Queries
+ * and scans return spilled objects as fresh copies without faulting them in, so in bounded mode an object which was modified must be put
+ * again, and only its JSON state survives a spill.
+ */
 @ApplicationScoped
 public class MemoryObjectService implements ObjectStorageServiceIF {
 	
-	protected static Map<String, Persistable> memoryStore = new HashMap<String,Persistable>();
+	/**
+	 * Stands in for objects without a storage bucket, since the partition maps can't hold null keys.
+	 */
+	private static final String NO_BUCKET = "";
+	
+	/**
+	 * The total weight of objects to keep on the heap. Unbounded by default.
+	 */
+	public static long MAX_WEIGHT = Long.MAX_VALUE;
+	
+	/**
+	 * Spilling frees weight down to this fraction of MAX_WEIGHT, so that it isn't triggered again by the very next put.
+	 */
+	public static double SPILL_LOW_WATERMARK = 0.8;
+	
+	/**
+	 * Estimates of the heap used by each spillable class, in bytes. Objects of other classes are never spilled.
+	 */
+	public static Map<Class<?>, ToLongFunction<Persistable>> WEIGHERS = new ConcurrentHashMap<Class<?>, ToLongFunction<Persistable>>(Map.of(
+			Legislator.class, o -> 4096 + 768L * ((Legislator) o).getInteractions().size(),
+			Bill.class, o -> 8192
+	));
+	
+	public static File SPILL_DIR = new File(PoliscoreUtil.APP_DATA, "spill");
+	
+	protected static ConcurrentNavigableMap<String, Persistable> memoryStore = new ConcurrentSkipListMap<String,Persistable>();
+	
+	protected static Map<Class<?>, Map<String, Map<String, Persistable>>> partitions = new ConcurrentHashMap<Class<?>, Map<String, Map<String, Persistable>>>();
+	
+	/**
+	 * The weight of every weighed object on the heap by id, in access order. Guards totalWeight and classWeights.
+	 */
+	private static final LinkedHashMap<String, Long> resident = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	
+	private static long totalWeight = 0;
+	
+	private static final Map<Class<?>, Long> classWeights = new HashMap<Class<?>, Long>();
+	
+	private static SpillFile spillFile;
+	
+	/**
+	 * Takes the place of a spilled object in the index and its partition.
+	 */
+	@Getter
+	@AllArgsConstructor
+	private static class SpilledObject implements Persistable {
+		private String id;
+		
+		private String storageBucket;
+		
+		private Class<? extends Persistable> type;
+		
+		private SpillFile.Ref ref;
+		
+		@SneakyThrows
+		public Persistable load()
+		{
+			return PoliscoreUtil.getObjectMapper().readValue(spillFile.read(ref), type);
+		}
+		
+		public void setId(String id) { throw new UnsupportedOperationException(); }
+		
+		public void setStorageBucket(String prefix) { throw new UnsupportedOperationException(); }
+	}
 	
 	public void put(Persistable obj)
 	{
 		if (obj instanceof Bill) { ((Bill)obj).setText(null); }
 		
-		memoryStore.put(obj.getId(), obj);
+		val partition = partition(obj.getClass(), obj.getStorageBucket());
+		
+		// Computing on the id serializes puts of the same object, which keeps the id index and the partitions in step
+		memoryStore.compute(obj.getId(), (id, previous) -> {
+			if (previous != null) {
+				val previousPartition = partition(storedClass(previous), previous.getStorageBucket());
+				if (previousPartition != partition) previousPartition.remove(id);
+			}
+			
+			partition.put(id, obj);
+			return obj;
+		});
+		
+		if (isBounded()) track(obj);
 	}
 	
 	@SuppressWarnings("unchecked")
 	public <T extends Persistable> Optional<T> get(String id, Class<T> clazz)
 	{
-		if (memoryStore.containsKey(id))
-		{
-			return Optional.of((T) memoryStore.get(id));
+		val stored = memoryStore.get(id);
+		
+		if (stored instanceof SpilledObject) {
+			val spilled = (SpilledObject) stored;
+			val obj = spilled.load();
+			
+			if (memoryStore.replace(id, spilled, obj)) {
+				partition(spilled.getType(), spilled.getStorageBucket()).replace(id, spilled, obj);
+				track(obj);
+				return Optional.of((T) obj);
+			}
+			
+			// Someone else faulted it in or replaced it first
+			return get(id, clazz);
 		}
-		else
-		{
-			return Optional.empty();
+		
+		if (stored != null && isBounded()) {
+			synchronized (resident) {
+				resident.get(id);
+			}
 		}
+		
+		return Optional.ofNullable((T) stored);
 	}
 	
 	public <T extends Persistable> long count(String idClassPrefix)
 	{
-		return memoryStore.keySet().stream().filter(k -> k.startsWith(idClassPrefix)).count();
+		return prefixView(idClassPrefix).size();
+	}
+	
+	/**
+	 * Every object whose id starts with the prefix, in id order. e.g. scanPrefix("BIL/us/congress/119/hr/") is every House bill of the 119th
+	 * congress. Finding the start of the range is a seek, and the stream is evaluated lazily over a live view of the store.
+	 */
+	public Stream<Persistable> scanPrefix(String prefix)
+	{
+		return prefixView(prefix).values().stream().map(MemoryObjectService::resolve);
+	}
+	
+	/**
+	 * The objects of the class whose ids start with the prefix, in id order.
+	 */
+	public <T extends Persistable> Stream<T> scanPrefix(String prefix, Class<T> clazz)
+	{
+		return scanPrefix(prefix).filter(clazz::isInstance).map(clazz::cast);
+	}
+	
+	/**
+	 * Every object with an id from fromId (inclusive) to toId (exclusive), in id order.
+	 */
+	public Stream<Persistable> rangeScan(String fromId, String toId)
+	{
+		return memoryStore.subMap(fromId, true, toId, false).values().stream().map(MemoryObjectService::resolve);
+	}
+	
+	private static ConcurrentNavigableMap<String, Persistable> prefixView(String prefix)
+	{
+		return memoryStore.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
 	}
 	
 	@Override
@@ -50,20 +196,125 @@ public class MemoryObjectService implements ObjectStorageServiceIF {
 	@SneakyThrows
 	public <T extends Persistable> List<T> query(Class<T> clazz)
 	{
-		val idClassPrefix = Persistable.getClassStorageBucket(clazz);
-		
-		return memoryStore.values().stream().filter(o -> o.getStorageBucket().equals(idClassPrefix)).map(o -> (T) o).toList();
+		return query(clazz, Persistable.getClassStorageBucket(clazz));
 	}
 	
+	/**
+	 * Every object in the storage bucket, whatever its class.
+	 */
 	@SneakyThrows
+	@SuppressWarnings("unchecked")
 	public <T extends Persistable> List<T> query(Class<T> clazz, String storageBucket)
 	{
-		return memoryStore.values().stream().filter(o -> o.getStorageBucket().equals(storageBucket)).map(o -> (T) o).toList();
+		val results = new ArrayList<T>();
+		
+		for (val buckets : partitions.values()) {
+			val partition = buckets.get(storageBucket == null ? NO_BUCKET : storageBucket);
+			if (partition != null) partition.values().forEach(o -> results.add((T) resolve(o)));
+		}
+		
+		return results;
 	}
 	
 	@SneakyThrows
+	@SuppressWarnings("unchecked")
 	public <T extends Persistable> List<T> queryAll(Class<T> clazz)
 	{
-		return memoryStore.values().stream().filter(o -> clazz.isInstance(o)).map(o -> (T) o).toList();
+		val results = new ArrayList<T>();
+		
+		for (val e : partitions.entrySet()) {
+			if (!clazz.isAssignableFrom(e.getKey())) continue;
+			
+			for (val partition : e.getValue().values()) {
+				partition.values().forEach(o -> results.add((T) resolve(o)));
+			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * The estimated heap weight of each class's objects which aren't currently spilled.
+	 */
+	public static Map<Class<?>, Long> getClassWeights()
+	{
+		synchronized (resident) {
+			return new HashMap<Class<?>, Long>(classWeights);
+		}
+	}
+	
+	private static boolean isBounded()
+	{
+		return MAX_WEIGHT != Long.MAX_VALUE;
+	}
+	
+	private static void track(Persistable obj)
+	{
+		val weigher = WEIGHERS.get(obj.getClass());
+		if (weigher == null) return;
+		
+		val weight = weigher.applyAsLong(obj);
+		
+		synchronized (resident) {
+			val previous = resident.put(obj.getId(), weight);
+			addWeight(obj.getClass(), weight - (previous == null ? 0 : previous));
+			
+			if (totalWeight > MAX_WEIGHT) spill();
+		}
+	}
+	
+	/**
+	 * Serializes the least recently used objects out to the spill file until the total weight is back under the low watermark.
+	 */
+	@SneakyThrows
+	private static void spill()
+	{
+		val target = (long) (MAX_WEIGHT * SPILL_LOW_WATERMARK);
+		val it = resident.entrySet().iterator();
+		int spilled = 0;
+		
+		if (spillFile == null) spillFile = SpillFile.create(SPILL_DIR);
+		
+		while (totalWeight > target && it.hasNext()) {
+			val e = it.next();
+			val obj = memoryStore.get(e.getKey());
+			
+			it.remove();
+			
+			if (obj == null || obj instanceof SpilledObject) continue;
+			
+			addWeight(obj.getClass(), -e.getValue());
+			
+			val placeholder = new SpilledObject(obj.getId(), obj.getStorageBucket(), obj.getClass(), spillFile.write(PoliscoreUtil.getObjectMapper().writeValueAsBytes(obj)));
+			
+			if (memoryStore.replace(obj.getId(), obj, placeholder)) {
+				partition(obj.getClass(), obj.getStorageBucket()).replace(obj.getId(), obj, placeholder);
+				spilled++;
+			}
+		}
+		
+		Log.info("Spilled " + spilled + " objects from memory (" + (spillFile.getSize() / (1024 * 1024)) + " MB spill file). Resident weights: " + classWeights);
+	}
+	
+	private static void addWeight(Class<?> clazz, long delta)
+	{
+		totalWeight += delta;
+		classWeights.merge(clazz, delta, Long::sum);
+	}
+	
+	private static Persistable resolve(Persistable stored)
+	{
+		return stored instanceof SpilledObject ? ((SpilledObject) stored).load() : stored;
+	}
+	
+	private static Class<?> storedClass(Persistable stored)
+	{
+		return stored instanceof SpilledObject ? ((SpilledObject) stored).getType() : stored.getClass();
+	}
+	
+	private static Map<String, Persistable> partition(Class<?> clazz, String storageBucket)
+	{
+		return partitions.computeIfAbsent(clazz, c -> new ConcurrentHashMap<String, Map<String, Persistable>>())
+				.computeIfAbsent(storageBucket == null ? NO_BUCKET : storageBucket, b -> new ConcurrentHashMap<String, Persistable>());
 	}
 }
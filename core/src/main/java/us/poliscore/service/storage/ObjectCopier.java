@@ -0,0 +1,295 @@
+package us.poliscore.service.storage;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.SneakyThrows;
+import lombok.val;
+
+/**
+ * Deep copies model objects field by field, which is far cheaper than round tripping them through JSON (see SnapshotBenchmark in the
+ * databuilder) and also keeps the state Jackson doesn't see.
+ *
+ * Strings, boxed primitives, enums and java.time values are immutable and shared. Collections and maps are rebuilt with copies of their
+ * elements, and anything else is instantiated with its no-arg constructor and copied field by field. Some objects can't be copied
+ * faithfully: a JDK type it doesn't know, a class without a no-arg constructor, or, in a native image, a class which isn't registered for
+ * reflection (with @RegisterForReflection on it or a class enclosing it). Callers which may be handed one pass a fallback, usually a JSON
+ * round trip, to copy(Object, UnaryOperator).
+ */
+public final class ObjectCopier {
+	
+	private static final boolean NATIVE_IMAGE = System.getProperty("org.graalvm.nativeimage.imagecode") != null;
+	
+	private static final Map<Class<?>, ClassCopier> copiers = new ConcurrentHashMap<Class<?>, ClassCopier>();
+	
+	/**
+	 * Classes of objects which have needed the fallback, which they then go straight to.
+	 */
+	private static final Set<Class<?>> fallbacks = ConcurrentHashMap.newKeySet();
+	
+	private ObjectCopier() { }
+	
+	/**
+	 * Thrown (without a stack trace) to abandon a copy which reached something it can't copy. Never leaves this class.
+	 */
+	private static class Uncopyable extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		Uncopyable(String reason)
+		{
+			super(reason, null, false, false);
+		}
+	}
+	
+	/**
+	 * Deep copies the object. Throws IllegalArgumentException if it holds anything which can't be copied.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copy(T obj)
+	{
+		try {
+			return (T) copy(obj, new IdentityHashMap<Object, Object>());
+		} catch (Uncopyable e) {
+			throw new IllegalArgumentException("Can't copy " + obj.getClass().getName() + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Deep copies the object, or returns what the fallback makes of it if it holds anything which can't be copied. The first fallback for each
+	 * class is logged, since in a native image it means something reachable from the class should be registered for reflection.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copy(T obj, UnaryOperator<T> fallback)
+	{
+		if (obj == null || fallbacks.contains(obj.getClass())) return obj == null ? null : fallback.apply(obj);
+		
+		try {
+			return (T) copy(obj, new IdentityHashMap<Object, Object>());
+		} catch (Uncopyable e) {
+			if (fallbacks.add(obj.getClass())) Log.warn("ObjectCopier can't copy " + obj.getClass().getName() + " (" + e.getMessage() + "), falling back for all of them");
+			
+			return fallback.apply(obj);
+		}
+	}
+	
+	private static Object copy(Object obj, IdentityHashMap<Object, Object> copies)
+	{
+		if (obj == null || isImmutable(obj)) return obj;
+		
+		val existing = copies.get(obj);
+		if (existing != null) return existing;
+		
+		val clazz = obj.getClass();
+		
+		if (clazz.isArray()) return copyArray(obj, copies);
+		if (obj instanceof Collection) return copyCollection((Collection<?>) obj, copies);
+		if (obj instanceof Map) return copyMap((Map<?, ?>) obj, copies);
+		
+		return copiers.computeIfAbsent(clazz, ClassCopier::new).copy(obj, copies);
+	}
+	
+	private static boolean isImmutable(Object obj)
+	{
+		return obj instanceof String || obj instanceof Number && (obj.getClass().getName().startsWith("java.lang.") || obj instanceof BigDecimal || obj instanceof BigInteger)
+				|| obj instanceof Boolean || obj instanceof Character || obj instanceof Enum || obj instanceof UUID || obj instanceof Class
+				|| obj.getClass().getName().startsWith("java.time.");
+	}
+	
+	private static Object copyArray(Object array, IdentityHashMap<Object, Object> copies)
+	{
+		val length = Array.getLength(array);
+		val copy = Array.newInstance(array.getClass().getComponentType(), length);
+		copies.put(array, copy);
+		
+		if (array.getClass().getComponentType().isPrimitive()) {
+			System.arraycopy(array, 0, copy, 0, length);
+		} else {
+			for (int i = 0; i < length; ++i) {
+				Array.set(copy, i, copy(Array.get(array, i), copies));
+			}
+		}
+		
+		return copy;
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object copyCollection(Collection<?> collection, IdentityHashMap<Object, Object> copies)
+	{
+		Collection<Object> copy;
+		
+		if (collection.getClass() == TreeSet.class) copy = new TreeSet<Object>(((TreeSet) collection).comparator());
+		else if (isInstantiable(collection.getClass())) copy = (Collection<Object>) instantiate(collection.getClass());
+		else if (collection instanceof SortedSet) copy = new TreeSet<Object>(((SortedSet) collection).comparator());
+		else if (collection instanceof Set) copy = new LinkedHashSet<Object>();
+		else if (collection instanceof List) copy = new ArrayList<Object>(collection.size());
+		else throw new Uncopyable("can't copy a " + collection.getClass().getName());
+		
+		copies.put(collection, copy);
+		
+		for (val e : collection) {
+			copy.add(copy(e, copies));
+		}
+		
+		return copy;
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object copyMap(Map<?, ?> map, IdentityHashMap<Object, Object> copies)
+	{
+		Map<Object, Object> copy;
+		
+		if (map.getClass() == TreeMap.class) copy = new TreeMap<Object, Object>(((TreeMap) map).comparator());
+		else if (map.getClass() == EnumMap.class) copy = new EnumMap((EnumMap) map);
+		else if (isInstantiable(map.getClass())) copy = (Map<Object, Object>) instantiate(map.getClass());
+		else if (map instanceof SortedMap) copy = new TreeMap<Object, Object>(((SortedMap) map).comparator());
+		else copy = new LinkedHashMap<Object, Object>();
+		
+		copies.put(map, copy);
+		
+		for (val e : map.entrySet()) {
+			copy.put(copy(e.getKey(), copies), copy(e.getValue(), copies));
+		}
+		
+		return copy;
+	}
+	
+	/**
+	 * JDK collections with a public no-arg constructor (ArrayList, HashMap and friends), and any of our own subclasses of them.
+	 */
+	private static boolean isInstantiable(Class<?> clazz)
+	{
+		if (!clazz.getName().startsWith("java.")) return true;
+		
+		try {
+			return Modifier.isPublic(clazz.getModifiers()) && Modifier.isPublic(clazz.getConstructor().getModifiers());
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	private static Object instantiate(Class<?> clazz)
+	{
+		return copiers.computeIfAbsent(clazz, ClassCopier::new).newInstance();
+	}
+	
+	/**
+	 * The constructor and instance fields of a class, or why it can't be copied, looked up once.
+	 */
+	private static class ClassCopier {
+		private final Constructor<?> constructor;
+		
+		private final List<Field> fields = new ArrayList<Field>();
+		
+		private final String uncopyable;
+		
+		ClassCopier(Class<?> clazz)
+		{
+			this.uncopyable = uncopyable(clazz);
+			
+			if (uncopyable != null) {
+				this.constructor = null;
+				return;
+			}
+			
+			try {
+				this.constructor = clazz.getDeclaredConstructor();
+				this.constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+			
+			// Collections are filled through their own API, only plain objects are copied field by field
+			if (Collection.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz)) return;
+			
+			for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (val f : c.getDeclaredFields()) {
+					if (Modifier.isStatic(f.getModifiers())) continue;
+					
+					f.setAccessible(true);
+					fields.add(f);
+				}
+			}
+		}
+		
+		private static String uncopyable(Class<?> clazz)
+		{
+			if (clazz.getName().startsWith("java.") && !Collection.class.isAssignableFrom(clazz) && !Map.class.isAssignableFrom(clazz)) {
+				return "can't copy a " + clazz.getName();
+			}
+			
+			if (NATIVE_IMAGE && !isRegisteredForReflection(clazz)) {
+				return clazz.getName() + " isn't registered for reflection";
+			}
+			
+			try {
+				clazz.getDeclaredConstructor();
+				return null;
+			} catch (NoSuchMethodException e) {
+				return clazz.getName() + " has no no-arg constructor";
+			}
+		}
+		
+		@SneakyThrows
+		Object newInstance()
+		{
+			if (uncopyable != null) throw new Uncopyable(uncopyable);
+			
+			return constructor.newInstance();
+		}
+		
+		@SneakyThrows
+		Object copy(Object obj, IdentityHashMap<Object, Object> copies)
+		{
+			val copy = newInstance();
+			copies.put(obj, copy);
+			
+			for (val f : fields) {
+				val type = f.getType();
+				
+				if (type.isPrimitive()) {
+					if (type == int.class) f.setInt(copy, f.getInt(obj));
+					else if (type == long.class) f.setLong(copy, f.getLong(obj));
+					else if (type == double.class) f.setDouble(copy, f.getDouble(obj));
+					else if (type == float.class) f.setFloat(copy, f.getFloat(obj));
+					else if (type == boolean.class) f.setBoolean(copy, f.getBoolean(obj));
+					else f.set(copy, f.get(obj));
+				} else {
+					f.set(copy, ObjectCopier.copy(f.get(obj), copies));
+				}
+			}
+			
+			return copy;
+		}
+		
+		private static boolean isRegisteredForReflection(Class<?> clazz)
+		{
+			for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+				if (c.isAnnotationPresent(RegisterForReflection.class)) return true;
+			}
+			
+			return false;
+		}
+	}
+}
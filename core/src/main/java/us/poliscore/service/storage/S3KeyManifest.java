@@ -0,0 +1,321 @@
+package us.poliscore.service.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import io.quarkus.logging.Log;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+
+/**
+ * An on-disk record of every S3 key under a prefix, along with its ETag, size and last modified time, so that existence checks can be
+ * answered locally instead of listing the bucket on every run.
+ *
+ * The file is an append-only journal of binary records (keys are stored relative to the prefix). Puts and deletes made through
+ * S3PersistenceService are appended as they happen, and the journal is compacted into a snapshot whenever it's reconciled. Writes made
+ * elsewhere are picked up by reconcile, which checks a slice of the bucket listing each run (resuming where the last run stopped and
+ * wrapping around), so the whole prefix is re-verified every few runs without ever relisting it in one go.
+ */
+public class S3KeyManifest {
+	
+	/**
+	 * How many listed keys each call to reconcile checks against the manifest.
+	 */
+	public static int RECONCILE_KEYS_PER_RUN = 10000;
+	
+	private static final int MAGIC = 0x50534b4d; // "PSKM"
+	
+	private static final int FORMAT_VERSION = 1;
+	
+	private static final byte RECORD_PUT = 1;
+	
+	private static final byte RECORD_DELETE = 2;
+	
+	private static final byte RECORD_CURSOR = 3;
+	
+	private static final String EXTENSION = ".manifest";
+	
+	@Data
+	@AllArgsConstructor
+	public static class Entry {
+		private String eTag;
+		
+		private long size;
+		
+		private long lastModified;
+	}
+	
+	@Getter
+	private final String prefix;
+	
+	private final File file;
+	
+	private Map<String, Entry> entries;
+	
+	/**
+	 * The last key checked by reconcile, or null to start from the beginning of the prefix.
+	 */
+	private String cursor;
+	
+	private DataOutputStream journal;
+	
+	private S3KeyManifest(File dir, String prefix)
+	{
+		this.prefix = prefix;
+		this.file = new File(dir, URLEncoder.encode(prefix, StandardCharsets.UTF_8) + EXTENSION);
+	}
+	
+	public static S3KeyManifest open(File dir, String prefix)
+	{
+		dir.mkdirs();
+		
+		return new S3KeyManifest(dir, prefix);
+	}
+	
+	/**
+	 * The prefixes of every manifest stored in the directory.
+	 */
+	public static List<String> prefixes(File dir)
+	{
+		val prefixes = new ArrayList<String>();
+		val files = dir.listFiles((d, name) -> name.endsWith(EXTENSION));
+		
+		if (files != null) {
+			for (val f : files) {
+				prefixes.add(URLDecoder.decode(f.getName().substring(0, f.getName().length() - EXTENSION.length()), StandardCharsets.UTF_8));
+			}
+		}
+		
+		return prefixes;
+	}
+	
+	public synchronized boolean contains(String key)
+	{
+		return entries().containsKey(key);
+	}
+	
+	/**
+	 * The recorded entry for the key, or null if the key isn't in the manifest.
+	 */
+	public synchronized Entry get(String key)
+	{
+		return entries().get(key);
+	}
+	
+	public synchronized int size()
+	{
+		return entries().size();
+	}
+	
+	public synchronized void put(String key, String eTag, long size, long lastModified)
+	{
+		val entry = new Entry(eTag, size, lastModified);
+		if (entries != null) entries.put(key, entry);
+		
+		append(out -> writePut(out, key, entry));
+	}
+	
+	public synchronized void remove(String key)
+	{
+		if (entries != null) entries.remove(key);
+		
+		append(out -> {
+			out.writeByte(RECORD_DELETE);
+			out.writeUTF(relative(key));
+		});
+	}
+	
+	/**
+	 * Brings the manifest up to date with the bucket. A manifest which doesn't exist yet is built from a full listing. Otherwise the next
+	 * maxKeys keys after the cursor are listed: new and changed keys are recorded, and keys in the manifest within the listed range which
+	 * weren't listed are removed. The journal is then compacted.
+	 */
+	@SneakyThrows
+	public synchronized void reconcile(S3Client client, String bucket, int maxKeys)
+	{
+		val entries = entries();
+		val initialized = file.exists();
+		
+		if (!initialized) maxKeys = Integer.MAX_VALUE;
+		
+		val listed = new HashSet<String>();
+		String last = null;
+		String continuationToken = null;
+		int added = 0;
+		
+		do {
+			val builder = ListObjectsV2Request.builder()
+					.bucket(bucket)
+					.prefix(prefix)
+					.maxKeys(Math.min(1000, maxKeys - listed.size()));
+			
+			if (continuationToken != null) builder.continuationToken(continuationToken);
+			else if (cursor != null) builder.startAfter(cursor);
+			
+			val resp = client.listObjectsV2(builder.build());
+			
+			for (val o : resp.contents()) {
+				val entry = new Entry(o.eTag(), o.size(), o.lastModified().toEpochMilli());
+				
+				if (!entry.equals(entries.put(o.key(), entry))) added++;
+				
+				listed.add(o.key());
+				last = o.key();
+			}
+			
+			continuationToken = resp.nextContinuationToken();
+		}
+		while (continuationToken != null && listed.size() < maxKeys);
+		
+		// Anything in the range we just listed which S3 didn't return has been deleted by someone else
+		val from = cursor;
+		val to = continuationToken == null ? null : last;
+		
+		val before = entries.size();
+		entries.keySet().removeIf(key -> (from == null || key.compareTo(from) > 0) && (to == null || key.compareTo(to) <= 0) && !listed.contains(key));
+		val removed = before - entries.size();
+		
+		cursor = to;
+		
+		compact();
+		
+		Log.info("Reconciled S3 manifest for " + prefix + ": checked " + listed.size() + " keys, " + added + " new or changed, " + removed + " removed, "
+				+ entries.size() + " total" + (cursor == null ? " (wrapped around)" : ""));
+	}
+	
+	private Map<String, Entry> entries()
+	{
+		if (entries == null) {
+			entries = new HashMap<String, Entry>();
+			
+			if (file.exists()) load();
+		}
+		
+		return entries;
+	}
+	
+	@SneakyThrows
+	private void load()
+	{
+		try (val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				Log.warn("Ignoring unreadable S3 manifest " + file.getAbsolutePath());
+				file.delete();
+				return;
+			}
+			
+			while (true) {
+				byte type;
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+				
+				if (type == RECORD_PUT) {
+					entries.put(prefix + in.readUTF(), new Entry(in.readUTF(), in.readLong(), in.readLong()));
+				} else if (type == RECORD_DELETE) {
+					entries.remove(prefix + in.readUTF());
+				} else if (type == RECORD_CURSOR) {
+					val c = in.readUTF();
+					cursor = c.isEmpty() ? null : prefix + c;
+				} else {
+					throw new IOException("Corrupt S3 manifest " + file.getAbsolutePath());
+				}
+			}
+		} catch (EOFException e) {
+			// A record cut short by a crash mid-append. Everything before it is intact.
+		}
+	}
+	
+	/**
+	 * Rewrites the journal as a snapshot of the current entries, replacing the old file atomically.
+	 */
+	@SneakyThrows
+	private void compact()
+	{
+		closeJournal();
+		
+		val tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		
+		try (val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			
+			for (val e : entries.entrySet()) {
+				writePut(out, e.getKey(), e.getValue());
+			}
+			
+			out.writeByte(RECORD_CURSOR);
+			out.writeUTF(cursor == null ? "" : relative(cursor));
+		}
+		
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Appends a record to the journal. Nothing is recorded for a manifest which hasn't been built yet, since building it lists everything.
+	 */
+	@SneakyThrows
+	private void append(RecordWriter writer)
+	{
+		if (!file.exists()) return;
+		
+		if (journal == null) {
+			journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		}
+		
+		writer.write(journal);
+		journal.flush();
+	}
+	
+	@SneakyThrows
+	private void closeJournal()
+	{
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+	}
+	
+	private void writePut(DataOutputStream out, String key, Entry entry) throws IOException
+	{
+		out.writeByte(RECORD_PUT);
+		out.writeUTF(relative(key));
+		out.writeUTF(entry.getETag() == null ? "" : entry.getETag());
+		out.writeLong(entry.getSize());
+		out.writeLong(entry.getLastModified());
+	}
+	
+	private String relative(String key)
+	{
+		return key.substring(prefix.length());
+	}
+	
+	@FunctionalInterface
+	private interface RecordWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+}
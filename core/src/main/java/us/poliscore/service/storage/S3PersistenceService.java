@@ -1,12 +1,28 @@
 package us.poliscore.service.storage;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import io.quarkus.logging.Log;
@@ -14,7 +30,9 @@ import jakarta.enterprise.context.ApplicationScoped;
 import lombok.Cleanup;
 import lombok.SneakyThrows;
 import lombok.val;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
@@ -30,15 +48,63 @@ public class S3PersistenceService implements ObjectStorageServiceIF
 	
 	public static final String BUCKET_NAME = "poliscore-archive";
 	
+	/**
+	 * The maximum number of concurrent downloads made by query, forEach and fetchAll.
+	 */
+	public static int FETCH_CONCURRENCY = 64;
+	
+	/**
+	 * Whether objects are gzipped as they're serialized. Compressed objects are marked with a Content-Encoding of gzip and transparently
+	 * decompressed when read, so objects written either way can be read back.
+	 */
+	public static boolean COMPRESS = true;
+	
+	public static final String CONTENT_ENCODING_GZIP = "gzip";
+	
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	
+	private static final ExecutorService parsePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+		val t = new Thread(r, "s3-parse");
+		t.setDaemon(true);
+		return t;
+	});
+	
 	private S3Client client;
 	
-	private static HashMap<String, Set<String>> objectsInBucket = new HashMap<String, Set<String>>();
+	private S3AsyncClient asyncClient;
+	
+	/**
+	 * Where the S3KeyManifests used by optimizeExists are kept.
+	 */
+	public static File MANIFEST_DIR = new File(PoliscoreUtil.APP_DATA, "s3-manifest");
+	
+	/**
+	 * Every manifest on disk, by prefix. All of them are kept up to date with our puts and deletes.
+	 */
+	private static Map<String, S3KeyManifest> manifests = null;
+	
+	/**
+	 * The storage buckets which optimizeExists has been called for, whose exists checks are answered by their manifest.
+	 */
+	private static Set<String> optimizedBuckets = ConcurrentHashMap.newKeySet();
 	
 	protected String getKey(String id)
 	{
 		return id + ".json";
 	}
 	
+	private S3AsyncClient getAsyncClient()
+	{
+		if (asyncClient == null)
+		{
+			asyncClient = S3AsyncClient.crtBuilder()
+					.maxConcurrency(FETCH_CONCURRENCY)
+					.build();
+		}
+		
+		return asyncClient;
+	}
+	
 	private S3Client getClient()
 	{
 		if (client == null)
@@ -55,12 +121,22 @@ public class S3PersistenceService implements ObjectStorageServiceIF
 	{
 		val key = getKey(obj.getId());
 		
+		// Read once, so that the recorded encoding is always the one the body was written with
+		val contentEncoding = COMPRESS ? CONTENT_ENCODING_GZIP : null;
+		
         PutObjectRequest putOb = PutObjectRequest.builder()
                 .bucket(BUCKET_NAME)
                 .key(key)
+                .contentType("application/json")
+                .contentEncoding(contentEncoding)
                 .build();
 
-        getClient().putObject(putOb, RequestBody.fromString(PoliscoreUtil.getObjectMapper().writeValueAsString(obj)));
+        val body = serialize(obj, contentEncoding);
+        val resp = getClient().putObject(putOb, RequestBody.fromBytes(body));
+        
+        for (val manifest : manifestsFor(key)) {
+        	manifest.put(key, resp.eTag(), body.length, System.currentTimeMillis());
+        }
         
         Log.info("Uploaded to S3 " + key);
 	}
@@ -80,7 +156,7 @@ public class S3PersistenceService implements ObjectStorageServiceIF
         	
 //        	Log.info("Retrieved " + clazz.getSimpleName() + " from S3 " + key);
         	
-        	return Optional.of(PoliscoreUtil.getObjectMapper().readValue(resp, clazz));
+        	return Optional.of(PoliscoreUtil.getObjectMapper().readValue(decoded(resp, resp.response().contentEncoding()), clazz));
         }
         catch (NoSuchKeyException ex)
         {
@@ -90,15 +166,54 @@ public class S3PersistenceService implements ObjectStorageServiceIF
         }
 	}
 	
+	/**
+	 * Opens the object's (decompressed) JSON as a stream, for objects too large to comfortably deserialize in one go. The caller must close it.
+	 */
+	@SneakyThrows
+	public <T extends Persistable> Optional<InputStream> getStream(String id, Class<T> clazz)
+	{
+		try {
+			val resp = getClient().getObject(GetObjectRequest.builder().bucket(BUCKET_NAME).key(getKey(id)).build());
+			
+			return Optional.of(decoded(resp, resp.response().contentEncoding()));
+		}
+		catch (NoSuchKeyException ex)
+		{
+			return Optional.empty();
+		}
+	}
+	
+	/**
+	 * Serializes the object straight into its upload body in the given Content-Encoding (gzip or none), so the uncompressed JSON is never
+	 * held in memory. Objects are only ever read back by the encoding recorded with them, never by guessing from their content.
+	 */
+	@SneakyThrows
+	static byte[] serialize(Persistable obj, String contentEncoding)
+	{
+		val body = new ByteArrayOutputStream();
+		
+		try (OutputStream out = CONTENT_ENCODING_GZIP.equals(contentEncoding) ? new GZIPOutputStream(body, STREAM_BUFFER_SIZE) : body) {
+			PoliscoreUtil.getObjectMapper().writeValue(out, obj);
+		}
+		
+		return body.toByteArray();
+	}
+	
+	@SneakyThrows
+	private static InputStream decoded(InputStream in, String contentEncoding)
+	{
+		return CONTENT_ENCODING_GZIP.equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(in, STREAM_BUFFER_SIZE) : in;
+	}
+	
 	@Override
 	@SneakyThrows
 	public <T extends Persistable> boolean exists(String id, Class<T> clazz)
 	{
-		val idClassPrefix = Persistable.getClassStorageBucket(clazz);
-		if (objectsInBucket.containsKey(idClassPrefix)) return objectsInBucket.get(idClassPrefix).contains(id);
-		
 		val key = getKey(id);
 		
+		val idClassPrefix = Persistable.getClassStorageBucket(clazz);
+		if (optimizedBuckets.contains(idClassPrefix) && key.startsWith(idClassPrefix)) return manifests().get(idClassPrefix).contains(key);
+		
 		try
 		{
 			val resp = getClient().headObject(HeadObjectRequest.builder()
@@ -114,6 +229,33 @@ public class S3PersistenceService implements ObjectStorageServiceIF
 		}
 	}
 	
+	/**
+	 * When the object was last written to S3, or empty if it doesn't exist. Answered from the exists manifest where possible, otherwise with
+	 * a HEAD request.
+	 */
+	public <T extends Persistable> OptionalLong lastModified(String id, Class<T> clazz)
+	{
+		val key = getKey(id);
+		val idClassPrefix = Persistable.getClassStorageBucket(clazz);
+		
+		if (optimizedBuckets.contains(idClassPrefix) && key.startsWith(idClassPrefix)) {
+			val entry = manifests().get(idClassPrefix).get(key);
+			return entry == null ? OptionalLong.empty() : OptionalLong.of(entry.getLastModified());
+		}
+		
+		try
+		{
+			return OptionalLong.of(getClient().headObject(HeadObjectRequest.builder()
+					.bucket(BUCKET_NAME)
+					.key(key)
+					.build()).lastModified().toEpochMilli());
+		}
+		catch (NoSuchKeyException ex)
+		{
+			return OptionalLong.empty();
+		}
+	}
+	
 	@Override
 	public <T extends Persistable> List<T> query(Class<T> clazz) {
 		return query(clazz, Persistable.getClassStorageBucket(clazz));
@@ -128,75 +270,136 @@ public class S3PersistenceService implements ObjectStorageServiceIF
 		return query(clazz, storageBucket, key, -1, true);
 	}
 	
-	@SneakyThrows
+	/**
+	 * Lists every object under the prefix and fetches them concurrently (see fetchAll), returning them in key order.
+	 */
 	public <T extends Persistable> List<T> query(Class<T> clazz, String storageBucket, String key, int pageSize, boolean ascending)
 	{
-	    val keys = new java.util.ArrayList<String>();
-	    String continuationToken = null;
-	    
-	    String fullPrefix = storageBucket;
-	    if (StringUtils.isNotBlank(key))
-	    	fullPrefix = storageBucket + "/" + key;
-
-	    // First: collect all matching keys
-	    do {
-	        val builder = ListObjectsV2Request.builder()
-	                .bucket(BUCKET_NAME)
-	                .prefix(fullPrefix)
-	                .maxKeys(1000); // AWS maximum per request
-
-	        if (continuationToken != null) {
-	            builder.continuationToken(continuationToken);
-	        }
-
-	        val resp = getClient().listObjectsV2(builder.build());
-
-	        for (val s3Object : resp.contents()) {
-	            keys.add(s3Object.key());
-	        }
-
-	        continuationToken = resp.nextContinuationToken();
-	    }
-	    while (continuationToken != null);
-
-	    // Now: sort keys if needed
-	    if (!ascending) {
-	        keys.sort(java.util.Collections.reverseOrder());
-	    }
-
-	    val results = new java.util.ArrayList<T>();
-
-	    int limit = pageSize > 0 ? Math.min(pageSize, keys.size()) : keys.size(); // If pageSize <= 0, fetch all
-
-	    for (int i = 0; i < limit; i++) {
-	        val s3Key = keys.get(i);
-
-	        val getObjectRequest = GetObjectRequest.builder()
-	                .bucket(BUCKET_NAME)
-	                .key(s3Key)
-	                .build();
-
-	        @Cleanup val s3ObjectStream = getClient().getObject(getObjectRequest);
-
-	        val obj = PoliscoreUtil.getObjectMapper().readValue(s3ObjectStream, clazz);
-	        results.add(obj);
-	    }
-
-	    return results;
+		val keys = listKeys(fullPrefix(storageBucket, key));
+		
+		if (!ascending) {
+			keys.sort(Collections.reverseOrder());
+		}
+		
+		int limit = pageSize > 0 ? Math.min(pageSize, keys.size()) : keys.size(); // If pageSize <= 0, fetch all
+		
+		return fetchAll(keys.subList(0, limit), clazz);
 	}
-
+	
+	/**
+	 * Lists every object under the prefix and hands each one to the consumer as soon as it has been fetched, in no particular order. The
+	 * consumer runs on the calling thread while later objects are still being downloaded, and at most FETCH_CONCURRENCY objects are ever
+	 * held (in flight or waiting to be consumed) at once, so this is the way to walk prefixes too large to hold in memory.
+	 */
+	public <T extends Persistable> void forEach(Class<T> clazz, String storageBucket, String key, Consumer<T> consumer)
+	{
+		fetchAll(listKeys(fullPrefix(storageBucket, key)), clazz, consumer);
+	}
+	
+	/**
+	 * Fetches the objects with the provided S3 keys, keeping up to FETCH_CONCURRENCY downloads in flight and deserializing on a worker pool
+	 * so that parsing overlaps with network wait. Results are returned in the same order as the keys.
+	 */
+	public <T extends Persistable> List<T> fetchAll(List<String> s3Keys, Class<T> clazz)
+	{
+		val window = new Semaphore(FETCH_CONCURRENCY);
+		val futures = new ArrayList<CompletableFuture<T>>(s3Keys.size());
+		
+		for (val s3Key : s3Keys) {
+			window.acquireUninterruptibly();
+			futures.add(fetchAsync(s3Key, clazz).whenComplete((obj, t) -> window.release()));
+		}
+		
+		val results = new ArrayList<T>(s3Keys.size());
+		for (val future : futures) {
+			results.add(await(future));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Unordered version of fetchAll(List, Class). See forEach.
+	 */
 	@SneakyThrows
-	public <T extends Persistable> void optimizeExists(Class<T> clazz) {
-		val storageBucket = Persistable.getClassStorageBucket(clazz);
+	public <T extends Persistable> void fetchAll(List<String> s3Keys, Class<T> clazz, Consumer<T> consumer)
+	{
+		// A permit is only returned once its object has been consumed, which bounds memory as well as concurrency
+		val window = new Semaphore(FETCH_CONCURRENCY);
+		val completed = new LinkedBlockingQueue<CompletableFuture<T>>();
+		int delivered = 0;
 		
-		if (objectsInBucket.containsKey(storageBucket)) return;
+		for (val s3Key : s3Keys) {
+			while (!window.tryAcquire()) {
+				deliver(completed.take(), consumer, window);
+				delivered++;
+			}
+			
+			val future = fetchAsync(s3Key, clazz);
+			future.whenComplete((obj, t) -> completed.add(future));
+		}
 		
-		objectsInBucket.put(storageBucket, new HashSet<String>());
+		for (; delivered < s3Keys.size(); ++delivered) {
+			deliver(completed.take(), consumer, window);
+		}
+	}
+	
+	private <T extends Persistable> void deliver(CompletableFuture<T> future, Consumer<T> consumer, Semaphore window)
+	{
+		try {
+			consumer.accept(await(future));
+		} finally {
+			window.release();
+		}
+	}
+	
+	private <T extends Persistable> CompletableFuture<T> fetchAsync(String s3Key, Class<T> clazz)
+	{
+		return getAsyncClient().getObject(GetObjectRequest.builder().bucket(BUCKET_NAME).key(s3Key).build(), AsyncResponseTransformer.toBytes())
+				.thenApplyAsync(bytes -> readValue(bytes.asByteArrayUnsafe(), bytes.response().contentEncoding(), clazz), parsePool);
+	}
+	
+	@SneakyThrows
+	private static <T> T readValue(byte[] bytes, Class<T> clazz)
+	{
+		return PoliscoreUtil.getObjectMapper().readValue(bytes, clazz);
+	}
+	
+	@SneakyThrows
+	static <T> T readValue(byte[] bytes, String contentEncoding, Class<T> clazz)
+	{
+		if (!CONTENT_ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) return readValue(bytes, clazz);
 		
+		try (val in = decoded(new ByteArrayInputStream(bytes), contentEncoding)) {
+			return PoliscoreUtil.getObjectMapper().readValue(in, clazz);
+		}
+	}
+	
+	@SneakyThrows
+	private static <T> T await(CompletableFuture<T> future)
+	{
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause() == null ? e : e.getCause();
+		}
+	}
+	
+	private static String fullPrefix(String storageBucket, String key)
+	{
+		return StringUtils.isNotBlank(key) ? storageBucket + "/" + key : storageBucket;
+	}
+	
+	private List<String> listKeys(String prefix)
+	{
+		val keys = new ArrayList<String>();
 		String continuationToken = null;
+		
 		do {
-			val builder = ListObjectsV2Request.builder().bucket(BUCKET_NAME)
-					.prefix(storageBucket);
+			val builder = ListObjectsV2Request.builder()
+					.bucket(BUCKET_NAME)
+					.prefix(prefix)
+					.maxKeys(1000); // AWS maximum per request
 			
 			if (continuationToken != null) {
 				builder.continuationToken(continuationToken);
@@ -204,18 +407,56 @@ public class S3PersistenceService implements ObjectStorageServiceIF
 			
 			val resp = getClient().listObjectsV2(builder.build());
 			
-			objectsInBucket.get(storageBucket).addAll(resp.contents().stream().map(o -> FilenameUtils.getPath(o.key()) + FilenameUtils.getBaseName(o.key())).toList());
+			for (val s3Object : resp.contents()) {
+				keys.add(s3Object.key());
+			}
 			
 			continuationToken = resp.nextContinuationToken();
 		}
-		while(continuationToken != null);
+		while (continuationToken != null);
+		
+		return keys;
+	}
+
+	/**
+	 * Answers all further exists checks for the class from its S3KeyManifest. The manifest is built from a full listing the first time, and
+	 * after that only a slice of the bucket is reconciled against it per run (see S3KeyManifest.reconcile).
+	 */
+	public <T extends Persistable> void optimizeExists(Class<T> clazz) {
+		val storageBucket = Persistable.getClassStorageBucket(clazz);
+		
+		if (optimizedBuckets.contains(storageBucket)) return;
+		
+		synchronized (S3PersistenceService.class) {
+			val manifest = manifests().computeIfAbsent(storageBucket, p -> S3KeyManifest.open(MANIFEST_DIR, p));
+			manifest.reconcile(getClient(), BUCKET_NAME, S3KeyManifest.RECONCILE_KEYS_PER_RUN);
+		}
+		
+		optimizedBuckets.add(storageBucket);
 	}
 	
-	@SneakyThrows
 	public <T extends Persistable> void clearExistsOptimize(Class<T> clazz) {
 		val idClassPrefix = Persistable.getClassStorageBucket(clazz);
 		
-		objectsInBucket.remove(idClassPrefix);
+		optimizedBuckets.remove(idClassPrefix);
+	}
+	
+	private static synchronized Map<String, S3KeyManifest> manifests()
+	{
+		if (manifests == null) {
+			manifests = new ConcurrentHashMap<String, S3KeyManifest>();
+			
+			for (val prefix : S3KeyManifest.prefixes(MANIFEST_DIR)) {
+				manifests.put(prefix, S3KeyManifest.open(MANIFEST_DIR, prefix));
+			}
+		}
+		
+		return manifests;
+	}
+	
+	private static List<S3KeyManifest> manifestsFor(String key)
+	{
+		return manifests().values().stream().filter(m -> key.startsWith(m.getPrefix())).toList();
 	}
 	
 	@SneakyThrows
@@ -231,11 +472,9 @@ public class S3PersistenceService implements ObjectStorageServiceIF
 			
 			Log.info("Deleted from S3 " + key);
 			
-			// Update the local cache if optimizeExists has been called before
-			val idClassPrefix = Persistable.getClassStorageBucket(clazz);
-			if (objectsInBucket.containsKey(idClassPrefix))
+			for (val manifest : manifestsFor(key))
 			{
-				objectsInBucket.get(idClassPrefix).remove(id);
+				manifest.remove(key);
 			}
 		}
 		catch (NoSuchKeyException ex)
@@ -0,0 +1,95 @@
+package us.poliscore.service.storage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.val;
+
+/**
+ * Deduplicates concurrent loads of the same key. The first caller to ask for a key runs the loader, and anyone asking for the key while
+ * that load is in flight waits for its result (or its exception) instead of running a load of their own. Nothing is remembered once the
+ * load completes, so this is only a guard against a burst of misses and the caller's cache is what serves the next request.
+ *
+ * Only the caller which ran the load is handed the object its loader returned. Callers which coalesce onto it are handed what the share
+ * function makes of that object, which should be a copy of it if the object is mutable, so that no two callers ever share one.
+ */
+public class SingleFlight {
+	
+	private final Map<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
+	
+	/**
+	 * Loads run by a caller.
+	 */
+	@Getter
+	private final AtomicLong loads = new AtomicLong();
+	
+	/**
+	 * Callers which waited on someone else's load instead of running their own.
+	 */
+	@Getter
+	private final AtomicLong coalesced = new AtomicLong();
+	
+	@RequiredArgsConstructor
+	private static class Flight {
+		private final Thread owner;
+		
+		private final CompletableFuture<Object> result = new CompletableFuture<Object>();
+	}
+	
+	/**
+	 * Loads a value which every caller may share, because it's immutable or because the cache behind it hands out shared objects anyway.
+	 */
+	public <T> T load(String key, Supplier<T> loader)
+	{
+		return load(key, loader, UnaryOperator.identity());
+	}
+	
+	@SuppressWarnings("unchecked")
+	@SneakyThrows
+	public <T> T load(String key, Supplier<T> loader, UnaryOperator<T> share)
+	{
+		val flight = new Flight(Thread.currentThread());
+		val existing = inFlight.putIfAbsent(key, flight);
+		
+		if (existing != null)
+		{
+			// A loader which asks for its own key would otherwise wait on itself forever
+			if (existing.owner == Thread.currentThread()) return loader.get();
+			
+			coalesced.incrementAndGet();
+			
+			try {
+				return share.apply((T) existing.result.join());
+			} catch (CompletionException e) {
+				throw e.getCause();
+			}
+		}
+		
+		loads.incrementAndGet();
+		
+		try {
+			val result = loader.get();
+			flight.result.complete(result);
+			return result;
+		} catch (Throwable t) {
+			flight.result.completeExceptionally(t);
+			throw t;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "SingleFlight(loads=" + loads + ", coalesced=" + coalesced + ")";
+	}
+}
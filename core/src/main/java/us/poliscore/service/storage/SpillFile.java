@@ -0,0 +1,106 @@
+package us.poliscore.service.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.SneakyThrows;
+import lombok.val;
+
+/**
+ * An append-only scratch file which MemoryObjectService spills cold objects to, written and read through memory mapped regions so that
+ * faulting an object back in is a copy out of the page cache rather than a read syscall. Space isn't reclaimed when objects are faulted
+ * back in, since the file only lives as long as the process.
+ */
+public class SpillFile implements Closeable {
+	
+	public static int REGION_SIZE = 64 * 1024 * 1024;
+	
+	private final FileChannel channel;
+	
+	private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+	
+	private long mappedBytes = 0;
+	
+	/**
+	 * The write position within the last region.
+	 */
+	private int position = 0;
+	
+	@Data
+	@AllArgsConstructor
+	public static class Ref {
+		private int region;
+		
+		private int offset;
+		
+		private int length;
+	}
+	
+	@SneakyThrows
+	private SpillFile(File file)
+	{
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		file.deleteOnExit();
+	}
+	
+	@SneakyThrows
+	public static SpillFile create(File dir)
+	{
+		dir.mkdirs();
+		
+		return new SpillFile(File.createTempFile("memory-", ".spill", dir));
+	}
+	
+	@SneakyThrows
+	public synchronized Ref write(byte[] bytes)
+	{
+		if (regions.isEmpty() || position + bytes.length > regions.get(regions.size() - 1).capacity()) {
+			val size = Math.max(REGION_SIZE, bytes.length);
+			regions.add(channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, size));
+			mappedBytes += size;
+			position = 0;
+		}
+		
+		val index = regions.size() - 1;
+		regions.get(index).put(position, bytes);
+		
+		val ref = new Ref(index, position, bytes.length);
+		position += bytes.length;
+		
+		return ref;
+	}
+	
+	public byte[] read(Ref ref)
+	{
+		MappedByteBuffer region;
+		synchronized (this) {
+			region = regions.get(ref.getRegion());
+		}
+		
+		// Absolute reads don't touch the buffer's position, so they're safe to make concurrently
+		val bytes = new byte[ref.getLength()];
+		region.get(ref.getOffset(), bytes);
+		
+		return bytes;
+	}
+	
+	public synchronized long getSize()
+	{
+		return mappedBytes - (regions.isEmpty() ? 0 : regions.get(regions.size() - 1).capacity() - position);
+	}
+	
+	@Override
+	@SneakyThrows
+	public synchronized void close()
+	{
+		regions.clear();
+		channel.close();
+	}
+}
@@ -29,6 +29,7 @@ import us.poliscore.entrypoint.batch.BatchLegislatorRequestGenerator;
 import us.poliscore.entrypoint.batch.BatchOpenAIResponseImporter;
 import us.poliscore.entrypoint.batch.PressBillInterpretationRequestGenerator;
 import us.poliscore.model.DoubleIssueStats;
+import us.poliscore.model.DataVersion;
 import us.poliscore.model.LegislativeNamespace;
 import us.poliscore.model.Persistable;
 import us.poliscore.model.bill.Bill;
@@ -42,6 +43,7 @@ import us.poliscore.model.press.PressInterpretation;
 import us.poliscore.model.session.SessionInterpretationOld;
 import us.poliscore.service.BillInterpretationService;
 import us.poliscore.service.BillService;
+import us.poliscore.service.DdbWritePipeline;
 import us.poliscore.service.LegislatorInterpretationService;
 import us.poliscore.service.LegislatorService;
 import us.poliscore.service.OpenAIService;
@@ -96,6 +98,9 @@ public class DatabaseBuilder implements QuarkusApplication
 	@Inject
 	private DynamoDbPersistenceService ddb;
 	
+	@Inject
+	private DdbWritePipeline writes;
+	
 	@Inject
 	private LocalCachedS3Service s3;
 	
@@ -146,6 +151,11 @@ public class DatabaseBuilder implements QuarkusApplication
 		
 		webappDataGenerator.process();
 		
+		writes.flush();
+		
+		// Only once everything is written, since this is what tells warm webapp containers to drop their cached lists
+		ddb.put(DataVersion.now());
+		
 		Log.info("Poliscore database build complete.");
 	}
 	
@@ -171,21 +181,26 @@ public class DatabaseBuilder implements QuarkusApplication
 
 		}
 		
+		writes.flush();
+		
 		Log.info("Updated " + amount + " out of sync bills in ddb from s3");
 		Log.info("Decaying hot values");
 		
 		// Decay first x hot values //
-		for (Bill b : ddb.query(Bill.class, 1000, Persistable.OBJECT_BY_HOT_INDEX, false, null, null))
-		{
-			ddb.put(b);
-		}
+		// Collected before anything is written, since rewriting a bill moves it along the index we're paging through
+		ddb.stream(Bill.class, 100, Persistable.OBJECT_BY_HOT_INDEX, false, null, Persistable.getClassStorageBucket(Bill.class), null)
+			.limit(1000)
+			.toList()
+			.forEach(writes::submit);
+		
+		writes.flush();
 		
 		// Update bills whose press interpretations are out of date //
 		// TODO : Sort by date and only grab the top x amount
 		Log.info("Syncing press interpretations");
 		Set<Bill> updated = new HashSet<Bill>();
-		for (val pi : s3.query(PressInterpretation.class, Persistable.getClassStorageBucket(PressInterpretation.class))) {
-			if (pi.isNoInterp()) continue;
+		s3.forEach(PressInterpretation.class, Persistable.getClassStorageBucket(PressInterpretation.class), null, pi -> {
+			if (pi.isNoInterp()) return;
 			
 			var bill = ddb.get(pi.getBillId(), Bill.class).orElse(null);
 			
@@ -200,7 +215,8 @@ public class DatabaseBuilder implements QuarkusApplication
 					updated.add(bill);
 				}
 			}
-		}
+		});
+		writes.flush();
 		Log.info("Updated " + updated.size() + " bills whose press interpretations were out of date.");
 	}
 	
@@ -305,10 +321,10 @@ public class DatabaseBuilder implements QuarkusApplication
 					val prevLeg = ddb.get(Legislator.generateId(LegislativeNamespace.US_CONGRESS, PoliscoreUtil.CURRENT_SESSION.getNumber() - 1, leg.getBioguideId()), Legislator.class).orElseThrow();
 					
 					val prevInteracts = prevLeg.getInteractions().stream().sorted(Comparator.comparing(LegislatorBillInteraction::getDate).reversed()).iterator();
-					while (leg.getInteractionsPrivate1().size() < 1000 && prevInteracts.hasNext()) {
+					while (leg.getInteractions().size() < 1000 && prevInteracts.hasNext()) {
 						val n = prevInteracts.next();
 						if (n.getIssueStats() != null)
-							leg.getInteractionsPrivate1().add(n);
+							leg.getInteractions().add(n);
 					}
 				}
 			}
@@ -334,6 +350,8 @@ public class DatabaseBuilder implements QuarkusApplication
 			legService.ddbPersist(leg, interp);
 		}
 		
+		writes.flush();
+		
 		if (legsWithoutInterp.size() > 0 || legsWithoutSufficientInteractions.size() > 0) {
 			System.out.println("Legislators without interpretations:");
 			System.out.println(String.join(", ", legsWithoutInterp));
@@ -360,7 +378,7 @@ public class DatabaseBuilder implements QuarkusApplication
 		} else {
 			val sit = s3.get(SessionInterpretationOld.generateId(PoliscoreUtil.CURRENT_SESSION.getNumber()), SessionInterpretationOld.class).orElse(null);
 			if (sit != null) {
-				ddb.put(sit);
+				writes.submit(sit);
 			}
 			
 			val sit2 = s3.get(SessionInterpretationOld.generateId(PoliscoreUtil.CURRENT_SESSION.getNumber()-1), SessionInterpretationOld.class).orElse(null);
@@ -370,8 +388,10 @@ public class DatabaseBuilder implements QuarkusApplication
 //				s3.put(newSit);
 //				ddb.put(newSit);
 				
-				ddb.put(sit2);
+				writes.submit(sit2);
 			}
+			
+			writes.flush();
 		}
 	}
 	
@@ -25,6 +25,7 @@ import us.poliscore.service.BillInterpretationService;
 import us.poliscore.service.BillService;
 import us.poliscore.service.LegislatorService;
 import us.poliscore.service.RollCallService;
+import us.poliscore.service.SearchIndexService;
 import us.poliscore.service.storage.LocalCachedS3Service;
 import us.poliscore.service.storage.MemoryObjectService;
 
@@ -52,6 +53,9 @@ public class WebappDataGenerator implements QuarkusApplication
 	@Inject
 	private RollCallService rollCallService;
 	
+	@Inject
+	private SearchIndexService searchIndexService;
+	
 	public static final String[] states = new String[] {
 		"KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS", "MO", "MT", "NE", "NV", "NH", "NJ", "NM", "NY", "NC", "ND", "MP", "AL", "AK", "AZ", "AR", "AS", "CA", "CO", "CT", "DE", "DC", "FL", "GA", "GU", "HI", "ID", "IL", "IN", "IA", "KS", "OH", "OK", "OR", "PA", "PR", "RI", "SC", "SD", "TN", "TX", "TT", "UT", "VT", "VA", "VI", "WA", "WV", "WI", "WY" 
 	};
@@ -77,6 +81,7 @@ public class WebappDataGenerator implements QuarkusApplication
 			
 		legService.generateLegislatorWebappIndex();
 		billService.generateBillWebappIndex();
+		searchIndexService.generateSearchIndex();
 //		billService.dumbAllBills();
 			
 		generateRoutes();
@@ -86,6 +86,9 @@ public class BatchLegislatorRequestGenerator implements QuarkusApplication
 	{
 		Log.info("Generating batch request to interpret legislators");
 		
+		// Two congresses worth of bills and legislators is more than the builder's heap comfortably holds, so let the cold ones spill to disk
+		MemoryObjectService.MAX_WEIGHT = Runtime.getRuntime().maxMemory() / 2;
+		
 		PoliscoreUtil.CURRENT_SESSION = CongressionalSession.of(PoliscoreUtil.CURRENT_SESSION.getNumber() - 1);
 		legService.importLegislators();
 		billService.importBills();
@@ -45,6 +45,7 @@ import us.poliscore.model.session.SessionInterpretation.PartyInterpretation;
 import us.poliscore.model.session.SessionInterpretationOld;
 import us.poliscore.parsing.XMLBillSlicer;
 import us.poliscore.service.BillService;
+import us.poliscore.service.DdbWritePipeline;
 import us.poliscore.service.LegislatorInterpretationService;
 import us.poliscore.service.LegislatorService;
 import us.poliscore.service.OpenAIService;
@@ -94,6 +95,9 @@ public class BatchOpenAIResponseImporter implements QuarkusApplication
 	@Inject
 	private PartyInterpretationService partyService;
 	
+	@Inject
+	private DdbWritePipeline writes;
+	
 	@Inject
 	protected PressBillInterpretationRequestGenerator pressBillInterpGenerator;
 	
@@ -149,6 +153,8 @@ public class BatchOpenAIResponseImporter implements QuarkusApplication
 			ddb.put(sessionInterp);
 		}
 		
+		writes.flush();
+		
 		if (erroredLines.size() > 0) {
 			File f = new File(Environment.getDeployedPath(), "unprocessed.jsonl");
 			FileUtils.write(f, String.join("\n", erroredLines), "UTF-8");
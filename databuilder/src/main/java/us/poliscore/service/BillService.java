@@ -1,8 +1,12 @@
 package us.poliscore.service;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Writer;
 import java.net.URI;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -10,6 +14,8 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
 
+import com.fasterxml.jackson.core.JsonToken;
+
 import io.quarkus.logging.Log;
 import jakarta.annotation.Priority;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -30,7 +36,7 @@ import us.poliscore.model.bill.BillStatus;
 import us.poliscore.model.bill.BillText;
 import us.poliscore.model.bill.BillType;
 import us.poliscore.model.press.PressInterpretation;
-import us.poliscore.service.storage.DynamoDbPersistenceService;
+import us.poliscore.search.TrigramIndex;
 import us.poliscore.service.storage.LocalCachedS3Service;
 import us.poliscore.service.storage.MemoryObjectService;
 import us.poliscore.view.USCBillView;
@@ -49,7 +55,7 @@ public class BillService {
 	protected LegislatorService lService;
 	
 	@Inject
-	private DynamoDbPersistenceService ddb;
+	private DdbWritePipeline writes;
 	
 	@Inject
 	private USCService usc;
@@ -88,11 +94,15 @@ public class BillService {
 	{
 		populatePressInterps(interp);
 		b.setInterpretation(interp);
-		ddb.put(b);
+		
+		val items = new ArrayList<Persistable>();
+		items.add(b);
 		
 		for(TrackedIssue issue : TrackedIssue.values()) {
-			ddb.put(new BillIssueStat(issue, b.getImpact(issue), b));
+			items.add(new BillIssueStat(issue, b.getImpact(issue), b));
 		}
+		
+		writes.submitAll(items);
 	}
 	
 	public List<PressInterpretation> getAllPressInterps(String billId)
@@ -143,6 +153,11 @@ public class BillService {
 		Log.info("Generated a bill 'index' of size " + data.size());
 		
 		FileUtils.write(out, PoliscoreUtil.getObjectMapper().writeValueAsString(data), "UTF-8");
+		
+		// The same entries, prebuilt into the trigram index which the webapp's queryBills searches
+		try (val os = new BufferedOutputStream(new FileOutputStream(new File(out.getParentFile(), "bills.search")))) {
+			TrigramIndex.build(data).write(os);
+		}
 	}
 	
 	@SneakyThrows
@@ -221,6 +236,29 @@ public class BillService {
     	return s3.get(BillText.generateId(bill.getId()), BillText.class);
 	}
     
+    /**
+     * Streams the bill's text XML into the writer without ever holding the stored BillText (or the XML) in memory as a whole, which matters
+     * for omnibus bills running to many megabytes. Returns false if there is no text for the bill.
+     */
+    @SneakyThrows
+    public boolean writeBillText(Bill bill, Writer out)
+    {
+    	val stream = s3.getStream(BillText.generateId(bill.getId()), BillText.class);
+    	if (stream.isEmpty()) return false;
+    	
+    	try (val parser = PoliscoreUtil.getObjectMapper().getFactory().createParser(stream.get())) {
+    		while (parser.nextToken() != null) {
+    			if (parser.currentToken() == JsonToken.FIELD_NAME && "xml".equals(parser.currentName()) && parser.getParsingContext().getParent().inRoot()) {
+    				parser.nextToken();
+    				parser.getText(out);
+    				return true;
+    			}
+    		}
+    	}
+    	
+    	return false;
+    }
+    
     public boolean hasBillText(Bill bill)
     {
     	return s3.exists(BillText.generateId(bill.getId()), BillText.class);
@@ -0,0 +1,542 @@
+package us.poliscore.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import us.poliscore.model.Persistable;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+/**
+ * Asynchronous write pipeline for the databuilder. Objects submitted here are split into their ddb items (head + data pages), grouped into
+ * BatchWriteItem requests and sent through the DynamoDbAsyncClient. At most MAX_IN_FLIGHT_BATCHES requests are outstanding at once (submit
+ * blocks when the window is full, without holding the pipeline's lock) and all requests pass through an adaptive token bucket, measured in
+ * write capacity units, which backs off when DynamoDb throttles us and slowly ramps back up while the table has headroom. A request waiting
+ * on the bucket is rescheduled rather than put to sleep, so throttling never ties up a submitter or the retry thread.
+ *
+ * Unless DynamoDbPersistenceService.SKIP_UNCHANGED_WRITES is disabled, each batch is checked for unchanged items (see withoutUnchanged
+ * there) on a CHECK_THREADS pool before it's sent, since the check may need a blocking BatchGetItem. Builds rewrite mostly unchanged data,
+ * and items this pipeline has written itself are checked against its acknowledged writes for free.
+ *
+ * Objects with list pages need a GetItem to find the chunks their write leaves behind, which are deleted along with it. Those lookups are
+ * made on a single thread, off the submitter's, so that writes of the same object are still queued in the order they were submitted.
+ *
+ * Writes to the same key are applied in the order they were submitted. A newer write merges into an older one still pending, and one whose
+ * key is in an in-flight batch (which may be waiting on the check pool, the rate limiter or a retry) is held back until that batch has
+ * written or given up on the key.
+ *
+ * Writes are not visible to readers until flush() returns, so call flush() between stages that read back what they've written.
+ */
+@ApplicationScoped
+public class DdbWritePipeline {
+	
+	public static int MAX_IN_FLIGHT_BATCHES = 16;
+	
+	public static int MAX_RETRIES = 10;
+	
+	public static int CHECK_THREADS = 4;
+	
+	public static double INITIAL_WRITE_UNITS_PER_SECOND = 400;
+	
+	public static double MIN_WRITE_UNITS_PER_SECOND = 25;
+	
+	public static double MAX_WRITE_UNITS_PER_SECOND = 20000;
+	
+	@Inject
+	DynamoDbAsyncClient ddbAsync;
+	
+	@Inject
+	DynamoDbPersistenceService ddb;
+	
+	private final Semaphore window = new Semaphore(MAX_IN_FLIGHT_BATCHES);
+	
+	private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(INITIAL_WRITE_UNITS_PER_SECOND, MIN_WRITE_UNITS_PER_SECOND, MAX_WRITE_UNITS_PER_SECOND);
+	
+	private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		val t = new Thread(r, "ddb-write-retry");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	private final ExecutorService checkExecutor = Executors.newFixedThreadPool(CHECK_THREADS, r -> {
+		val t = new Thread(r, "ddb-write-check");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	private final ExecutorService lookupExecutor = Executors.newSingleThreadExecutor(r -> {
+		val t = new Thread(r, "ddb-write-lookup");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	private final Map<String, WriteRequest> pending = new LinkedHashMap<String, WriteRequest>();
+	
+	/**
+	 * Keys of the writes in batches which have been taken from pending but not yet acknowledged. Guarded by the pipeline's lock, as is held.
+	 */
+	private final Set<String> inFlightKeys = new HashSet<String>();
+	
+	/**
+	 * The newest write for each key which was in flight when it was submitted, waiting for the older write to finish.
+	 */
+	private final Map<String, WriteRequest> held = new LinkedHashMap<String, WriteRequest>();
+	
+	private final AtomicInteger lookups = new AtomicInteger();
+	
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	private final Object inFlightLock = new Object();
+	
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	
+	private final AtomicLong itemsWritten = new AtomicLong();
+	
+	private final AtomicLong retries = new AtomicLong();
+	
+	private final AtomicLong throttles = new AtomicLong();
+	
+	private volatile long startTime = -1;
+	
+	public void submit(Persistable obj)
+	{
+		submitAll(List.of(obj));
+	}
+	
+	public void submitAll(Collection<? extends Persistable> objs)
+	{
+		val items = new ArrayList<Map<String, AttributeValue>>();
+		val listed = new ArrayList<List<Map<String, AttributeValue>>>();
+		val listedClasses = new ArrayList<Class<? extends Persistable>>();
+		
+		for (val obj : objs) {
+			if (ddb.metadata(obj.getClass()).getListAttributes().isEmpty()) {
+				items.addAll(ddb.toItems(obj));
+			} else {
+				listed.add(ddb.toItems(obj));
+				listedClasses.add(obj.getClass());
+			}
+		}
+		
+		enqueue(items.stream().map(DdbWritePipeline::put).toList());
+		
+		if (listed.isEmpty()) return;
+		
+		lookups.incrementAndGet();
+		lookupExecutor.execute(() -> {
+			try {
+				for (int i = 0; i < listed.size(); ++i) {
+					val stale = ddb.staleKeys(listedClasses.get(i), listed.get(i));
+					
+					val requests = new ArrayList<WriteRequest>(listed.get(i).stream().map(DdbWritePipeline::put).toList());
+					stale.forEach(key -> requests.add(WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(key).build()).build()));
+					
+					enqueue(requests);
+				}
+			} catch (Throwable t) {
+				Log.error("Unable to look up stale ddb list pages", t);
+				failure.compareAndSet(null, t);
+			} finally {
+				if (lookups.decrementAndGet() == 0) {
+					synchronized (inFlightLock) {
+						inFlightLock.notifyAll();
+					}
+				}
+			}
+		});
+	}
+	
+	private void enqueue(List<WriteRequest> requests)
+	{
+		val ready = new ArrayList<List<WriteRequest>>();
+		
+		synchronized (this) {
+			if (startTime == -1) startTime = System.currentTimeMillis();
+			
+			for (val request : requests) {
+				val key = key(request);
+				
+				if (inFlightKeys.contains(key)) {
+					held.put(key, request);
+					continue;
+				}
+				
+				// BatchWriteItem rejects duplicate keys within a request, so a newer write for the same key replaces the pending one.
+				pending.remove(key);
+				pending.put(key, request);
+			}
+			
+			while (pending.size() >= DynamoDbPersistenceService.MAX_BATCH_WRITE_ITEMS) {
+				ready.add(takePending());
+			}
+		}
+		
+		ready.forEach(this::dispatch);
+	}
+	
+	private static String key(WriteRequest request)
+	{
+		return DynamoDbPersistenceService.itemKey(request.putRequest() != null ? request.putRequest().item() : request.deleteRequest().key());
+	}
+	
+	private static WriteRequest put(Map<String, AttributeValue> item)
+	{
+		return WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build();
+	}
+	
+	/**
+	 * Blocks until every submitted write has been acknowledged by DynamoDb, then logs throughput statistics for the writes since the last flush.
+	 * Throws if any write failed permanently.
+	 */
+	@SneakyThrows
+	public void flush()
+	{
+		synchronized (inFlightLock) {
+			while (lookups.get() > 0) {
+				inFlightLock.wait();
+			}
+		}
+		
+		// Writes held back behind an in-flight batch only become pending once it finishes, so keep going until nothing is left
+		while (true) {
+			val batches = new ArrayList<List<WriteRequest>>();
+			
+			synchronized (this) {
+				if (pending.isEmpty() && held.isEmpty() && inFlight.get() == 0) break;
+				
+				while (pending.size() > 0) {
+					batches.add(takePending());
+				}
+			}
+			
+			batches.forEach(this::dispatch);
+			
+			synchronized (inFlightLock) {
+				while (inFlight.get() > 0) {
+					inFlightLock.wait();
+				}
+			}
+		}
+		
+		if (startTime != -1) {
+			val seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000d;
+			val written = itemsWritten.getAndSet(0);
+			
+			Log.info(String.format("Wrote %d ddb items in %.1fs (%.1f items/sec) with %d retried items and %d throttle events. Skipped %d unchanged items. Write rate is now %.0f WCU/s.",
+					written, seconds, written / seconds, retries.getAndSet(0), throttles.getAndSet(0), ddb.drainSkippedWrites(), limiter.getRate()));
+			
+			startTime = -1;
+		}
+		
+		// Anyone may have written since, so the next stage checks what's actually stored
+		ddb.forgetFingerprints();
+		
+		val t = failure.getAndSet(null);
+		if (t != null) {
+			throw new RuntimeException("One or more ddb writes failed", t);
+		}
+	}
+	
+	@PreDestroy
+	public void close()
+	{
+		try {
+			flush();
+		} catch (Throwable t) {
+			Log.error("Unable to flush pending ddb writes on shutdown", t);
+		} finally {
+			retryScheduler.shutdown();
+			checkExecutor.shutdown();
+			lookupExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * Takes up to a batch worth of pending writes, counting it as in flight before the pipeline's lock is released so that flush can't miss
+	 * it. Must be called holding the pipeline's lock.
+	 */
+	private List<WriteRequest> takePending()
+	{
+		val batch = new ArrayList<WriteRequest>(DynamoDbPersistenceService.MAX_BATCH_WRITE_ITEMS);
+		val it = pending.entrySet().iterator();
+		
+		while (it.hasNext() && batch.size() < DynamoDbPersistenceService.MAX_BATCH_WRITE_ITEMS) {
+			val e = it.next();
+			batch.add(e.getValue());
+			inFlightKeys.add(e.getKey());
+			it.remove();
+		}
+		
+		inFlight.incrementAndGet();
+		
+		return batch;
+	}
+	
+	/**
+	 * Marks the writes as done (written, skipped or failed for good), making any newer writes of the same keys pending. These are sent with
+	 * the next full batch or flush, never from here, since this runs on the client's completion threads.
+	 */
+	private void release(Collection<WriteRequest> done)
+	{
+		synchronized (this) {
+			for (val request : done) {
+				val key = key(request);
+				inFlightKeys.remove(key);
+				
+				val next = held.remove(key);
+				if (next != null) pending.put(key, next);
+			}
+		}
+	}
+	
+	/**
+	 * Sends a batch taken with takePending, blocking while the window is full. Must not be called holding the pipeline's lock.
+	 */
+	private void dispatch(List<WriteRequest> batch)
+	{
+		// Uninterruptibly, since the batch is already counted as in flight
+		window.acquireUninterruptibly();
+		
+		// Forgotten before the deletes are sent, so that no later check can take a deleted item as unchanged
+		ddb.recordDeleted(batch.stream().filter(r -> r.deleteRequest() != null).map(r -> r.deleteRequest().key()).toList());
+		
+		if (!DynamoDbPersistenceService.SKIP_UNCHANGED_WRITES) {
+			send(batch, 0);
+			return;
+		}
+		
+		checkExecutor.execute(() -> {
+			try {
+				val changed = new ArrayList<WriteRequest>(batch.stream().filter(r -> r.deleteRequest() != null).toList());
+				ddb.withoutUnchanged(batch.stream().filter(r -> r.putRequest() != null).map(r -> r.putRequest().item()).toList()).forEach(item -> changed.add(put(item)));
+				
+				val changedKeys = changed.stream().map(DdbWritePipeline::key).collect(Collectors.toSet());
+				release(batch.stream().filter(r -> !changedKeys.contains(key(r))).toList());
+				
+				if (changed.isEmpty()) {
+					finish();
+				} else {
+					send(changed, 0);
+				}
+			} catch (Throwable t) {
+				fail(batch, t);
+			}
+		});
+	}
+	
+	private void send(List<WriteRequest> batch, int attempt)
+	{
+		try {
+			val wait = limiter.reserve(writeUnits(batch));
+			
+			if (wait > 0) {
+				retryScheduler.schedule(() -> send(batch, attempt), wait, TimeUnit.MILLISECONDS);
+				return;
+			}
+			
+			ddbAsync.batchWriteItem(BatchWriteItemRequest.builder()
+						.requestItems(Map.of(DynamoDbPersistenceService.TABLE_NAME, batch))
+						.build())
+				.whenComplete((resp, err) -> onComplete(batch, attempt, resp, err));
+		} catch (Throwable t) {
+			fail(batch, t);
+		}
+	}
+	
+	private void onComplete(List<WriteRequest> batch, int attempt, BatchWriteItemResponse resp, Throwable err)
+	{
+		if (err != null) {
+			val cause = (err instanceof CompletionException && err.getCause() != null) ? err.getCause() : err;
+			
+			if (isThrottle(cause)) {
+				throttles.incrementAndGet();
+				limiter.throttled();
+				retry(batch, attempt + 1, cause);
+			} else {
+				fail(batch, cause);
+			}
+			
+			return;
+		}
+		
+		val unprocessed = resp.unprocessedItems().getOrDefault(DynamoDbPersistenceService.TABLE_NAME, List.of());
+		val unprocessedKeys = unprocessed.stream().map(DdbWritePipeline::key).collect(Collectors.toSet());
+		val processed = batch.stream().filter(r -> !unprocessedKeys.contains(key(r))).toList();
+		itemsWritten.addAndGet(processed.size());
+		
+		// Recorded before the keys are released, so that a newer write of the same item is checked against this one
+		ddb.recordWritten(processed.stream().filter(r -> r.putRequest() != null).map(r -> r.putRequest().item()).toList());
+		release(processed);
+		
+		if (unprocessed.isEmpty()) {
+			limiter.succeeded();
+			finish();
+		} else {
+			// Unprocessed items are DynamoDb's way of telling us we're over capacity
+			throttles.incrementAndGet();
+			limiter.throttled();
+			retry(unprocessed, attempt + 1, null);
+		}
+	}
+	
+	private void retry(List<WriteRequest> batch, int attempt, Throwable cause)
+	{
+		if (attempt > MAX_RETRIES) {
+			fail(batch, new RuntimeException("Unable to write " + batch.size() + " items to ddb after " + MAX_RETRIES + " retries", cause));
+			return;
+		}
+		
+		retries.addAndGet(batch.size());
+		
+		val delay = Math.min(50l * (1l << attempt), 5000l);
+		retryScheduler.schedule(() -> send(batch, attempt), delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private void fail(List<WriteRequest> batch, Throwable t)
+	{
+		Log.error("Ddb batch write failed", t);
+		failure.compareAndSet(null, t);
+		release(batch);
+		finish();
+	}
+	
+	private void finish()
+	{
+		window.release();
+		
+		if (inFlight.decrementAndGet() == 0) {
+			synchronized (inFlightLock) {
+				inFlightLock.notifyAll();
+			}
+		}
+	}
+	
+	private static boolean isThrottle(Throwable t)
+	{
+		return t instanceof ProvisionedThroughputExceededException
+				|| t instanceof RequestLimitExceededException
+				|| (t instanceof AwsServiceException && ((AwsServiceException) t).isThrottlingException());
+	}
+	
+	private static double writeUnits(List<WriteRequest> batch)
+	{
+		double units = 0;
+		
+		for (val req : batch) {
+			// A delete costs what the deleted item is worth, which we don't know
+			if (req.putRequest() == null) {
+				units += 1;
+				continue;
+			}
+			
+			Map<String, AttributeValue> item = req.putRequest().item();
+			units += Math.max(1, Math.ceil(DynamoDbPersistenceService.estimateItemSize(item) / 1024d));
+		}
+		
+		return units;
+	}
+	
+	/**
+	 * A token bucket whose refill rate follows an additive-increase / multiplicative-decrease policy. The bucket holds at most one second's
+	 * worth of tokens.
+	 */
+	public static class AdaptiveRateLimiter {
+		
+		public static double INCREASE_PER_SUCCESS = 10;
+		
+		public static double DECREASE_FACTOR = 0.5;
+		
+		public static long DECREASE_COOLDOWN_MS = 1000;
+		
+		@Getter
+		private double rate;
+		
+		private final double min;
+		
+		private final double max;
+		
+		private double tokens;
+		
+		private long lastRefill = System.nanoTime();
+		
+		private long lastDecrease = 0;
+		
+		public AdaptiveRateLimiter(double rate, double min, double max) {
+			this.rate = rate;
+			this.min = min;
+			this.max = max;
+			this.tokens = rate;
+		}
+		
+		/**
+		 * Takes the units if they're available and returns 0, or otherwise returns how many milliseconds to wait before trying again.
+		 */
+		public synchronized long reserve(double units)
+		{
+			refill();
+			
+			// A request larger than the whole bucket is let through once the bucket is full, leaving it in debt.
+			if (tokens >= Math.min(units, rate)) {
+				tokens -= units;
+				return 0;
+			}
+			
+			return Math.max(1, (long) Math.ceil((Math.min(units, rate) - tokens) / rate * 1000d));
+		}
+		
+		public synchronized void succeeded()
+		{
+			rate = Math.min(max, rate + INCREASE_PER_SUCCESS);
+		}
+		
+		public synchronized void throttled()
+		{
+			val now = System.currentTimeMillis();
+			
+			// Many in-flight requests tend to get throttled at the same moment. Only count that as one signal.
+			if (now - lastDecrease < DECREASE_COOLDOWN_MS) return;
+			
+			lastDecrease = now;
+			rate = Math.max(min, rate * DECREASE_FACTOR);
+			tokens = Math.min(tokens, 0);
+		}
+		
+		private void refill()
+		{
+			val now = System.nanoTime();
+			tokens = Math.min(rate, tokens + ((now - lastRefill) / 1e9d) * rate);
+			lastRefill = now;
+		}
+	}
+}
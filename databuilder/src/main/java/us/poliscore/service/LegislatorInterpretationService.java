@@ -125,10 +125,10 @@ Generate a layman's, concise, three paragraph, {{analysisType}}, highlighting an
 		if (prevLeg == null) return;
 		
 		val prevInteracts = prevLeg.getInteractions().stream().sorted(Comparator.comparing(LegislatorBillInteraction::getDate).reversed()).iterator();
-		while (leg.getInteractionsPrivate1().size() < 1000 && prevInteracts.hasNext()) {
+		while (leg.getInteractions().size() < 1000 && prevInteracts.hasNext()) {
 			val n = prevInteracts.next();
 			if (n.getIssueStats() != null)
-				leg.getInteractionsPrivate1().add(n);
+				leg.getInteractions().add(n);
 		}
 	}
 	
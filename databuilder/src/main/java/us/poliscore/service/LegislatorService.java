@@ -2,6 +2,7 @@ package us.poliscore.service;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -20,14 +21,18 @@ import jakarta.inject.Inject;
 import lombok.SneakyThrows;
 import lombok.val;
 import us.poliscore.Environment;
+import us.poliscore.LegislatorBillLinker;
 import us.poliscore.PoliscoreUtil;
+import us.poliscore.model.Persistable;
 import us.poliscore.model.TrackedIssue;
 import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
 import us.poliscore.model.legislator.Legislator.LegislatorLegislativeTermSortedSet;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
 import us.poliscore.model.legislator.LegislatorInterpretation;
 import us.poliscore.model.legislator.LegislatorIssueStat;
-import us.poliscore.service.storage.DynamoDbPersistenceService;
 import us.poliscore.service.storage.MemoryObjectService;
+import us.poliscore.service.storage.ObjectCopier;
 import us.poliscore.view.USCLegislatorView;
 
 @ApplicationScoped
@@ -37,7 +42,7 @@ public class LegislatorService {
 	private MemoryObjectService memService;
 	
 	@Inject
-	private DynamoDbPersistenceService ddb;
+	private DdbWritePipeline writes;
 	
 	@Inject
 	private LegislatorInterpretationService legInterp;
@@ -50,7 +55,7 @@ public class LegislatorService {
 		importUSCJson("/legislators-current.json");
 		importUSCJson("/legislators-historical.json");
 	}
-
+	
 	private void importUSCJson(String file) throws IOException, JsonProcessingException {
 		int count = 0;
 		
@@ -87,19 +92,41 @@ public class LegislatorService {
 		return memService.get(id, Legislator.class);
 	}
 	
-	public void ddbPersist(Legislator leg, LegislatorInterpretation interp)
+	public void ddbPersist(Legislator source, LegislatorInterpretation interp)
 	{
-		leg.setInterpretation(interp);
-		ddb.put(leg);
+		// The webapp serves a legislator's first view from the head item alone, so interactions are stored in display order with the first
+		// page of them on the head, and the interpretation is linked here rather than on every request. All of that only belongs in ddb, so
+		// it's done to a copy, leaving the legislator other stages read from memService as it was.
+		val leg = ObjectCopier.copy(source);
+		
+		leg.getInteractions().sort(Legislator.DEFAULT_INTERACTION_ORDER);
+		leg.setInteractionsPreview(leg.getInteractions().stream().limit(Legislator.INTERACTIONS_PREVIEW_SIZE).collect(Collectors.toCollection(LegislatorBillInteractionList::new)));
+		leg.setInteractionOrders(LegislatorInteractionOrders.of(leg.getInteractions()));
+		
+		val linked = new LegislatorInterpretation();
+		linked.setId(interp.getId());
+		linked.setMetadata(interp.getMetadata());
+		linked.setHash(interp.getHash());
+		linked.setIssueStats(interp.getIssueStats());
+		linked.setShortExplain(interp.getShortExplain());
+		linked.setLongExplain(interp.getLongExplain());
+		
+		leg.setInterpretation(linked);
+		LegislatorBillLinker.linkInterpBills(leg);
+		
+		val items = new ArrayList<Persistable>();
+		items.add(leg);
 		
 		if (legInterp.meetsInterpretationPrereqs(leg))
 		{
 			for(TrackedIssue issue : TrackedIssue.values()) {
-				ddb.put(new LegislatorIssueStat(issue, leg.getImpact(issue), leg));
+				items.add(new LegislatorIssueStat(issue, leg.getImpact(issue), leg));
 			}
 		}
+		
+		writes.submitAll(items);
 	}
-
+	
 	@SneakyThrows
 	public void generateLegislatorWebappIndex() {
 		final File out = new File(Environment.getDeployedPath(), "../../webapp/src/main/resources/legislators.index");
@@ -4,7 +4,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import io.quarkus.logging.Log;
@@ -33,6 +35,11 @@ public class RollCallService {
 	@Inject
 	protected MemoryObjectService memService;
 	
+	/**
+	 * Senate roll calls identify legislators by their LIS id rather than their bioguide id.
+	 */
+	private Map<String, String> legIdsByLisId;
+	
 	@SneakyThrows
 	public void importUscVotes() {
 		if (memorizedRollCall) return;
@@ -40,6 +47,10 @@ public class RollCallService {
 		long totalVotes = 0;
 		long skipped = 0;
 		
+		legIdsByLisId = memService.query(Legislator.class).stream()
+				.filter(l -> l.getLisId() != null)
+				.collect(Collectors.toMap(Legislator::getLisId, Legislator::getId, (a, b) -> a));
+		
 		for (File fCongress : Arrays.asList(PoliscoreUtil.USC_DATA.listFiles()).stream()
 				.filter(f -> f.getName().matches("\\d+") && f.isDirectory())
 				.sorted((a,b) -> a.getName().compareTo(b.getName()))
@@ -98,7 +109,7 @@ public class RollCallService {
 		try
 		{
 			if (vote.getId().length() == 4 && vote.getId().startsWith("S"))
-				leg = memService.query(Legislator.class).stream().filter(l -> vote.getId().equals(l.getLisId())).findFirst().orElseThrow();
+				leg = Optional.ofNullable(legIdsByLisId.get(vote.getId())).flatMap(id -> memService.get(id, Legislator.class)).orElseThrow();
 			else
 				leg = memService.get(Legislator.generateId(LegislativeNamespace.US_CONGRESS, PoliscoreUtil.CURRENT_SESSION.getNumber(), vote.getId()), Legislator.class).orElseThrow();
 		}
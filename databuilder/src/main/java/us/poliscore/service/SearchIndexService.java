@@ -0,0 +1,72 @@
+package us.poliscore.service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+
+import io.quarkus.logging.Log;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.SneakyThrows;
+import lombok.val;
+import us.poliscore.Environment;
+import us.poliscore.PoliscoreUtil;
+import us.poliscore.model.bill.Bill;
+import us.poliscore.model.bill.BillInterpretation;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.LegislatorInterpretation;
+import us.poliscore.search.FullTextIndex;
+import us.poliscore.service.storage.LocalCachedS3Service;
+import us.poliscore.service.storage.MemoryObjectService;
+
+/**
+ * Builds the full-text index the webapp searches bill and legislator interpretations with, from the same bills and legislators as the webapp's
+ * bills and legislators indexes. Only runs as part of WebappDataGenerator, which needs the interpretations in S3, so until it has run there's no
+ * interpretations.search resource and the webapp's /search finds nothing.
+ */
+@ApplicationScoped
+public class SearchIndexService {
+	
+	@Inject
+	private MemoryObjectService memService;
+	
+	@Inject
+	private LocalCachedS3Service s3;
+	
+	@SneakyThrows
+	public void generateSearchIndex() {
+		final File out = new File(Environment.getDeployedPath(), "../../webapp/src/main/resources/interpretations.search");
+		
+		val builder = new FullTextIndex.Builder();
+		
+		memService.queryAll(Bill.class).stream()
+			.filter(b -> PoliscoreUtil.SUPPORTED_CONGRESSES.stream().anyMatch(s -> b.isIntroducedInSession(s)) && s3.exists(BillInterpretation.generateId(b.getId(), null), BillInterpretation.class))
+			.sorted((a,b) -> a.getId().compareTo(b.getId()))
+			.forEach(b -> {
+				val interp = s3.get(BillInterpretation.generateId(b.getId(), null), BillInterpretation.class).orElseThrow();
+				
+				builder.add(b.getId(), b.getName(), interp.getShortExplain(), interp.getShortExplain(), interp.getLongExplain());
+			});
+		
+		// Only the latest session of each legislator, as in the legislators index
+		val latest = new HashMap<String, Legislator>();
+		memService.queryAll(Legislator.class).stream()
+			.filter(l -> PoliscoreUtil.SUPPORTED_CONGRESSES.stream().anyMatch(s -> l.isMemberOfSession(s)))
+			.forEach(l -> latest.merge(l.getBioguideId(), l, (a, b) -> a.getSession() < b.getSession() ? b : a));
+		
+		latest.values().stream()
+			.sorted((a,b) -> a.getId().compareTo(b.getId()))
+			.forEach(l -> {
+				s3.get(LegislatorInterpretation.generateId(l.getId(), l.getSession()), LegislatorInterpretation.class).ifPresent(interp -> {
+					builder.add(l.getId(), l.getName().getOfficial_full(), interp.getShortExplain(), interp.getShortExplain(), interp.getLongExplain());
+				});
+			});
+		
+		try (val os = new BufferedOutputStream(new FileOutputStream(out))) {
+			builder.write(os);
+		}
+		
+		Log.info("Generated a full-text search index of " + out.length() / 1024 + " KB");
+	}
+}
@@ -0,0 +1,103 @@
+package us.poliscore.tooling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.QuarkusApplication;
+import io.quarkus.runtime.annotations.QuarkusMain;
+import jakarta.inject.Inject;
+import lombok.SneakyThrows;
+import lombok.val;
+import us.poliscore.PoliscoreUtil;
+import us.poliscore.model.Persistable;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+import us.poliscore.service.storage.ObjectCopier;
+
+/**
+ * Compares the cost of the snapshot CachedDynamoDbService takes of every object it caches: ObjectCopier against the JSON tree round trip
+ * it replaced. Runs over real legislators (interactions and all) from DynamoDb, checks that the copies are equal to the originals, and logs
+ * the time per object for each.
+ */
+@QuarkusMain(name="SnapshotBenchmark")
+public class SnapshotBenchmark implements QuarkusApplication {
+	
+	public static int SAMPLE_LEGISLATORS = 100;
+	
+	public static int WARMUP_ROUNDS = 5;
+	
+	public static int ROUNDS = 20;
+	
+	@Inject
+	private DynamoDbPersistenceService ddb;
+	
+	protected void process()
+	{
+		val mapper = PoliscoreUtil.getObjectMapper();
+		val samples = new ArrayList<Legislator>();
+		
+		ddb.stream(Legislator.class, 25, Persistable.OBJECT_BY_DATE_INDEX, true, null, Persistable.getClassStorageBucket(Legislator.class), List.of("name", "session", "bioguideId", "birthday", "terms"))
+			.limit(SAMPLE_LEGISLATORS)
+			.forEach(l -> ddb.get(l.getId(), Legislator.class).ifPresent(samples::add));
+		
+		val interactions = samples.stream().mapToLong(l -> l.getInteractions().size()).sum();
+		Log.info("Benchmarking snapshots of " + samples.size() + " legislators with " + interactions + " interactions between them");
+		
+		for (val l : samples) {
+			if (!l.equals(ObjectCopier.copy(l))) throw new IllegalStateException("Copy of " + l.getId() + " isn't equal to the original");
+		}
+		
+		val json = time(samples, l -> roundTrip(mapper, l));
+		val copier = time(samples, ObjectCopier::copy);
+		
+		Log.info(String.format("JSON round trip: %.3f ms per legislator", json));
+		Log.info(String.format("ObjectCopier:    %.3f ms per legislator (%.1fx faster)", copier, json / copier));
+	}
+	
+	/**
+	 * Average milliseconds per object over ROUNDS passes, after WARMUP_ROUNDS passes to let the JIT settle.
+	 */
+	private static double time(List<Legislator> samples, UnaryOperator<Legislator> snapshot)
+	{
+		long sink = 0;
+		
+		for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+			for (val l : samples) sink += snapshot.apply(l).getInteractions().size();
+		}
+		
+		val start = System.nanoTime();
+		
+		for (int i = 0; i < ROUNDS; ++i) {
+			for (val l : samples) sink += snapshot.apply(l).getInteractions().size();
+		}
+		
+		val elapsed = System.nanoTime() - start;
+		if (sink == -1) Log.trace(sink);
+		
+		return elapsed / 1_000_000d / (ROUNDS * (double) samples.size());
+	}
+	
+	@SneakyThrows
+	private static Legislator roundTrip(ObjectMapper mapper, Legislator l)
+	{
+		return mapper.treeToValue(mapper.valueToTree(l), Legislator.class);
+	}
+	
+	@Override
+	public int run(String... args) throws Exception {
+		process();
+		
+		Quarkus.waitForExit();
+		return 0;
+	}
+	
+	public static void main(String[] args) {
+		Quarkus.run(SnapshotBenchmark.class, args);
+		Quarkus.asyncExit(0);
+	}
+}
@@ -0,0 +1,48 @@
+package us.poliscore;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.service.DdbWritePipeline.AdaptiveRateLimiter;
+
+public class AdaptiveRateLimiterTest {
+	
+	@Test
+	public void testReserveNeverBlocks()
+	{
+		val limiter = new AdaptiveRateLimiter(100, 10, 1000);
+		
+		Assertions.assertEquals(0, limiter.reserve(60));
+		
+		// The bucket only has 40 units left, so this one has to wait. The wait is returned rather than slept.
+		val start = System.nanoTime();
+		val wait = limiter.reserve(60);
+		
+		Assertions.assertTrue(wait > 0, "Expected a wait, got " + wait);
+		Assertions.assertTrue(wait <= 250, "Expected a wait of about 200ms, got " + wait);
+		Assertions.assertTrue(System.nanoTime() - start < 50_000_000L, "reserve blocked");
+	}
+	
+	@Test
+	public void testOversizedRequestLetThroughWhenFull()
+	{
+		val limiter = new AdaptiveRateLimiter(100, 10, 1000);
+		
+		Assertions.assertEquals(0, limiter.reserve(500));
+		Assertions.assertTrue(limiter.reserve(1) > 0, "The bucket should be in debt");
+	}
+	
+	@Test
+	public void testThrottleBacksOffOncePerCooldown()
+	{
+		val limiter = new AdaptiveRateLimiter(400, 25, 1000);
+		
+		limiter.throttled();
+		limiter.throttled();
+		Assertions.assertEquals(200, limiter.getRate(), 0.001);
+		
+		limiter.succeeded();
+		Assertions.assertEquals(200 + AdaptiveRateLimiter.INCREASE_PER_SUCCESS, limiter.getRate(), 0.001);
+	}
+}
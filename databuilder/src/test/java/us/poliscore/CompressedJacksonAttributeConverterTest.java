@@ -0,0 +1,66 @@
+package us.poliscore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.model.dynamodb.JacksonAttributeConverter.CompressedLegislatorBillInteractionListConverter;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+
+public class CompressedJacksonAttributeConverterTest {
+
+	private static LegislatorBillInteractionList interactions()
+	{
+		val list = new LegislatorBillInteractionList();
+
+		for (int i = 0; i < 50; ++i) {
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId("LEG/us/congress/118/A000001");
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setBillName("A bill to do thing " + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i));
+			list.add(interact);
+		}
+
+		return list;
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		val converter = new CompressedLegislatorBillInteractionListConverter();
+		val list = interactions();
+
+		val decoded = converter.transformTo(converter.transformFrom(list));
+
+		Assertions.assertEquals(list.stream().map(LegislatorBillInteraction::getBillId).toList(), decoded.stream().map(LegislatorBillInteraction::getBillId).toList());
+		Assertions.assertEquals(list.get(7).getDate(), decoded.get(7).getDate());
+	}
+
+	@Test
+	public void testReadsGzippedStrings() throws Exception
+	{
+		val converter = new CompressedLegislatorBillInteractionListConverter();
+		val list = interactions();
+
+		// How the converter used to write, by gzipping the whole JSON string
+		val json = PoliscoreUtil.getObjectMapper().writeValueAsString(list);
+		val baos = new ByteArrayOutputStream();
+		try (val zos = new GZIPOutputStream(baos)) {
+			zos.write(json.getBytes(StandardCharsets.UTF_8));
+		}
+
+		val decoded = converter.transformTo(AttributeValue.builder().b(SdkBytes.fromByteArray(baos.toByteArray())).build());
+
+		Assertions.assertEquals(list.stream().map(LegislatorBillInteraction::getBillId).toList(), decoded.stream().map(LegislatorBillInteraction::getBillId).toList());
+	}
+}
@@ -0,0 +1,97 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import us.poliscore.model.IssueStats;
+import us.poliscore.model.TrackedIssue;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
+import us.poliscore.service.storage.DdbClassMetadata;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class DdbClassMetadataTest {
+
+	private static DynamoDbEnhancedClient ddbe()
+	{
+		// Nothing is ever sent, the client is only needed to build the table schema
+		val client = DynamoDbClient.builder().region(Region.US_EAST_1).credentialsProvider(AnonymousCredentialsProvider.create()).build();
+
+		return DynamoDbEnhancedClient.builder().dynamoDbClient(client).build();
+	}
+
+	private static Legislator legislator()
+	{
+		val list = new LegislatorBillInteractionList();
+
+		for (int i = 0; i < 5; ++i) {
+			val stats = new IssueStats();
+			stats.setStat(TrackedIssue.OverallBenefitToSociety, (i * 37) % 100 - 50);
+			if (i % 2 == 0) stats.setStat(TrackedIssue.Education, i);
+
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId("LEG/us/congress/118/A000001");
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i));
+			interact.setIssueStats(stats);
+			list.add(interact);
+		}
+
+		val leg = new Legislator();
+		leg.setInteractions(list);
+		leg.setInteractionOrders(LegislatorInteractionOrders.of(list));
+		return leg;
+	}
+
+	@Test
+	public void testResolvedOncePerClass()
+	{
+		val ddbe = ddbe();
+
+		Assertions.assertSame(DdbClassMetadata.of(Legislator.class, ddbe, DynamoDbPersistenceService.TABLE_NAME),
+				DdbClassMetadata.of(Legislator.class, ddbe, DynamoDbPersistenceService.TABLE_NAME));
+	}
+
+	@Test
+	public void testDataPageAttributes()
+	{
+		val meta = DdbClassMetadata.of(Legislator.class, ddbe(), DynamoDbPersistenceService.TABLE_NAME);
+
+		Assertions.assertFalse(meta.isHasSortKey());
+		Assertions.assertEquals(List.of("interactionOrders"), meta.getPages().get(Legislator.INTERACTION_ORDERS_PAGE).stream().map(a -> a.getName()).toList());
+		Assertions.assertTrue(meta.getPageAttributeNames().containsAll(List.of("interactions", "interactionOrders", "interactionsPrivate1", "interactionsPrivate2")));
+
+		// Read through the cached accessors and converter, and written back into a fresh object
+		val leg = legislator();
+		val attr = meta.getPageAttribute("interactionOrders");
+		val copy = new Legislator();
+		attr.write(copy, attr.read(leg));
+
+		Assertions.assertEquals(leg.getInteractionOrders(), copy.getInteractionOrders());
+	}
+
+	@Test
+	public void testListPages()
+	{
+		val meta = DdbClassMetadata.of(Legislator.class, ddbe(), DynamoDbPersistenceService.TABLE_NAME);
+		val list = meta.getListAttributes().get("interactions");
+
+		Assertions.assertEquals("interactions/00003", list.page(3));
+		Assertions.assertEquals(3, list.pageIndex(list.page(3)));
+		Assertions.assertSame(list, meta.getListAttributeForPage(list.page(0)));
+		Assertions.assertNull(meta.getListAttributeForPage(Legislator.INTERACTION_ORDERS_PAGE));
+
+		// Legislators are a single partition, so there's no sort key to build a key from
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> meta.key("LEG/us/congress/118/A000001"));
+	}
+}
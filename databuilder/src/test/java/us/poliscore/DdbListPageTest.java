@@ -0,0 +1,106 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.service.storage.DdbClassMetadata;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class DdbListPageTest {
+	
+	private static DdbClassMetadata<Legislator> metadata()
+	{
+		// Nothing is ever sent, the client is only needed to build the table schema
+		val client = DynamoDbClient.builder().region(Region.US_EAST_1).credentialsProvider(AnonymousCredentialsProvider.create()).build();
+		
+		return DdbClassMetadata.of(Legislator.class, DynamoDbEnhancedClient.builder().dynamoDbClient(client).build(), DynamoDbPersistenceService.TABLE_NAME);
+	}
+	
+	private static Legislator legislator(int interactions)
+	{
+		val random = new Random(42);
+		val list = new LegislatorBillInteractionList();
+		
+		for (int i = 0; i < interactions; ++i) {
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId("LEG/us/congress/118/A000001");
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			
+			// Random text, so that the list doesn't compress down to nothing
+			interact.setBillName(Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+			interact.setShortExplain(Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i % 700));
+			list.add(interact);
+		}
+		
+		val leg = new Legislator();
+		leg.setInteractions(list);
+		return leg;
+	}
+	
+	@Test
+	public void testHeadExcludesPageAttributes()
+	{
+		val head = metadata().getHeadAttributeNames();
+		
+		Assertions.assertFalse(head.contains("interactions"));
+		Assertions.assertFalse(head.contains("interactionOrders"));
+		Assertions.assertTrue(head.contains("interactionsPreview"));
+		Assertions.assertTrue(head.contains("id"));
+		Assertions.assertFalse(head.contains("interactionsPrivate1"));
+	}
+	
+	@Test
+	public void testLegacyPagesAreReadButNotWritten()
+	{
+		val meta = metadata();
+		
+		Assertions.assertEquals(Set.of("1", "2"), meta.getLegacyPages());
+		Assertions.assertNotNull(meta.getPageAttribute("interactionsPrivate1"));
+		Assertions.assertFalse(meta.getPages().containsKey("1"));
+		Assertions.assertFalse(meta.getPages().containsKey("2"));
+	}
+	
+	@Test
+	public void testSmallListIsOneChunk()
+	{
+		val list = metadata().getListAttributes().get("interactions");
+		
+		Assertions.assertEquals(1, list.read(legislator(50)).size());
+		Assertions.assertEquals(1, list.read(legislator(0)).size(), "An empty list still replaces what was stored");
+	}
+	
+	@Test
+	public void testLargeListSplitsUnderMaxBytes()
+	{
+		val list = metadata().getListAttributes().get("interactions");
+		val leg = legislator(30000);
+		val chunks = list.read(leg);
+		
+		Assertions.assertTrue(chunks.size() > 1, "Expected the list to be split");
+		
+		val read = new ArrayList<LegislatorBillInteraction>();
+		for (AttributeValue chunk : chunks) {
+			Assertions.assertTrue(chunk.b().asByteArrayUnsafe().length <= list.getMaxBytes(), "Chunk over maxBytes");
+			
+			list.decode(chunk).forEach(e -> read.add((LegislatorBillInteraction) e));
+		}
+		
+		Assertions.assertEquals(leg.getInteractions().stream().map(i -> i.getBillId()).toList(), read.stream().map(i -> i.getBillId()).toList());
+	}
+}
@@ -0,0 +1,82 @@
+package us.poliscore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.FakeDynamoDb.Note;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class DdbWritePipelineTest {
+
+	private static List<Note> notes(String text)
+	{
+		val notes = new ArrayList<Note>();
+
+		// Exactly one batch, so that it's sent as soon as it's submitted
+		for (int i = 0; i < DynamoDbPersistenceService.MAX_BATCH_WRITE_ITEMS; ++i) {
+			notes.add(new Note(Note.ID_CLASS_PREFIX + "/" + i, text));
+		}
+
+		return notes;
+	}
+
+	private static List<String> textsPut(FakeDynamoDb fake, String key)
+	{
+		synchronized (fake.puts) {
+			return fake.puts.stream().filter(i -> DynamoDbPersistenceService.itemKey(i).equals(key)).map(i -> i.get("text").s()).toList();
+		}
+	}
+
+	@Test
+	public void testRetriedWriteDoesNotOverwriteNewerOne()
+	{
+		val fake = new FakeDynamoDb();
+		val pipeline = fake.pipeline();
+		val key = Note.ID_CLASS_PREFIX + "/0~0";
+
+		// The first batch's write of the note comes back unprocessed and is retried later, while the second batch is ready to go right away
+		fake.unprocessedOnce.add(key);
+		pipeline.submitAll(notes("v1"));
+		pipeline.submitAll(notes("v2"));
+		pipeline.flush();
+
+		Assertions.assertEquals(List.of("v1", "v2"), textsPut(fake, key));
+
+		for (val item : fake.items.values()) {
+			Assertions.assertEquals("v2", item.get("text").s());
+		}
+
+		// And again on the other side of the flush, with the retried write being the newer one
+		pipeline.submitAll(notes("v3"));
+		fake.unprocessedOnce.add(key);
+		pipeline.submitAll(notes("v4"));
+		pipeline.flush();
+
+		val texts = textsPut(fake, key);
+		Assertions.assertEquals("v4", texts.get(texts.size() - 1));
+		Assertions.assertEquals("v4", fake.items.get(key).get("text").s());
+	}
+
+	@Test
+	public void testUnchangedWritesAreSkipped()
+	{
+		val fake = new FakeDynamoDb();
+		val pipeline = fake.pipeline();
+
+		pipeline.submitAll(notes("v1"));
+		pipeline.flush();
+
+		val written = fake.puts.size();
+
+		// Checked against what's stored, since flush forgets the pipeline's own writes
+		pipeline.submitAll(notes("v1"));
+		pipeline.flush();
+
+		Assertions.assertEquals(DynamoDbPersistenceService.MAX_BATCH_WRITE_ITEMS, written);
+		Assertions.assertEquals(written, fake.puts.size());
+	}
+}
@@ -0,0 +1,325 @@
+package us.poliscore;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbServiceClientConfiguration;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import us.poliscore.model.Persistable;
+import us.poliscore.service.DdbWritePipeline;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+/**
+ * An in-memory stand-in for the ddb table, covering the calls made by the write paths, point reads and queries. GetItem applies a projection
+ * to the item's top level attributes, so a projected nested path returns the whole attribute it's in. Other reads return the whole item.
+ *
+ * Queries support the key conditions the persistence service builds (an equal partition key, optionally with a begins_with on the sort key)
+ * against the table and the storage bucket indexes, and return at most queryPageItems items, as DynamoDb does when it hits 1 MB.
+ */
+public class FakeDynamoDb {
+
+	/**
+	 * A minimal object without pages, so that tests control exactly which items are written.
+	 */
+	@Data
+	@DynamoDbBean
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Note implements Persistable {
+
+		public static final String ID_CLASS_PREFIX = "NOT";
+
+		protected String id;
+
+		protected String text;
+
+		@DynamoDbPartitionKey
+		public String getId() { return id; }
+
+		@Override public String getStorageBucket() { return ID_CLASS_PREFIX; }
+		@Override public void setStorageBucket(String prefix) { }
+	}
+
+	public final Map<String, Map<String, AttributeValue>> items = new ConcurrentHashMap<String, Map<String, AttributeValue>>();
+
+	/**
+	 * Every item put, in the order the table applied them.
+	 */
+	public final List<Map<String, AttributeValue>> puts = Collections.synchronizedList(new ArrayList<Map<String, AttributeValue>>());
+
+	public final AtomicInteger batchWrites = new AtomicInteger();
+
+	public final AtomicInteger reads = new AtomicInteger();
+
+	public final AtomicInteger queries = new AtomicInteger();
+
+	public int queryPageItems = Integer.MAX_VALUE;
+
+	/**
+	 * The sort key of each storage bucket index, as the table defines them.
+	 */
+	private static final Map<String, String> INDEX_SORT_KEYS = Map.of(
+			Persistable.OBJECT_BY_DATE_INDEX, "date",
+			Persistable.OBJECT_BY_RATING_INDEX, "rating",
+			Persistable.OBJECT_BY_RATING_ABS_INDEX, "ratingAbs",
+			Persistable.OBJECT_BY_LOCATION_INDEX, "location",
+			Persistable.OBJECT_BY_IMPACT_INDEX, "impact",
+			Persistable.OBJECT_BY_IMPACT_ABS_INDEX, "impactAbs",
+			Persistable.OBJECT_BY_HOT_INDEX, "hot");
+
+	/**
+	 * Item keys which the next batch write containing them returns as unprocessed, as DynamoDb does when it's over capacity.
+	 */
+	public final Set<String> unprocessedOnce = ConcurrentHashMap.newKeySet();
+
+	public DynamoDbPersistenceService persistence()
+	{
+		val ddb = new DynamoDbPersistenceService();
+		inject(ddb, "ddb", client());
+		inject(ddb, "ddbe", DynamoDbEnhancedClient.builder().dynamoDbClient(client()).build());
+		return ddb;
+	}
+
+	public DdbWritePipeline pipeline()
+	{
+		val pipeline = new DdbWritePipeline();
+		inject(pipeline, "ddb", persistence());
+		inject(pipeline, "ddbAsync", asyncClient());
+		return pipeline;
+	}
+
+	@SneakyThrows
+	private static void inject(Object target, String field, Object value)
+	{
+		val f = target.getClass().getDeclaredField(field);
+		f.setAccessible(true);
+		f.set(target, value);
+	}
+
+	private void put(Map<String, AttributeValue> item)
+	{
+		items.put(DynamoDbPersistenceService.itemKey(item), item);
+		puts.add(item);
+	}
+
+	private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, String projection, Map<String, String> names)
+	{
+		if (projection == null) return item;
+
+		val projected = new HashMap<String, AttributeValue>();
+
+		for (val path : projection.split(",")) {
+			val top = path.trim().split("\\.")[0];
+			val attr = names.getOrDefault(top, top);
+
+			if (item.containsKey(attr)) projected.put(attr, item.get(attr));
+		}
+
+		return projected;
+	}
+
+	private static int compare(AttributeValue a, AttributeValue b)
+	{
+		return a.n() != null ? new BigDecimal(a.n()).compareTo(new BigDecimal(b.n())) : a.s().compareTo(b.s());
+	}
+
+	private synchronized QueryResponse query(QueryRequest request)
+	{
+		queries.incrementAndGet();
+
+		val partitionKey = request.indexName() == null ? "id" : "storageBucket";
+		val sortKey = request.indexName() == null ? "page" : INDEX_SORT_KEYS.get(request.indexName());
+		val names = request.expressionAttributeNames();
+		val values = request.expressionAttributeValues();
+
+		String partition = null, prefix = null;
+		for (val clause : request.keyConditionExpression().split(" AND ")) {
+			if (clause.trim().startsWith("begins_with")) {
+				prefix = values.get(clause.substring(clause.indexOf(',') + 1, clause.lastIndexOf(')')).trim()).s();
+			} else {
+				val parts = clause.split("=");
+				val name = parts[0].trim();
+				if (!names.getOrDefault(name, name).equals(partitionKey)) throw new UnsupportedOperationException(clause);
+
+				partition = values.get(parts[1].trim()).s();
+			}
+		}
+
+		val p = partition;
+		val pre = prefix;
+		Comparator<Map<String, AttributeValue>> order = (a, b) -> compare(a.get(sortKey), b.get(sortKey));
+		order = order.thenComparing(i -> DynamoDbPersistenceService.itemKey(i));
+		if (Boolean.FALSE.equals(request.scanIndexForward())) order = order.reversed();
+
+		val matching = items.values().stream()
+				.filter(i -> i.containsKey(partitionKey) && i.get(partitionKey).s().equals(p) && i.containsKey(sortKey))
+				.filter(i -> pre == null || i.get(sortKey).s().startsWith(pre))
+				.sorted(order)
+				.toList();
+
+		int start = 0;
+		if (request.hasExclusiveStartKey()) {
+			val after = DynamoDbPersistenceService.itemKey(request.exclusiveStartKey());
+			while (start < matching.size() && !DynamoDbPersistenceService.itemKey(matching.get(start)).equals(after)) ++start;
+			++start;
+		}
+
+		val count = Math.min(queryPageItems, request.limit() == null ? Integer.MAX_VALUE : request.limit());
+		val page = matching.subList(Math.min(start, matching.size()), Math.min(matching.size(), start + Math.min(count, matching.size())));
+		val response = QueryResponse.builder().items(page).count(page.size());
+
+		if (start + page.size() < matching.size() && !page.isEmpty()) {
+			val last = page.get(page.size() - 1);
+			val key = new HashMap<String, AttributeValue>();
+			for (val attr : List.of("id", "page", partitionKey, sortKey)) key.put(attr, last.get(attr));
+			response.lastEvaluatedKey(key);
+		}
+
+		return response.build();
+	}
+
+	private synchronized BatchWriteItemResponse batchWrite(BatchWriteItemRequest request)
+	{
+		batchWrites.incrementAndGet();
+
+		val unprocessed = new ArrayList<WriteRequest>();
+
+		for (val write : request.requestItems().get(DynamoDbPersistenceService.TABLE_NAME)) {
+			val key = DynamoDbPersistenceService.itemKey(write.putRequest() != null ? write.putRequest().item() : write.deleteRequest().key());
+
+			if (unprocessedOnce.remove(key)) {
+				unprocessed.add(write);
+			} else if (write.putRequest() != null) {
+				put(write.putRequest().item());
+			} else {
+				items.remove(key);
+			}
+		}
+
+		return BatchWriteItemResponse.builder()
+				.unprocessedItems(unprocessed.isEmpty() ? Map.of() : Map.of(DynamoDbPersistenceService.TABLE_NAME, unprocessed))
+				.build();
+	}
+
+	public DynamoDbClient client()
+	{
+		return new DynamoDbClient() {
+			@Override
+			public String serviceName() { return SERVICE_NAME; }
+
+			@Override
+			public void close() { }
+
+			@Override
+			public DynamoDbServiceClientConfiguration serviceClientConfiguration() { throw new UnsupportedOperationException(); }
+
+			@Override
+			public PutItemResponse putItem(PutItemRequest request)
+			{
+				synchronized (FakeDynamoDb.this) {
+					put(request.item());
+				}
+
+				return PutItemResponse.builder().build();
+			}
+
+			@Override
+			public DeleteItemResponse deleteItem(DeleteItemRequest request)
+			{
+				items.remove(DynamoDbPersistenceService.itemKey(request.key()));
+				return DeleteItemResponse.builder().build();
+			}
+
+			@Override
+			public GetItemResponse getItem(GetItemRequest request)
+			{
+				reads.incrementAndGet();
+
+				val item = items.get(DynamoDbPersistenceService.itemKey(request.key()));
+				return item == null ? GetItemResponse.builder().build() : GetItemResponse.builder().item(project(item, request.projectionExpression(), request.expressionAttributeNames())).build();
+			}
+
+			@Override
+			public BatchGetItemResponse batchGetItem(BatchGetItemRequest request)
+			{
+				reads.incrementAndGet();
+
+				val found = new ArrayList<Map<String, AttributeValue>>();
+
+				for (val key : request.requestItems().get(DynamoDbPersistenceService.TABLE_NAME).keys()) {
+					val item = items.get(DynamoDbPersistenceService.itemKey(key));
+					if (item != null) found.add(new HashMap<String, AttributeValue>(item));
+				}
+
+				return BatchGetItemResponse.builder()
+						.responses(Map.of(DynamoDbPersistenceService.TABLE_NAME, found))
+						.unprocessedKeys(Map.of())
+						.build();
+			}
+
+			@Override
+			public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request)
+			{
+				return batchWrite(request);
+			}
+
+			@Override
+			public QueryResponse query(QueryRequest request)
+			{
+				return FakeDynamoDb.this.query(request);
+			}
+		};
+	}
+
+	public DynamoDbAsyncClient asyncClient()
+	{
+		return new DynamoDbAsyncClient() {
+			@Override
+			public String serviceName() { return SERVICE_NAME; }
+
+			@Override
+			public void close() { }
+
+			@Override
+			public DynamoDbServiceClientConfiguration serviceClientConfiguration() { throw new UnsupportedOperationException(); }
+
+			@Override
+			public CompletableFuture<BatchWriteItemResponse> batchWriteItem(BatchWriteItemRequest request)
+			{
+				return CompletableFuture.supplyAsync(() -> batchWrite(request));
+			}
+		};
+	}
+}
@@ -0,0 +1,105 @@
+package us.poliscore;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.FakeDynamoDb.Note;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class FingerprintTest {
+	
+	@Test
+	public void testFingerprintIgnoresOrderAndItself()
+	{
+		val a = new LinkedHashMap<String, AttributeValue>();
+		a.put("id", AttributeValue.fromS("BIL/us/congress/118/hr/1"));
+		a.put("page", AttributeValue.fromS("0"));
+		a.put("stats", AttributeValue.fromM(Map.of("x", AttributeValue.fromN("1"), "y", AttributeValue.fromN("2"))));
+		
+		val b = new HashMap<String, AttributeValue>();
+		b.put("stats", AttributeValue.fromM(Map.of("y", AttributeValue.fromN("2"), "x", AttributeValue.fromN("1"))));
+		b.put("page", AttributeValue.fromS("0"));
+		b.put("id", AttributeValue.fromS("BIL/us/congress/118/hr/1"));
+		b.put(DynamoDbPersistenceService.FINGERPRINT_ATTRIBUTE, AttributeValue.fromS("stale"));
+		
+		Assertions.assertEquals(DynamoDbPersistenceService.fingerprint(a), DynamoDbPersistenceService.fingerprint(b));
+	}
+	
+	@Test
+	public void testFingerprintSeesChanges()
+	{
+		val a = Map.of("id", AttributeValue.fromS("x"), "page", AttributeValue.fromS("0"), "rating", AttributeValue.fromN("1"));
+		val b = Map.of("id", AttributeValue.fromS("x"), "page", AttributeValue.fromS("0"), "rating", AttributeValue.fromN("2"));
+		val c = Map.of("id", AttributeValue.fromS("x"), "page", AttributeValue.fromS("0"), "rating", AttributeValue.fromS("1"));
+		
+		Assertions.assertNotEquals(DynamoDbPersistenceService.fingerprint(a), DynamoDbPersistenceService.fingerprint(b));
+		Assertions.assertNotEquals(DynamoDbPersistenceService.fingerprint(a), DynamoDbPersistenceService.fingerprint(c));
+	}
+	
+	private static Map<String, AttributeValue> item(String rating)
+	{
+		val item = new HashMap<String, AttributeValue>(Map.of("id", AttributeValue.fromS("x"), "page", AttributeValue.fromS("0"), "rating", AttributeValue.fromN(rating)));
+		item.put(DynamoDbPersistenceService.FINGERPRINT_ATTRIBUTE, AttributeValue.fromS(DynamoDbPersistenceService.fingerprint(item)));
+		return item;
+	}
+	
+	@Test
+	public void testSkipsOwnUnchangedWrites()
+	{
+		// Everything checked here is known from our own writes, so no ddb client is needed
+		val ddb = new DynamoDbPersistenceService();
+		ddb.recordWritten(List.of(item("1")));
+		
+		Assertions.assertEquals(List.of(), ddb.withoutUnchanged(List.of(item("1"))));
+		Assertions.assertEquals(List.of(item("2")), ddb.withoutUnchanged(List.of(item("2"))));
+		Assertions.assertEquals(1, ddb.drainSkippedWrites());
+	}
+	
+	@Test
+	public void testUnchangedObjectsAreNotRewritten()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = fake.persistence();
+		
+		ddb.putAll(List.of(new Note("NOT/1", "a"), new Note("NOT/2", "b")));
+		Assertions.assertEquals(2, fake.puts.size());
+		
+		// Checked against what's stored, not just our own writes
+		ddb.forgetFingerprints();
+		ddb.putAll(List.of(new Note("NOT/1", "a"), new Note("NOT/2", "changed")));
+		
+		Assertions.assertEquals(3, fake.puts.size());
+		Assertions.assertEquals("changed", fake.puts.get(2).get("text").s());
+		
+		ddb.put(new Note("NOT/1", "a"));
+		Assertions.assertEquals(3, fake.puts.size());
+		Assertions.assertEquals(2, ddb.drainSkippedWrites());
+	}
+	
+	@Test
+	public void testSkippingCanBeTurnedOff()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = fake.persistence();
+		
+		DynamoDbPersistenceService.SKIP_UNCHANGED_WRITES = false;
+		
+		try {
+			ddb.putAll(List.of(new Note("NOT/1", "a")));
+			ddb.putAll(List.of(new Note("NOT/1", "a")));
+			
+			// Nothing is read back to check either
+			Assertions.assertEquals(2, fake.puts.size());
+			Assertions.assertEquals(0, fake.reads.get());
+		} finally {
+			DynamoDbPersistenceService.SKIP_UNCHANGED_WRITES = true;
+		}
+	}
+}
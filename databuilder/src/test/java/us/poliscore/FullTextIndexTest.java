@@ -0,0 +1,85 @@
+package us.poliscore;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import us.poliscore.search.FullTextIndex;
+import us.poliscore.search.SearchHit;
+
+public class FullTextIndexTest {
+
+	@SneakyThrows
+	private static FullTextIndex index()
+	{
+		val builder = new FullTextIndex.Builder()
+			.add("BIL/us/congress/118/hr/1", "Firearm Safety Act", "Regulates firearms.", "Requires background checks for all firearm sales.")
+			.add("BIL/us/congress/118/hr/2", "Farm Bill", "Funds agriculture.", "Extends crop insurance policies and mentions firearms once.")
+			.add("BIL/us/congress/118/hr/3", "Highway Funding Act", "Funds roads.", "Pays for highway and bridge repair in every state.")
+			.add("LEG/us/congress/118/A000001", "Jane Doe", "A legislator.", "Focused on farm policy and crop insurance.");
+
+		val baos = new ByteArrayOutputStream();
+		builder.write(baos);
+
+		return FullTextIndex.of(ByteBuffer.wrap(baos.toByteArray()));
+	}
+
+	private static List<String> ids(List<SearchHit> hits)
+	{
+		return hits.stream().map(SearchHit::getId).toList();
+	}
+
+	@Test
+	public void testRanking()
+	{
+		val index = index();
+		Assertions.assertEquals(4, index.size());
+
+		// The name counts for more than a passing mention
+		val hits = index.search("firearms", 0, 10);
+		Assertions.assertEquals(List.of("BIL/us/congress/118/hr/1", "BIL/us/congress/118/hr/2"), ids(hits));
+		Assertions.assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+		Assertions.assertEquals("Firearm Safety Act", hits.get(0).getName());
+		Assertions.assertEquals("Regulates firearms.", hits.get(0).getSummary());
+	}
+
+	@Test
+	public void testTokenizing()
+	{
+		Assertions.assertEquals(List.of("policy", "firearm", "crop", "bus"), FullTextIndex.tokenize("The POLICIES of firearms, and crops; bus!"));
+
+		val index = index();
+		Assertions.assertEquals(List.of("BIL/us/congress/118/hr/2", "LEG/us/congress/118/A000001"), ids(index.search("crop insurance policy", 0, 10)).stream().sorted().toList());
+		Assertions.assertTrue(index.search("the and of", 0, 10).isEmpty());
+		Assertions.assertTrue(index.search("spaceships", 0, 10).isEmpty());
+	}
+
+	@Test
+	public void testPaging()
+	{
+		val index = index();
+		val all = ids(index.search("funds farm highway firearm", 0, 10));
+
+		Assertions.assertEquals(4, all.size());
+		Assertions.assertEquals(all.subList(0, 2), ids(index.search("funds farm highway firearm", 0, 2)));
+		Assertions.assertEquals(all.subList(2, 4), ids(index.search("funds farm highway firearm", 2, 2)));
+		Assertions.assertTrue(index.search("funds farm highway firearm", 4, 2).isEmpty());
+	}
+
+	@Test
+	@SneakyThrows
+	public void testEmptyIndex()
+	{
+		val baos = new ByteArrayOutputStream();
+		new FullTextIndex.Builder().write(baos);
+
+		val index = FullTextIndex.of(ByteBuffer.wrap(baos.toByteArray()));
+		Assertions.assertEquals(0, index.size());
+		Assertions.assertTrue(index.search("firearms", 0, 10).isEmpty());
+	}
+}
@@ -0,0 +1,113 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.model.IssueStats;
+import us.poliscore.model.Persistable;
+import us.poliscore.model.TrackedIssue;
+import us.poliscore.model.dynamodb.LegislatorInteractionOrdersConverter;
+import us.poliscore.model.legislator.LegislatorBillInteraction;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
+
+public class LegislatorInteractionOrdersTest {
+
+	private static final TrackedIssue ISSUE = Arrays.stream(TrackedIssue.values()).filter(i -> i != TrackedIssue.OverallBenefitToSociety).findFirst().orElseThrow();
+
+	/**
+	 * Enough interactions that ordinals take more than one varint byte, with dates out of order, plenty of tied ratings and the issue stat on
+	 * only half of them.
+	 */
+	private static List<LegislatorBillInteraction> interactions()
+	{
+		val list = new ArrayList<LegislatorBillInteraction>();
+
+		for (int i = 0; i < 300; ++i) {
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId("LEG/us/congress/118/A000001");
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays((i * 7) % 300));
+			interact.setStatusProgress(0.5f);
+			interact.setCosponsorPercent(0.25f);
+
+			val stats = new IssueStats();
+			stats.setStat(TrackedIssue.OverallBenefitToSociety, (i % 21) - 10);
+			if (i % 2 == 0) stats.setStat(ISSUE, (i % 5) - 2);
+			interact.setIssueStats(stats);
+
+			list.add(interact);
+		}
+
+		return list;
+	}
+
+	@Test
+	public void testOrdersMatchSortingTheInteractions()
+	{
+		val interactions = interactions();
+		val orders = LegislatorInteractionOrders.of(interactions);
+
+		Assertions.assertEquals(300, orders.getSize());
+		Assertions.assertEquals(LegislatorInteractionOrders.INDEXES.size() + TrackedIssue.values().length, orders.getOrders().size());
+
+		val keys = new ArrayList<String[]>();
+		LegislatorInteractionOrders.INDEXES.forEach(index -> keys.add(new String[] { index, null }));
+		Arrays.stream(TrackedIssue.values()).forEach(issue -> keys.add(new String[] { LegislatorInteractionOrders.TRACKED_ISSUE_INDEX, issue.name() }));
+
+		for (val key : keys) {
+			val comparator = LegislatorInteractionOrders.comparator(key[0], key[1]);
+			val filter = LegislatorInteractionOrders.filter(key[0], key[1]);
+
+			// What the webapp falls back to without precomputed orders, which ties the same way because both sorts are stable
+			val expected = IntStream.range(0, interactions.size())
+					.filter(i -> filter.test(interactions.get(i)))
+					.boxed()
+					.sorted((a, b) -> comparator.compare(interactions.get(a), interactions.get(b)))
+					.mapToInt(Integer::intValue)
+					.toArray();
+
+			Assertions.assertArrayEquals(expected, orders.get(key[0], key[1]).orElseThrow(), Arrays.toString(key));
+		}
+
+		Assertions.assertEquals(150, orders.get(LegislatorInteractionOrders.TRACKED_ISSUE_INDEX, ISSUE.name()).orElseThrow().length);
+		Assertions.assertTrue(orders.get("Unknown", null).isEmpty());
+	}
+
+	@Test
+	public void testTiesKeepTheirStoredOrder()
+	{
+		val interactions = interactions();
+		val rating = LegislatorInteractionOrders.of(interactions).get(Persistable.OBJECT_BY_RATING_INDEX, null).orElseThrow();
+
+		for (int i = 1; i < rating.length; ++i) {
+			val prev = interactions.get(rating[i - 1]).getRating();
+			val cur = interactions.get(rating[i]).getRating();
+
+			Assertions.assertTrue(prev < cur || (prev == cur && rating[i - 1] < rating[i]));
+		}
+	}
+
+	@Test
+	public void testConverterRoundTrip()
+	{
+		val converter = new LegislatorInteractionOrdersConverter();
+		val orders = LegislatorInteractionOrders.of(interactions());
+
+		val decoded = converter.transformTo(converter.transformFrom(orders));
+
+		Assertions.assertEquals(orders, decoded);
+		Assertions.assertEquals(new ArrayList<String>(orders.getOrders().keySet()), new ArrayList<String>(decoded.getOrders().keySet()));
+
+		val empty = LegislatorInteractionOrders.of(List.of());
+		Assertions.assertEquals(empty, converter.transformTo(converter.transformFrom(empty)));
+		Assertions.assertEquals(0, converter.transformTo(converter.transformFrom(empty)).getOrders().get(Persistable.OBJECT_BY_DATE_INDEX).length);
+	}
+}
@@ -0,0 +1,71 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+
+public class LegislatorPreviewTest {
+
+	private static Legislator legislator(int interactions, int previewSize)
+	{
+		val list = new LegislatorBillInteractionList();
+
+		for (int i = 0; i < interactions; ++i) {
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId("LEG/us/congress/118/A000001");
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i));
+			list.add(interact);
+		}
+
+		val leg = new Legislator();
+		leg.setInteractions(list);
+		leg.setInteractionsPreview(list.stream().limit(previewSize).collect(Collectors.toCollection(LegislatorBillInteractionList::new)));
+		return leg;
+	}
+
+	@Test
+	public void testDefaultFirstPageServedFromPreview()
+	{
+		val slice = legislator(100, Legislator.INTERACTIONS_PREVIEW_SIZE).previewSlice(0, Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE);
+
+		Assertions.assertTrue(slice.isPresent());
+
+		// The extra interaction is what tells the page there's more data
+		Assertions.assertEquals(Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE + 1, slice.get().size());
+	}
+
+	@Test
+	public void testShortPreviewIsWholeList()
+	{
+		val slice = legislator(10, Legislator.INTERACTIONS_PREVIEW_SIZE).previewSlice(0, Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE);
+
+		Assertions.assertTrue(slice.isPresent());
+		Assertions.assertEquals(10, slice.get().size());
+	}
+
+	@Test
+	public void testDeeperPageNeedsFullList()
+	{
+		val leg = legislator(100, Legislator.INTERACTIONS_PREVIEW_SIZE);
+
+		Assertions.assertTrue(leg.previewSlice(1, Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE).isEmpty());
+		Assertions.assertTrue(leg.previewSlice(Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE, Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE).isEmpty());
+	}
+
+	@Test
+	public void testOldPreviewIsNotTakenAsWholeList()
+	{
+		// Written back when previews held exactly one page
+		val leg = legislator(100, Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE);
+
+		Assertions.assertTrue(leg.previewSlice(0, Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE).isEmpty());
+	}
+}
@@ -0,0 +1,102 @@
+package us.poliscore;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import us.poliscore.service.storage.LocalCacheIndex;
+
+public class LocalCacheIndexTest {
+
+	@TempDir
+	File dir;
+
+	@SneakyThrows
+	private File write(String name, int bytes)
+	{
+		val f = new File(dir, name);
+		f.getParentFile().mkdirs();
+		Files.write(f.toPath(), new byte[bytes]);
+		return f;
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed()
+	{
+		val index = new LocalCacheIndex(dir, 1000);
+
+		val a = write("a.json", 300);
+		index.record(a);
+		val b = write("BIL/b.json", 300);
+		index.record(b);
+		val c = write("c.json", 300);
+		index.record(c);
+
+		// Reading a makes b the least recently used
+		index.touch(a);
+
+		val d = write("d.json", 300);
+		index.record(d);
+
+		Assertions.assertTrue(a.exists());
+		Assertions.assertFalse(b.exists());
+		Assertions.assertTrue(c.exists());
+		Assertions.assertTrue(d.exists());
+		Assertions.assertEquals(900, index.getTotalBytes());
+	}
+
+	@Test
+	public void testEvictsDownToTheLowWatermark()
+	{
+		val index = new LocalCacheIndex(dir, 1000);
+
+		for (int i = 0; i < 10; ++i) {
+			index.record(write(i + ".json", 100));
+		}
+		Assertions.assertEquals(1000, index.getTotalBytes());
+
+		// Over by one byte frees space down to 900, not just the one byte
+		index.record(write("10.json", 1));
+
+		Assertions.assertTrue((long) (1000 * LocalCacheIndex.LOW_WATERMARK) >= index.getTotalBytes());
+		Assertions.assertFalse(new File(dir, "0.json").exists());
+		Assertions.assertFalse(new File(dir, "1.json").exists());
+		Assertions.assertTrue(new File(dir, "2.json").exists());
+	}
+
+	@Test
+	public void testRewritesAndRemovals()
+	{
+		val index = new LocalCacheIndex(dir, 1000);
+
+		val a = write("a.json", 300);
+		index.record(a);
+		index.record(write("a.json", 500));
+		Assertions.assertEquals(500, index.getTotalBytes());
+
+		a.delete();
+		index.remove(a);
+		index.remove(a);
+		Assertions.assertEquals(0, index.getTotalBytes());
+	}
+
+	@Test
+	public void testPicksUpExistingFilesOldestFirst()
+	{
+		val old = write("old.json", 600);
+		old.setLastModified(1_000_000);
+		val recent = write("BIL/recent.json", 600);
+		recent.setLastModified(2_000_000);
+
+		val index = new LocalCacheIndex(dir, 1000);
+
+		Assertions.assertEquals(600, index.getTotalBytes());
+		Assertions.assertFalse(old.exists());
+		Assertions.assertTrue(recent.exists());
+	}
+}
@@ -0,0 +1,185 @@
+package us.poliscore;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.val;
+import us.poliscore.model.Persistable;
+import us.poliscore.service.storage.MemoryObjectService;
+
+public class MemoryObjectServiceTest {
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Item implements Persistable {
+		public static final String ID_CLASS_PREFIX = "TST";
+
+		private String id;
+
+		private String storageBucket;
+
+		private String text;
+	}
+
+	@NoArgsConstructor
+	public static class OtherItem extends Item {
+		public OtherItem(String id, String storageBucket, String text)
+		{
+			super(id, storageBucket, text);
+		}
+	}
+
+	/**
+	 * The store is static, so every test works under its own id prefix and storage buckets.
+	 */
+	private static String prefix()
+	{
+		return Item.ID_CLASS_PREFIX + "/" + UUID.randomUUID() + "/";
+	}
+
+	private static List<String> ids(List<? extends Persistable> objs)
+	{
+		return objs.stream().map(Persistable::getId).sorted().toList();
+	}
+
+	@Test
+	public void testQueriesOnlyTouchTheirBucket()
+	{
+		val mem = new MemoryObjectService();
+		val p = prefix();
+
+		mem.put(new Item(p + "1", p + "a", "one"));
+		mem.put(new Item(p + "2", p + "a", "two"));
+		mem.put(new OtherItem(p + "3", p + "a", "three"));
+		mem.put(new Item(p + "4", p + "b", "four"));
+
+		Assertions.assertEquals(List.of(p + "1", p + "2", p + "3"), ids(mem.query(Item.class, p + "a")));
+		Assertions.assertEquals(List.of(p + "4"), ids(mem.query(Item.class, p + "b")));
+		Assertions.assertEquals(List.of(p + "1", p + "2", p + "3", p + "4"), ids(mem.queryAll(Item.class).stream().filter(i -> i.getId().startsWith(p)).toList()));
+		Assertions.assertEquals(List.of(p + "3"), ids(mem.queryAll(OtherItem.class).stream().filter(i -> i.getId().startsWith(p)).toList()));
+		Assertions.assertTrue(mem.query(Item.class, p + "c").isEmpty());
+	}
+
+	@Test
+	public void testPutMovesBetweenBuckets()
+	{
+		val mem = new MemoryObjectService();
+		val p = prefix();
+
+		mem.put(new Item(p + "1", p + "a", "one"));
+		mem.put(new Item(p + "1", p + "b", "moved"));
+
+		Assertions.assertTrue(mem.query(Item.class, p + "a").isEmpty());
+		Assertions.assertEquals("moved", mem.query(Item.class, p + "b").get(0).getText());
+		Assertions.assertEquals("moved", mem.get(p + "1", Item.class).orElseThrow().getText());
+
+		// And between classes
+		mem.put(new OtherItem(p + "1", p + "b", "other"));
+		Assertions.assertEquals(1, mem.query(Item.class, p + "b").size());
+		Assertions.assertTrue(mem.queryAll(OtherItem.class).stream().anyMatch(i -> i.getId().equals(p + "1")));
+	}
+
+	@Test
+	public void testObjectsWithoutABucket()
+	{
+		val mem = new MemoryObjectService();
+		val p = prefix();
+
+		mem.put(new Item(p + "1", null, "one"));
+
+		Assertions.assertTrue(mem.exists(p + "1", Item.class));
+		Assertions.assertTrue(mem.query(Item.class, null).stream().anyMatch(i -> i.getId().equals(p + "1")));
+	}
+
+	@Test
+	public void testPrefixScansAreInIdOrder()
+	{
+		val mem = new MemoryObjectService();
+		val p = prefix();
+
+		for (val id : List.of("hr/2", "s/1", "hr/10", "hr/1", "hres/1")) {
+			mem.put(new Item(p + id, p, id));
+		}
+
+		// Ids sort as strings, and a prefix ending in "/" doesn't run into its siblings
+		Assertions.assertEquals(List.of("hr/1", "hr/10", "hr/2"), mem.scanPrefix(p + "hr/").map(o -> ((Item) o).getText()).toList());
+		Assertions.assertEquals(List.of("hr/1", "hr/10", "hr/2", "hres/1"), mem.scanPrefix(p + "hr", Item.class).map(Item::getText).toList());
+		Assertions.assertEquals(3, mem.count(p + "hr/"));
+		Assertions.assertEquals(0, mem.count(p + "x/"));
+	}
+
+	@Test
+	public void testRangeScan()
+	{
+		val mem = new MemoryObjectService();
+		val p = prefix();
+
+		for (int i = 0; i < 10; ++i) {
+			mem.put(new Item(p + i, p, String.valueOf(i)));
+		}
+
+		Assertions.assertEquals(List.of("3", "4", "5"), mem.rangeScan(p + "3", p + "6").map(o -> ((Item) o).getText()).toList());
+		Assertions.assertTrue(mem.rangeScan(p + "6", p + "6").toList().isEmpty());
+	}
+
+	@Test
+	public void testScansSeeLaterPuts()
+	{
+		val mem = new MemoryObjectService();
+		val p = prefix();
+
+		mem.put(new Item(p + "1", p, "one"));
+		val scan = mem.scanPrefix(p);
+		mem.put(new Item(p + "2", p, "two"));
+
+		// Streams are evaluated lazily over a live view of the store
+		Assertions.assertEquals(2, scan.count());
+	}
+
+	@Test
+	public void testSpillsLeastRecentlyUsedAndFaultsBackIn(@TempDir File dir)
+	{
+		val maxWeight = MemoryObjectService.MAX_WEIGHT;
+		val spillDir = MemoryObjectService.SPILL_DIR;
+		MemoryObjectService.MAX_WEIGHT = 500;
+		MemoryObjectService.SPILL_DIR = dir;
+		MemoryObjectService.WEIGHERS.put(Item.class, o -> 100);
+
+		try {
+			val mem = new MemoryObjectService();
+			val p = prefix();
+
+			// Five fit, and every put over that spills the two least recently used, leaving 6 through 9 on the heap
+			for (int i = 0; i < 10; ++i) {
+				mem.put(new Item(p + i, p, String.valueOf(i)));
+			}
+			Assertions.assertTrue(MemoryObjectService.getClassWeights().get(Item.class) <= 500);
+
+			// Faulted back in by get, and kept
+			val zero = mem.get(p + "0", Item.class).orElseThrow();
+			Assertions.assertEquals("0", zero.getText());
+			Assertions.assertSame(zero, mem.get(p + "0", Item.class).orElseThrow());
+
+			// Queries and scans see spilled objects as fresh copies, without faulting them in
+			Assertions.assertEquals(List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), mem.query(Item.class, p).stream().map(Item::getText).sorted().toList());
+			val three = mem.scanPrefix(p + "3", Item.class).findFirst().orElseThrow();
+			Assertions.assertEquals("3", three.getText());
+			Assertions.assertNotSame(three, mem.scanPrefix(p + "3", Item.class).findFirst().orElseThrow());
+
+			Assertions.assertTrue(MemoryObjectService.getClassWeights().get(Item.class) <= 500);
+		} finally {
+			MemoryObjectService.WEIGHERS.remove(Item.class);
+			MemoryObjectService.MAX_WEIGHT = maxWeight;
+			MemoryObjectService.SPILL_DIR = spillDir;
+		}
+	}
+}
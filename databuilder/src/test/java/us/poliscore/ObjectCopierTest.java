@@ -0,0 +1,141 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.model.LegislativeChamber;
+import us.poliscore.model.Party;
+import us.poliscore.model.TrackedIssue;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislativeTerm;
+import us.poliscore.model.legislator.Legislator.LegislatorLegislativeTermSortedSet;
+import us.poliscore.model.legislator.Legislator.LegislatorName;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.service.storage.ObjectCopier;
+
+public class ObjectCopierTest {
+
+	public static class Node {
+		String name;
+
+		Node next;
+	}
+
+	public static class Holder {
+		Optional<String> value = Optional.of("held");
+	}
+
+	private static Legislator legislator()
+	{
+		val leg = new Legislator();
+		leg.setName(new LegislatorName("Jane", "Doe", "Jane Doe"));
+		leg.setSession(118);
+		leg.setBioguideId("D000001");
+		leg.setBirthday(LocalDate.of(1970, 1, 1));
+		leg.getImpactMap().put(TrackedIssue.Education, 12L);
+
+		val terms = new LegislatorLegislativeTermSortedSet();
+		terms.add(new LegislativeTerm(LocalDate.of(2021, 1, 3), LocalDate.of(2023, 1, 3), "CO", 1, Party.DEMOCRAT, LegislativeChamber.HOUSE));
+		terms.add(new LegislativeTerm(LocalDate.of(2019, 1, 3), LocalDate.of(2021, 1, 3), "CO", 1, Party.DEMOCRAT, LegislativeChamber.HOUSE));
+		leg.setTerms(terms);
+
+		for (int i = 0; i < 10; ++i) {
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId(leg.getId());
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setBillName("A bill to do thing " + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i));
+			leg.addBillInteraction(interact);
+		}
+
+		return leg;
+	}
+
+	@Test
+	public void testDeepCopy()
+	{
+		val leg = legislator();
+		val copy = ObjectCopier.copy(leg);
+
+		Assertions.assertEquals(leg, copy);
+		Assertions.assertNotSame(leg, copy);
+		Assertions.assertNotSame(leg.getName(), copy.getName());
+		Assertions.assertNotSame(leg.getInteractions(), copy.getInteractions());
+		Assertions.assertNotSame(leg.getInteractions().get(0), copy.getInteractions().get(0));
+		Assertions.assertSame(LegislatorLegislativeTermSortedSet.class, copy.getTerms().getClass());
+
+		// Changing the copy leaves the original alone
+		copy.getInteractions().clear();
+		copy.getName().setFirst("John");
+		Assertions.assertEquals(10, leg.getInteractions().size());
+		Assertions.assertEquals("Jane", leg.getName().getFirst());
+	}
+
+	@Test
+	public void testCycles()
+	{
+		val a = new Node();
+		a.name = "a";
+		a.next = new Node();
+		a.next.name = "b";
+		a.next.next = a;
+
+		val copy = ObjectCopier.copy(a);
+
+		Assertions.assertNotSame(a, copy);
+		Assertions.assertNotSame(a.next, copy.next);
+		Assertions.assertEquals("b", copy.next.name);
+		Assertions.assertSame(copy, copy.next.next);
+	}
+
+	@Test
+	public void testTreeSetKeepsItsComparator()
+	{
+		val set = new TreeSet<String>(Comparator.reverseOrder());
+		set.add("a");
+		set.add("c");
+		set.add("b");
+
+		val copy = ObjectCopier.copy(set);
+		copy.add("d");
+
+		Assertions.assertSame(set.comparator(), copy.comparator());
+		Assertions.assertEquals("d", copy.first());
+		Assertions.assertEquals(3, set.size());
+	}
+
+	@Test
+	public void testEnumMap()
+	{
+		val map = new EnumMap<TrackedIssue, Integer>(TrackedIssue.class);
+		map.put(TrackedIssue.Education, 1);
+		map.put(TrackedIssue.Transportation, 2);
+
+		val copy = ObjectCopier.copy(map);
+
+		Assertions.assertSame(EnumMap.class, copy.getClass());
+		Assertions.assertNotSame(map, copy);
+		Assertions.assertEquals(map, copy);
+	}
+
+	@Test
+	public void testFallback()
+	{
+		val holder = new Holder();
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ObjectCopier.copy(holder));
+
+		// Asked again, since the class goes straight to the fallback once it's needed it
+		for (int i = 0; i < 2; ++i) {
+			val fallback = new Holder();
+			Assertions.assertSame(fallback, ObjectCopier.copy(holder, h -> fallback));
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package us.poliscore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import us.poliscore.model.IssueStats;
+import us.poliscore.model.TrackedIssue;
+import us.poliscore.model.VoteStatus;
+import us.poliscore.model.dynamodb.PackedLegislatorBillInteractionListConverter;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillCosponsor;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillVote;
+
+public class PackedLegislatorBillInteractionListConverterTest {
+
+	private static LegislatorBillInteractionList interactions()
+	{
+		val list = new LegislatorBillInteractionList();
+
+		val vote = new LegislatorBillVote();
+		vote.setVoteStatus(VoteStatus.NAY);
+		list.add(vote);
+		list.add(new LegislatorBillSponsor());
+		list.add(new LegislatorBillCosponsor());
+
+		for (int i = 0; i < list.size(); ++i) {
+			val interact = list.get(i);
+			interact.setLegId("LEG/us/congress/118/A000001");
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setBillName("A bill to do thing " + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i));
+			interact.setStatusProgress(0.5f);
+			interact.setCosponsorPercent(0.25f);
+		}
+
+		// Every issue, so the bitmask uses as many bits as there are issues
+		val stats = new IssueStats();
+		for (val issue : TrackedIssue.values()) {
+			stats.setStat(issue, issue.ordinal() - 5);
+		}
+		list.get(0).setIssueStats(stats);
+		list.get(0).setShortExplain("x".repeat(70000) + " \u00e9\u4e2d\ud83d\ude00");
+
+		return list;
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		val converter = new PackedLegislatorBillInteractionListConverter();
+		val list = interactions();
+
+		val value = converter.transformFrom(list);
+		Assertions.assertEquals(PackedLegislatorBillInteractionListConverter.FORMAT_HEADER, value.b().asByteArray()[0]);
+
+		val decoded = converter.transformTo(value);
+
+		Assertions.assertEquals(list, decoded);
+		Assertions.assertEquals(VoteStatus.NAY, ((LegislatorBillVote) decoded.get(0)).getVoteStatus());
+		Assertions.assertEquals(list.get(0).getShortExplain(), decoded.get(0).getShortExplain());
+		Assertions.assertEquals(list.get(0).getIssueStats().getStats(), decoded.get(0).getIssueStats().getStats());
+		Assertions.assertNull(decoded.get(1).getIssueStats());
+		Assertions.assertEquals(0.25f, decoded.get(2).getCosponsorPercent());
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws Exception
+	{
+		int v = (value << 1) ^ (value >> 31);
+
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+
+		out.writeByte(v);
+	}
+
+	/**
+	 * A single sponsorship with Education and Housing stats, as the first version of the format wrote it.
+	 */
+	@SneakyThrows
+	private static AttributeValue v1Payload()
+	{
+		val packed = new ByteArrayOutputStream();
+		val out = new DataOutputStream(packed);
+
+		writeVarInt(out, 3);
+		out.writeUTF("LEG/us/congress/118/A000001");
+		out.writeUTF("BIL/us/congress/118/hr/1");
+		out.writeUTF("A bill");
+
+		writeVarInt(out, 2);
+		out.writeUTF(TrackedIssue.Education.name());
+		out.writeUTF(TrackedIssue.Housing.name());
+
+		writeVarInt(out, 1);
+		out.writeByte(1);
+		writeVarInt(out, 1);
+		writeVarInt(out, 2);
+		writeVarInt(out, 3);
+		writeVarInt(out, 0);
+		out.writeInt((int) LocalDate.of(2023, 1, 1).toEpochDay());
+		out.writeFloat(0.5f);
+		out.writeFloat(0f);
+		writeVarInt(out, 0b11);
+		writeVarInt(out, 40);
+		writeVarInt(out, -12);
+		out.flush();
+
+		val baos = new ByteArrayOutputStream();
+		baos.write(PackedLegislatorBillInteractionListConverter.FORMAT_HEADER_V1);
+		try (val zos = new GZIPOutputStream(baos)) {
+			packed.writeTo(zos);
+		}
+
+		return AttributeValue.builder().b(SdkBytes.fromByteArray(baos.toByteArray())).build();
+	}
+
+	@Test
+	public void testReadsFirstVersion()
+	{
+		val decoded = new PackedLegislatorBillInteractionListConverter().transformTo(v1Payload());
+
+		Assertions.assertEquals(1, decoded.size());
+
+		val interact = decoded.get(0);
+		Assertions.assertTrue(interact instanceof LegislatorBillSponsor);
+		Assertions.assertEquals("BIL/us/congress/118/hr/1", interact.getBillId());
+		Assertions.assertEquals("A bill", interact.getBillName());
+		Assertions.assertNull(interact.getShortExplain());
+		Assertions.assertEquals(LocalDate.of(2023, 1, 1), interact.getDate());
+		Assertions.assertEquals(40, interact.getIssueStats().getStat(TrackedIssue.Education));
+		Assertions.assertEquals(-12, interact.getIssueStats().getStat(TrackedIssue.Housing));
+		Assertions.assertFalse(interact.getIssueStats().hasStat(TrackedIssue.Energy));
+	}
+}
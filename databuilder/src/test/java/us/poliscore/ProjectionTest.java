@@ -0,0 +1,77 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.FakeDynamoDb.Note;
+import us.poliscore.model.LegislativeChamber;
+import us.poliscore.model.Party;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislativeTerm;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.Legislator.LegislatorLegislativeTermSortedSet;
+import us.poliscore.model.legislator.Legislator.LegislatorName;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.service.storage.DynamoDbPersistenceService.DdbPage;
+
+public class ProjectionTest {
+
+	private static Legislator legislator()
+	{
+		val leg = new Legislator();
+		leg.setName(new LegislatorName("Jane", "Doe", "Jane Doe"));
+		leg.setSession(118);
+		leg.setBioguideId("D000001");
+		leg.setBirthday(LocalDate.of(1970, 1, 1));
+
+		val terms = new LegislatorLegislativeTermSortedSet();
+		terms.add(new LegislativeTerm(LocalDate.of(2023, 1, 3), LocalDate.of(2025, 1, 3), "CO", 1, Party.DEMOCRAT, LegislativeChamber.HOUSE));
+		leg.setTerms(terms);
+
+		val preview = new LegislatorBillInteractionList();
+		val interact = new LegislatorBillSponsor();
+		interact.setLegId(leg.getId());
+		interact.setBillId("BIL/us/congress/118/hr/1");
+		interact.setDate(LocalDate.of(2023, 1, 1));
+		preview.add(interact);
+		leg.setInteractionsPreview(preview);
+
+		return leg;
+	}
+
+	@Test
+	public void testProjectedReadLeavesTheRestOut()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = fake.persistence();
+		val leg = legislator();
+		ddb.put(leg);
+
+		// "name" is a reserved word, which only works through the placeholder names
+		val listed = ddb.get(leg.getId(), Legislator.class, DdbPage.HEAD, Legislator.LIST_PROJECTION).orElseThrow();
+
+		Assertions.assertEquals(leg.getName(), listed.getName());
+		Assertions.assertEquals(leg.getTerms(), listed.getTerms());
+		Assertions.assertEquals(leg.getBirthday(), listed.getBirthday());
+		Assertions.assertNull(listed.getInteractionsPreview());
+
+		val full = ddb.get(leg.getId(), Legislator.class, DdbPage.HEAD).orElseThrow();
+		Assertions.assertEquals(1, full.getInteractionsPreview().size());
+	}
+
+	@Test
+	public void testProjectionOfOneAttribute()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = fake.persistence();
+		ddb.put(new Note("NOT/1", "a"));
+
+		Assertions.assertNull(ddb.get("NOT/1", Note.class, DdbPage.HEAD, List.of("id")).orElseThrow().getText());
+		Assertions.assertEquals("a", ddb.get("NOT/1", Note.class, DdbPage.HEAD, List.of("text")).orElseThrow().getText());
+		Assertions.assertTrue(ddb.get("NOT/2", Note.class, DdbPage.HEAD, List.of("text")).isEmpty());
+	}
+}
@@ -0,0 +1,66 @@
+package us.poliscore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.FakeDynamoDb.Note;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class PutAllTest {
+
+	private static List<Note> notes(int count, String text)
+	{
+		val notes = new ArrayList<Note>();
+
+		for (int i = 0; i < count; ++i) {
+			notes.add(new Note(Note.ID_CLASS_PREFIX + "/" + i, text));
+		}
+
+		return notes;
+	}
+
+	@Test
+	public void testWritesInBatches()
+	{
+		val fake = new FakeDynamoDb();
+
+		fake.persistence().putAll(notes(60, "a"));
+
+		Assertions.assertEquals(3, fake.batchWrites.get());
+		Assertions.assertEquals(60, fake.items.size());
+		Assertions.assertEquals(60, fake.puts.size());
+	}
+
+	@Test
+	public void testLastWriteOfAKeyWins()
+	{
+		val fake = new FakeDynamoDb();
+
+		// BatchWriteItem rejects a request with the same key twice
+		val notes = notes(3, "a");
+		notes.add(new Note(Note.ID_CLASS_PREFIX + "/1", "b"));
+		fake.persistence().putAll(notes);
+
+		Assertions.assertEquals(1, fake.batchWrites.get());
+		Assertions.assertEquals(3, fake.puts.size());
+		Assertions.assertEquals("b", fake.items.get(Note.ID_CLASS_PREFIX + "/1~" + DynamoDbPersistenceService.HEAD_PAGE).get("text").s());
+	}
+
+	@Test
+	public void testUnprocessedItemsAreRetried()
+	{
+		val fake = new FakeDynamoDb();
+
+		fake.unprocessedOnce.add(Note.ID_CLASS_PREFIX + "/3~" + DynamoDbPersistenceService.HEAD_PAGE);
+		fake.unprocessedOnce.add(Note.ID_CLASS_PREFIX + "/30~" + DynamoDbPersistenceService.HEAD_PAGE);
+		fake.persistence().putAll(notes(40, "a"));
+
+		Assertions.assertEquals(4, fake.batchWrites.get());
+		Assertions.assertEquals(40, fake.items.size());
+		Assertions.assertTrue(fake.unprocessedOnce.isEmpty());
+	}
+}
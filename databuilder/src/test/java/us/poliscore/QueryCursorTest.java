@@ -0,0 +1,112 @@
+package us.poliscore;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.model.LegislativeChamber;
+import us.poliscore.model.LegislativeNamespace;
+import us.poliscore.model.Party;
+import us.poliscore.model.Persistable;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislativeTerm;
+import us.poliscore.model.legislator.Legislator.LegislatorLegislativeTermSortedSet;
+import us.poliscore.model.legislator.Legislator.LegislatorName;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class QueryCursorTest {
+
+	private static final String BUCKET = "LEG/us/congress/118";
+
+	private static DynamoDbPersistenceService populate(FakeDynamoDb fake, int count)
+	{
+		val ddb = fake.persistence();
+		val legs = new ArrayList<Legislator>();
+
+		for (int i = 0; i < count; ++i) {
+			val leg = new Legislator();
+			leg.setName(new LegislatorName("First" + i, "Last" + i, "First" + i + " Last" + i));
+			leg.setSession(118);
+			leg.setBioguideId(String.format("A%06d", i));
+			leg.setBirthday(LocalDate.of(1950, 1, 1).plusDays(i));
+
+			val terms = new LegislatorLegislativeTermSortedSet();
+			terms.add(new LegislativeTerm(LocalDate.of(2023, 1, 3), LocalDate.of(2025, 1, 3), "CO", 1, Party.DEMOCRAT, LegislativeChamber.HOUSE));
+			leg.setTerms(terms);
+
+			legs.add(leg);
+		}
+
+		ddb.putAll(legs);
+		return ddb;
+	}
+
+	private static List<String> expected(int count)
+	{
+		val ids = new ArrayList<String>();
+
+		for (int i = 0; i < count; ++i) {
+			ids.add(Legislator.generateId(LegislativeNamespace.US_CONGRESS, 118, String.format("A%06d", i)));
+		}
+
+		return ids;
+	}
+
+	@Test
+	public void testCursorSurvivesTrimmedPages()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = populate(fake, 12);
+
+		// Pages come back three items at a time, as if each one hit 1 MB, so a page of five is trimmed out of the second
+		fake.queryPageItems = 3;
+
+		val ids = new ArrayList<String>();
+		val sizes = new ArrayList<Integer>();
+		String cursor = null;
+
+		do {
+			val page = ddb.query(Legislator.class, 5, Persistable.OBJECT_BY_DATE_INDEX, true, cursor, null, BUCKET, null);
+
+			page.forEach(l -> ids.add(l.getId()));
+			sizes.add(page.size());
+			cursor = page.getLastEvaluatedKey();
+		} while (cursor != null);
+
+		Assertions.assertEquals(expected(12), ids);
+		Assertions.assertEquals(List.of(5, 5, 2), sizes);
+	}
+
+	@Test
+	public void testDescendingPages()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = populate(fake, 7);
+
+		val first = ddb.query(Legislator.class, 4, Persistable.OBJECT_BY_DATE_INDEX, false, null, null, BUCKET, null);
+		val second = ddb.query(Legislator.class, 4, Persistable.OBJECT_BY_DATE_INDEX, false, first.getLastEvaluatedKey(), null, BUCKET, null);
+
+		val ids = new ArrayList<String>();
+		first.forEach(l -> ids.add(l.getId()));
+		second.forEach(l -> ids.add(l.getId()));
+
+		Assertions.assertEquals(expected(7).reversed(), ids);
+		Assertions.assertNull(second.getLastEvaluatedKey());
+	}
+
+	@Test
+	public void testStreamOnlyReadsWhatIsConsumed()
+	{
+		val fake = new FakeDynamoDb();
+		val ddb = populate(fake, 20);
+
+		val ids = ddb.stream(Legislator.class, 5, Persistable.OBJECT_BY_DATE_INDEX, true, null, BUCKET, null).limit(7).map(Legislator::getId).toList();
+
+		Assertions.assertEquals(expected(7), ids);
+		Assertions.assertEquals(2, fake.queries.get());
+	}
+}
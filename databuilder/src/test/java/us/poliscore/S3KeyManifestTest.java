@@ -0,0 +1,151 @@
+package us.poliscore;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lombok.val;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import us.poliscore.service.storage.S3KeyManifest;
+
+public class S3KeyManifestTest {
+
+	private static final String PREFIX = "BIL/";
+
+	@TempDir
+	File dir;
+
+	/**
+	 * The bucket, listed in key order a page at a time like S3 does.
+	 */
+	private final TreeMap<String, String> bucket = new TreeMap<String, String>();
+
+	private final AtomicInteger listed = new AtomicInteger();
+
+	private S3Client client()
+	{
+		return new S3Client() {
+			@Override
+			public String serviceName() { return SERVICE_NAME; }
+
+			@Override
+			public void close() { }
+
+			@Override
+			public S3ServiceClientConfiguration serviceClientConfiguration() { throw new UnsupportedOperationException(); }
+
+			@Override
+			public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request)
+			{
+				val after = request.continuationToken() != null ? request.continuationToken() : request.startAfter();
+				val keys = (after == null ? bucket : bucket.tailMap(after, false)).keySet().stream().filter(k -> k.startsWith(request.prefix())).toList();
+
+				val contents = new ArrayList<S3Object>();
+				for (val key : keys.subList(0, Math.min(keys.size(), request.maxKeys()))) {
+					contents.add(S3Object.builder().key(key).eTag(bucket.get(key)).size(1L).lastModified(Instant.ofEpochMilli(1000)).build());
+				}
+				listed.addAndGet(contents.size());
+
+				val resp = ListObjectsV2Response.builder().contents(contents);
+				if (contents.size() < keys.size()) resp.nextContinuationToken(contents.get(contents.size() - 1).key());
+
+				return resp.build();
+			}
+		};
+	}
+
+	private void populate(int count)
+	{
+		for (int i = 0; i < count; ++i) {
+			bucket.put(String.format(PREFIX + "k%02d", i), "etag" + i);
+		}
+	}
+
+	@Test
+	public void testBuiltFromAFullListingAndReopened()
+	{
+		populate(10);
+
+		S3KeyManifest.open(dir, PREFIX).reconcile(client(), "bucket", 3);
+		Assertions.assertEquals(10, listed.get(), "A new manifest lists everything, however few keys a run checks");
+
+		val reopened = S3KeyManifest.open(dir, PREFIX);
+		Assertions.assertEquals(10, reopened.size());
+		Assertions.assertEquals("etag3", reopened.get(PREFIX + "k03").getETag());
+		Assertions.assertEquals(List.of(PREFIX), S3KeyManifest.prefixes(dir));
+	}
+
+	@Test
+	public void testJournalSurvivesATornWrite() throws Exception
+	{
+		populate(3);
+
+		val manifest = S3KeyManifest.open(dir, PREFIX);
+		manifest.reconcile(client(), "bucket", 100);
+		manifest.put(PREFIX + "new1", "e1", 10, 2000);
+		manifest.remove(PREFIX + "k00");
+		manifest.put(PREFIX + "new2", "e2", 10, 2000);
+
+		// Cut the last record short, as a crash mid-append would
+		try (val raf = new RandomAccessFile(dir.listFiles()[0], "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		val reopened = S3KeyManifest.open(dir, PREFIX);
+		Assertions.assertTrue(reopened.contains(PREFIX + "new1"));
+		Assertions.assertFalse(reopened.contains(PREFIX + "k00"));
+		Assertions.assertFalse(reopened.contains(PREFIX + "new2"));
+		Assertions.assertEquals(3, reopened.size());
+	}
+
+	@Test
+	public void testReconcileChecksASliceAndWrapsAround()
+	{
+		populate(10);
+
+		val manifest = S3KeyManifest.open(dir, PREFIX);
+		manifest.reconcile(client(), "bucket", 100);
+
+		// Changes made by someone else
+		bucket.remove(PREFIX + "k01");
+		bucket.remove(PREFIX + "k07");
+		bucket.put(PREFIX + "k05a", "etag5a");
+
+		// k00, k02, k03 and k04
+		manifest.reconcile(client(), "bucket", 4);
+		Assertions.assertFalse(manifest.contains(PREFIX + "k01"));
+		Assertions.assertTrue(manifest.contains(PREFIX + "k07"));
+		Assertions.assertFalse(manifest.contains(PREFIX + "k05a"));
+
+		// k05, k05a, k06 and k08
+		manifest.reconcile(client(), "bucket", 4);
+		Assertions.assertFalse(manifest.contains(PREFIX + "k07"));
+		Assertions.assertTrue(manifest.contains(PREFIX + "k05a"));
+
+		// k09, then back to the start
+		listed.set(0);
+		manifest.reconcile(client(), "bucket", 4);
+		manifest.reconcile(client(), "bucket", 4);
+		Assertions.assertEquals(5, listed.get());
+
+		// The cursor is kept across runs
+		val reopened = S3KeyManifest.open(dir, PREFIX);
+		Assertions.assertEquals(9, reopened.size());
+		listed.set(0);
+		reopened.reconcile(client(), "bucket", 4);
+		Assertions.assertEquals(4, listed.get());
+		Assertions.assertTrue(reopened.contains(PREFIX + "k09"));
+	}
+}
@@ -0,0 +1,105 @@
+package us.poliscore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+import us.poliscore.service.storage.SingleFlight;
+
+public class SingleFlightTest {
+	
+	/**
+	 * Waits until the other caller has joined the load, which it counts before it starts waiting.
+	 */
+	private static void awaitCoalesced(SingleFlight flight) throws InterruptedException
+	{
+		while (flight.getCoalesced().get() == 0) {
+			Thread.sleep(1);
+		}
+	}
+	
+	@Test
+	public void testConcurrentCallersShareOneLoad() throws Exception
+	{
+		val flight = new SingleFlight();
+		val release = new CountDownLatch(1);
+		val loaded = new AtomicReference<List<String>>();
+		
+		val owner = CompletableFuture.supplyAsync(() -> flight.<List<String>>load("a", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			
+			loaded.set(new ArrayList<String>(List.of("x")));
+			return loaded.get();
+		}, l -> new ArrayList<String>(l)));
+		
+		while (flight.getLoads().get() == 0) {
+			Thread.sleep(1);
+		}
+		
+		val joiner = CompletableFuture.supplyAsync(() -> flight.<List<String>>load("a", () -> { throw new AssertionError("Should have joined the load"); }, l -> new ArrayList<String>(l)));
+		
+		awaitCoalesced(flight);
+		release.countDown();
+		
+		Assertions.assertSame(loaded.get(), owner.get());
+		Assertions.assertEquals(List.of("x"), joiner.get());
+		
+		// Callers which joined the load get their own copy, never the loader's object
+		Assertions.assertNotSame(loaded.get(), joiner.get());
+		
+		Assertions.assertEquals(1, flight.getLoads().get());
+		Assertions.assertEquals(1, flight.getCoalesced().get());
+	}
+	
+	@Test
+	public void testExceptionReachesEveryCaller() throws Exception
+	{
+		val flight = new SingleFlight();
+		val release = new CountDownLatch(1);
+		
+		val owner = CompletableFuture.supplyAsync(() -> flight.<String>load("a", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			
+			throw new IllegalStateException("boom");
+		}));
+		
+		while (flight.getLoads().get() == 0) {
+			Thread.sleep(1);
+		}
+		
+		val joiner = CompletableFuture.supplyAsync(() -> flight.load("a", () -> "unused"));
+		
+		awaitCoalesced(flight);
+		release.countDown();
+		
+		Assertions.assertInstanceOf(IllegalStateException.class, Assertions.assertThrows(ExecutionException.class, owner::get).getCause());
+		Assertions.assertInstanceOf(IllegalStateException.class, Assertions.assertThrows(ExecutionException.class, joiner::get).getCause());
+		
+		// Nothing is remembered, so the next caller loads again
+		Assertions.assertEquals("ok", flight.load("a", () -> "ok"));
+		Assertions.assertEquals(2, flight.getLoads().get());
+	}
+	
+	@Test
+	public void testLoaderMayLoadItsOwnKey()
+	{
+		val flight = new SingleFlight();
+		
+		Assertions.assertEquals("inner", flight.load("a", () -> flight.load("a", () -> "inner")));
+	}
+}
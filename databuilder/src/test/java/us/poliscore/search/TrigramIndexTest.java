@@ -0,0 +1,133 @@
+package us.poliscore.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+public class TrigramIndexTest {
+
+	private static final String[] WORDS = { "Act", "Health", "Care", "Veterans", "Tax", "Relief", "Energy", "Security", "Border", "Water",
+			"Infrastructure", "Education", "Small", "Business", "Caf\u00e9", "Rural", "Broadband", "Housing", "Safety", "Reform" };
+
+	private static List<List<String>> entries(int count)
+	{
+		val random = new Random(42);
+		val entries = new ArrayList<List<String>>();
+
+		for (int i = 0; i < count; ++i) {
+			val name = new StringBuilder();
+			val words = 1 + random.nextInt(5);
+
+			for (int w = 0; w < words; ++w) {
+				if (w > 0) name.append(' ');
+				name.append(WORDS[random.nextInt(WORDS.length)]);
+			}
+
+			entries.add(List.of("BIL/us/congress/118/" + (i % 2 == 0 ? "hr" : "s") + "/" + i, name.toString()));
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Every match, by distance and then ordinal, without the index.
+	 */
+	private static int[] scan(List<List<String>> entries, String text, int limit)
+	{
+		val q = TrigramIndex.normalize(text);
+		if (q.isEmpty()) return new int[0];
+
+		return IntStream.range(0, entries.size())
+				.filter(i -> TrigramIndex.normalize(entries.get(i).get(1)).contains(q) || TrigramIndex.normalize(entries.get(i).get(0)).contains(q))
+				.boxed()
+				.sorted(Comparator.<Integer>comparingInt(i -> TrigramIndex.distance(entries.get(i).get(1), text, Integer.MAX_VALUE)).thenComparing(i -> i))
+				.limit(limit)
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+
+	@SneakyThrows
+	private static TrigramIndex roundTrip(TrigramIndex index)
+	{
+		val baos = new ByteArrayOutputStream();
+		index.write(baos);
+		return TrigramIndex.read(new ByteArrayInputStream(baos.toByteArray()));
+	}
+
+	@Test
+	public void testQueriesMatchAFullScan()
+	{
+		val entries = entries(2000);
+		val built = TrigramIndex.build(entries);
+		val read = roundTrip(built);
+
+		val queries = new ArrayList<String>(List.of("a", "ca", "CAF\u00c9", "tax relief", "hr/12", "s/1999", "congress", "care act", "zzq", "  Water  "));
+		val random = new Random(7);
+		for (int i = 0; i < 50; ++i) {
+			val name = entries.get(random.nextInt(entries.size())).get(1);
+			val start = random.nextInt(name.length());
+			queries.add(name.substring(start, Math.min(name.length(), start + 1 + random.nextInt(10))));
+		}
+
+		for (val q : queries) {
+			for (val limit : new int[] { 1, 10, 5000 }) {
+				Assertions.assertArrayEquals(scan(entries, q, limit), built.query(q, limit), q + " limit " + limit);
+				Assertions.assertArrayEquals(scan(entries, q, limit), read.query(q, limit), q + " limit " + limit);
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTripKeepsEntries()
+	{
+		val entries = entries(300);
+		val read = roundTrip(TrigramIndex.build(entries));
+
+		Assertions.assertEquals(300, read.size());
+		for (int i = 0; i < entries.size(); ++i) {
+			Assertions.assertEquals(entries.get(i).get(0), read.getIds()[i]);
+			Assertions.assertEquals(entries.get(i).get(1), read.getNames()[i]);
+		}
+
+		val empty = roundTrip(TrigramIndex.build(List.of()));
+		Assertions.assertEquals(0, empty.size());
+		Assertions.assertEquals(0, empty.query("act", 10).length);
+	}
+
+	@Test
+	public void testExactNameRanksFirst()
+	{
+		val index = TrigramIndex.build(List.of(
+				List.of("BIL/us/congress/118/hr/1", "Clean Water Act Amendments"),
+				List.of("BIL/us/congress/118/hr/2", "Water Act"),
+				List.of("BIL/us/congress/118/hr/3", "Water Actions")));
+
+		Assertions.assertArrayEquals(new int[] { 1, 2, 0 }, index.query("water act", 10));
+		Assertions.assertArrayEquals(new int[] { 1 }, index.query("water act", 1));
+		Assertions.assertEquals(0, index.query("", 10).length);
+		Assertions.assertEquals(0, index.query("water", 0).length);
+	}
+
+	@Test
+	public void testRejectsOtherVersions() throws Exception
+	{
+		val bytes = new ByteArrayOutputStream();
+		TrigramIndex.build(entries(3)).write(bytes);
+
+		val data = bytes.toByteArray();
+		data[3] = (byte) (TrigramIndex.VERSION + 1);
+
+		Assertions.assertThrows(IOException.class, () -> TrigramIndex.read(new ByteArrayInputStream(data)));
+	}
+}
@@ -0,0 +1,173 @@
+package us.poliscore.service.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import us.poliscore.model.DataVersion;
+
+public class S3PersistenceServiceTest {
+
+	/**
+	 * Serves objects from memory after a random delay, so that downloads complete out of order, and tracks how many are held at once (from
+	 * the request until the test lets go of the object).
+	 */
+	private static class FakeS3 {
+		final Map<String, byte[]> objects = new HashMap<String, byte[]>();
+
+		final AtomicInteger held = new AtomicInteger();
+
+		final AtomicInteger maxHeld = new AtomicInteger();
+
+		S3PersistenceService service()
+		{
+			val s3 = new S3PersistenceService();
+			inject(s3, "asyncClient", client());
+			return s3;
+		}
+
+		@SneakyThrows
+		private static void inject(Object target, String field, Object value)
+		{
+			val f = target.getClass().getDeclaredField(field);
+			f.setAccessible(true);
+			f.set(target, value);
+		}
+
+		S3AsyncClient client()
+		{
+			return new S3AsyncClient() {
+				@Override
+				public String serviceName() { return SERVICE_NAME; }
+
+				@Override
+				public void close() { }
+
+				@Override
+				public S3ServiceClientConfiguration serviceClientConfiguration() { throw new UnsupportedOperationException(); }
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public <ReturnT> CompletableFuture<ReturnT> getObject(GetObjectRequest request, AsyncResponseTransformer<GetObjectResponse, ReturnT> transformer)
+				{
+					maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+
+					val delay = CompletableFuture.delayedExecutor(ThreadLocalRandom.current().nextInt(10), TimeUnit.MILLISECONDS);
+
+					return CompletableFuture.supplyAsync(() -> {
+						val body = objects.get(request.key());
+						if (body == null) throw NoSuchKeyException.builder().message(request.key()).build();
+
+						val response = GetObjectResponse.builder().contentEncoding(S3PersistenceService.CONTENT_ENCODING_GZIP).build();
+						return (ReturnT) ResponseBytes.fromByteArray(response, body);
+					}, delay);
+				}
+			};
+		}
+
+		List<String> populate(int count)
+		{
+			val keys = new ArrayList<String>();
+
+			for (int i = 0; i < count; ++i) {
+				keys.add("VER/" + i + ".json");
+				objects.put(keys.get(i), S3PersistenceService.serialize(new DataVersion(i), S3PersistenceService.CONTENT_ENCODING_GZIP));
+			}
+
+			return keys;
+		}
+	}
+
+	@Test
+	public void testGzipRoundTrip()
+	{
+		val body = S3PersistenceService.serialize(new DataVersion(42), S3PersistenceService.CONTENT_ENCODING_GZIP);
+
+		Assertions.assertEquals((byte) 0x1f, body[0]);
+		Assertions.assertEquals(42, S3PersistenceService.readValue(body, S3PersistenceService.CONTENT_ENCODING_GZIP, DataVersion.class).getVersion());
+	}
+
+	@Test
+	public void testPlainRoundTrip()
+	{
+		val body = S3PersistenceService.serialize(new DataVersion(42), null);
+
+		Assertions.assertEquals('{', body[0]);
+		Assertions.assertEquals(42, S3PersistenceService.readValue(body, null, DataVersion.class).getVersion());
+	}
+
+	@Test
+	public void testEncodingIsNeverGuessed()
+	{
+		// Objects uploaded before compression have no Content-Encoding, and are read as they are
+		val json = "{\"version\":42}".getBytes(StandardCharsets.UTF_8);
+		Assertions.assertEquals(42, S3PersistenceService.readValue(json, null, DataVersion.class).getVersion());
+
+		val gzipped = S3PersistenceService.serialize(new DataVersion(42), S3PersistenceService.CONTENT_ENCODING_GZIP);
+		Assertions.assertThrows(Exception.class, () -> S3PersistenceService.readValue(gzipped, null, DataVersion.class));
+	}
+
+	@Test
+	public void testFetchAllKeepsKeyOrder()
+	{
+		val s3 = new FakeS3();
+		val keys = s3.populate(50);
+
+		val versions = s3.service().fetchAll(keys, DataVersion.class).stream().map(DataVersion::getVersion).toList();
+
+		for (int i = 0; i < keys.size(); ++i) {
+			Assertions.assertEquals(i, versions.get(i));
+		}
+	}
+
+	@Test
+	public void testUnorderedFetchHoldsAtMostTheWindow()
+	{
+		val concurrency = S3PersistenceService.FETCH_CONCURRENCY;
+		S3PersistenceService.FETCH_CONCURRENCY = 4;
+
+		try {
+			val s3 = new FakeS3();
+			val keys = s3.populate(40);
+			val seen = new boolean[keys.size()];
+
+			s3.service().fetchAll(keys, DataVersion.class, v -> {
+				seen[(int) v.getVersion()] = true;
+				s3.held.decrementAndGet();
+			});
+
+			for (val b : seen) Assertions.assertTrue(b);
+			Assertions.assertTrue(s3.maxHeld.get() <= 4, "Held " + s3.maxHeld.get() + " objects at once");
+		} finally {
+			S3PersistenceService.FETCH_CONCURRENCY = concurrency;
+		}
+	}
+
+	@Test
+	public void testFailedFetchIsThrown()
+	{
+		val s3 = new FakeS3();
+		val keys = new ArrayList<String>(s3.populate(5));
+		keys.add(2, "VER/missing.json");
+
+		Assertions.assertThrows(NoSuchKeyException.class, () -> s3.service().fetchAll(keys, DataVersion.class));
+	}
+}
@@ -1,16 +1,13 @@
 package us.poliscore.entrypoint;
 
+import java.io.BufferedInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.similarity.LevenshteinDistance;
 import org.jboss.resteasy.reactive.RestQuery;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
@@ -26,7 +23,6 @@ import jakarta.ws.rs.core.Context;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.val;
-import us.poliscore.LegislatorBillLinker;
 import us.poliscore.LegislatorPageData;
 import us.poliscore.Page;
 import us.poliscore.PoliscoreUtil;
@@ -40,10 +36,18 @@ import us.poliscore.model.bill.BillIssueStat;
 import us.poliscore.model.legislator.Legislator;
 import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
 import us.poliscore.model.legislator.LegislatorBillInteraction;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
 import us.poliscore.model.legislator.LegislatorIssueStat;
 import us.poliscore.model.session.SessionInterpretationOld;
+import us.poliscore.search.SearchHit;
+import us.poliscore.search.TrigramIndex;
 import us.poliscore.service.IpGeolocationService;
+import us.poliscore.service.LegislatorCache;
+import us.poliscore.service.LegislatorCache.CachedLegislator;
+import us.poliscore.service.ListResponseCache;
+import us.poliscore.service.SearchService;
 import us.poliscore.service.storage.DynamoDbPersistenceService;
+import us.poliscore.service.storage.ObjectCopier;
 
 @Path("")
 @RequestScoped
@@ -61,16 +65,23 @@ public class Lambda {
     @Inject
     ObjectMapper mapper;
     
-    private static List<List<String>> cachedAllLegs;
+    @Inject
+    ListResponseCache listCache;
+    
+    @Inject
+    LegislatorCache legislators;
     
-    private static Map<String, List<Legislator>> cachedLegislators = new HashMap<String, List<Legislator>>();
+    @Inject
+    SearchService search;
     
-    private static Map<String, List<Bill>> cachedBills = new HashMap<String, List<Bill>>();
+    private static List<List<String>> cachedAllLegs;
     
     private static List<Bill> allBillsDump;
     
     private static List<List<String>> allBillsIndex;
     
+    private static TrigramIndex billsSearch;
+    
     @GET
     @Path("getSessionStats")
     public SessionInterpretationOld getSessionStats() {
@@ -87,42 +98,37 @@ public class Lambda {
     @Path("getLegislator")
     public Legislator getLegislator(@NonNull @RestQuery String id, @RestQuery("pageSize") Integer _pageSize, @RestQuery("index") String _index, @RestQuery("ascending") Boolean _ascending, @RestQuery("exclusiveStartKey") Integer _exclusiveStartKey, @RestQuery String sortKey) {
     	val index = StringUtils.isNotBlank(_index) ? _index : Persistable.OBJECT_BY_RATING_ABS_INDEX;
-    	var pageSize = _pageSize == null ? 25 : _pageSize;
+    	var pageSize = _pageSize == null ? Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE : _pageSize;
     	Boolean ascending = _ascending == null ? Boolean.FALSE : _ascending;
     	int exclusiveStartKey = (_exclusiveStartKey == null) ? -1 : _exclusiveStartKey;
     	
-    	val op = ddb.get(id, Legislator.class);
+    	val op = legislators.get(id);
+    	if (op.isEmpty()) return null;
     	
-    	if (op.isPresent()) {
-    		val leg = op.get();
-    		
-//    		if (_ascending == null && leg.getInterpretation().getRating() < 0)
-//    			ascending = Boolean.TRUE;
-    		
-    		LegislatorBillLinker.linkInterpBills(leg);
-    		
-    		var page = filterInteractions(leg, index, sortKey, pageSize, ascending, exclusiveStartKey);
-    		
-    		leg.setInteractions(page.getData().get(0));
-    	}
+    	var leg = copy(op.get().getHead(), Legislator.class);
     	
-    	return op.orElse(null);
+//    	if (_ascending == null && leg.getInterpretation().getRating() < 0)
+//    		ascending = Boolean.TRUE;
+    	
+    	var page = interactionsPage(op.get(), index, sortKey, pageSize, ascending, exclusiveStartKey);
+    	
+    	leg.setInteractions(page.getData().get(0));
+    	
+    	return leg;
     }
     
     @GET
     @Path("/getLegislatorInteractions")
     public Page<LegislatorBillInteractionList> getLegislatorInteractions(@RestQuery("id") String id, @RestQuery("pageSize") Integer _pageSize, @RestQuery("index") String _index, @RestQuery("ascending") Boolean _ascending, @RestQuery("exclusiveStartKey") Integer _exclusiveStartKey, @RestQuery String sortKey) {
     	val index = StringUtils.isNotBlank(_index) ? _index : Persistable.OBJECT_BY_RATING_ABS_INDEX;
-    	var pageSize = _pageSize == null ? 25 : _pageSize;
+    	var pageSize = _pageSize == null ? Legislator.DEFAULT_INTERACTIONS_PAGE_SIZE : _pageSize;
     	Boolean ascending = _ascending == null ? Boolean.FALSE : _ascending;
     	int exclusiveStartKey = (_exclusiveStartKey == null) ? -1 : _exclusiveStartKey;
 
-    	val op = ddb.get(id, Legislator.class);
+    	val op = legislators.get(id);
     	
     	if (op.isPresent()) {
-    		val leg = op.get();
-    		
-    		return filterInteractions(leg, index, sortKey, pageSize, ascending, exclusiveStartKey);
+    		return interactionsPage(op.get(), index, sortKey, pageSize, ascending, exclusiveStartKey);
     	}
     	
     	Page<LegislatorBillInteractionList> page = new Page<LegislatorBillInteractionList>();
@@ -132,7 +138,75 @@ public class Lambda {
     	return page;
     }
     
-    private Page<LegislatorBillInteractionList> filterInteractions(Legislator leg, String index, String sortKey, Integer pageSize, Boolean ascending, Integer exclusiveStartKey)
+    /**
+     * A copy of an object shared between requests, for one that needs modifying. Falls back to a JSON round trip for anything ObjectCopier
+     * can't copy.
+     */
+    private <T> T copy(T obj, Class<T> clazz)
+    {
+    	return ObjectCopier.copy(obj, o -> jsonCopy(o, clazz));
+    }
+    
+    @SneakyThrows
+    private <T> T jsonCopy(T obj, Class<T> clazz)
+    {
+    	return mapper.treeToValue(mapper.valueToTree(obj), clazz);
+    }
+    
+    /**
+     * Returns the requested page of the legislator's interactions, loading only as much as the request needs. Legislators with an interactions
+     * preview store their interactions in Legislator.DEFAULT_INTERACTION_ORDER, so a page in that order is a slice of the stored list, and the
+     * preview covers the first view. Any other order, or a deeper page, needs every interaction, which the LegislatorCache keeps decoded.
+     */
+    private Page<LegislatorBillInteractionList> interactionsPage(CachedLegislator leg, String index, String sortKey, Integer pageSize, Boolean ascending, Integer exclusiveStartKey)
+    {
+    	if (leg.getHead().getInteractionsPreview() == null) return filterInteractions(leg.getInteractions(), index, sortKey, pageSize, ascending, exclusiveStartKey);
+    	
+    	val start = exclusiveStartKey + 1;
+    	
+    	if (!index.equals(Persistable.OBJECT_BY_RATING_ABS_INDEX) || ascending) {
+    		val order = leg.getOrders().flatMap(o -> o.get(index, sortKey));
+    		if (order.isEmpty()) return filterInteractions(leg.getInteractions(), index, sortKey, pageSize, ascending, exclusiveStartKey);
+    		
+    		return orderedPage(leg.getInteractions(), order.get(), pageSize, ascending, exclusiveStartKey);
+    	}
+    	
+    	val slice = leg.getHead().previewSlice(start, pageSize)
+    			.orElseGet(() -> leg.getInteractions().stream().skip(start).limit(pageSize + 1).collect(Collectors.toCollection(LegislatorBillInteractionList::new)));
+    	
+    	Page<LegislatorBillInteractionList> page = new Page<LegislatorBillInteractionList>();
+    	page.setExclusiveStartKey(exclusiveStartKey);
+    	page.setHasMoreData(slice.size() > pageSize);
+    	
+    	if (slice.size() > pageSize) slice.remove(slice.size() - 1);
+    	page.setData(Arrays.asList(slice));
+    	
+    	return page;
+    }
+    
+    /**
+     * Slices a page out of the interactions through one of their precomputed orders (see LegislatorInteractionOrders).
+     */
+    private Page<LegislatorBillInteractionList> orderedPage(List<LegislatorBillInteraction> interactions, int[] order, Integer pageSize, Boolean ascending, Integer exclusiveStartKey)
+    {
+    	val interacts = new LegislatorBillInteractionList();
+    	
+    	for (int i = exclusiveStartKey + 1; i < Math.min(order.length, exclusiveStartKey + 1 + pageSize); ++i) {
+    		interacts.add(interactions.get(ascending ? order[i] : order[order.length - 1 - i]));
+    	}
+    	
+    	Page<LegislatorBillInteractionList> page = new Page<LegislatorBillInteractionList>();
+    	page.setData(Arrays.asList(interacts));
+    	page.setExclusiveStartKey(exclusiveStartKey);
+    	page.setHasMoreData((interacts.size() + 1 + exclusiveStartKey) < order.length);
+    	
+    	return page;
+    }
+    
+    /**
+     * Sorts every interaction to find the page, for legislators written before their orders were precomputed.
+     */
+    private Page<LegislatorBillInteractionList> filterInteractions(List<LegislatorBillInteraction> interactions, String index, String sortKey, Integer pageSize, Boolean ascending, Integer exclusiveStartKey)
     {
     	Page<LegislatorBillInteractionList> page = new Page<LegislatorBillInteractionList>();
     	page.setData(Arrays.asList());
@@ -141,28 +215,8 @@ public class Lambda {
     	val interacts = new LegislatorBillInteractionList();
     	page.setData(Arrays.asList(interacts));
     	
-    	var stream = leg.getInteractions().stream();
-		
-		Comparator<LegislatorBillInteraction> comparator;
-		if (index.equals(Persistable.OBJECT_BY_DATE_INDEX)) {
-			comparator = Comparator.comparing(LegislatorBillInteraction::getDate);
-		} else if (index.equals(Persistable.OBJECT_BY_RATING_INDEX)) {
-			comparator = Comparator.comparing(LegislatorBillInteraction::getRating);
-		} else if (index.equals(Persistable.OBJECT_BY_RATING_ABS_INDEX)) {
-			comparator = Comparator.comparing(LegislatorBillInteraction::getRatingAbs);
-		} else if (index.equals(Persistable.OBJECT_BY_IMPACT_INDEX)) {
-			comparator = Comparator.comparing(LegislatorBillInteraction::getImpact);
-		} else if (index.equals(Persistable.OBJECT_BY_IMPACT_ABS_INDEX)) {
-			comparator = Comparator.comparing(LegislatorBillInteraction::getImpactAbs);
-		} else if (index.equals(Persistable.OBJECT_BY_HOT_INDEX)) {
-			comparator = Comparator.comparing(LegislatorBillInteraction::getHot);
-		} else if (index.equals("TrackedIssue")) {
-			var issue = TrackedIssue.valueOf(sortKey);
-			stream = stream.filter(lbi -> lbi.getIssueStats().hasStat(issue));
-			comparator = (LegislatorBillInteraction a, LegislatorBillInteraction b) -> Integer.valueOf(a.getRating(issue)).compareTo(b.getRating(issue));
-		} else {
-			throw new UnsupportedOperationException(index);
-		}
+    	val comparator = LegislatorInteractionOrders.comparator(index, sortKey);
+    	var stream = interactions.stream().filter(LegislatorInteractionOrders.filter(index, sortKey));
 		
 		if (ascending) {
 			stream = stream.sorted(comparator);
@@ -192,26 +246,15 @@ public class Lambda {
     	Integer year = _year == null ? Integer.valueOf(PoliscoreUtil.DEPLOYMENT_YEAR) : _year;
     	String storageBucket = Legislator.ID_CLASS_PREFIX + "/" + LegislativeNamespace.US_CONGRESS.getNamespace() + "/" + CongressionalSession.fromYear(year).getNumber();
     	
-    	val cacheable = StringUtils.isBlank(startKey) && pageSize == 25 && !index.equals(Persistable.OBJECT_BY_ISSUE_IMPACT_INDEX) && !index.equals(Persistable.OBJECT_BY_ISSUE_RATING_INDEX);
-    	val cacheKey = storageBucket + "-" + index + "-" + ascending.toString() + (StringUtils.isBlank(sortKey) ? "" : "-" + sortKey);
-    	if (cacheable && cachedLegislators.containsKey(cacheKey)) return cachedLegislators.get(cacheKey).stream().map(l -> (Persistable) l).toList();
-    	
     	if (index.equals(Persistable.OBJECT_BY_ISSUE_IMPACT_INDEX) || index.equals(Persistable.OBJECT_BY_ISSUE_RATING_INDEX)) {
-    		storageBucket = LegislatorIssueStat.getIndexPrimaryKey(TrackedIssue.valueOf(sortKey));
-    		sortKey = null;
-    		val legs = ddb.query(LegislatorIssueStat.class, pageSize, index, ascending, startKey, sortKey, storageBucket);
-    		return legs.stream().map(l -> (Persistable) l).toList();
-    	}
-    	
-    	val legs = ddb.query(Legislator.class, pageSize, index, ascending, startKey, sortKey, storageBucket);
-    	
-    	legs.forEach(l -> l.setInteractions(new LegislatorBillInteractionList()));
-    	
-    	if (cacheable) {
-    		cachedLegislators.put(cacheKey, legs);
+    		val issueBucket = LegislatorIssueStat.getIndexPrimaryKey(TrackedIssue.valueOf(sortKey));
+    		
+    		return listCache.get(ListResponseCache.key(LegislatorIssueStat.class.getSimpleName(), issueBucket, index, ascending, pageSize, startKey),
+    				() -> ddb.query(LegislatorIssueStat.class, pageSize, index, ascending, startKey, null, issueBucket));
     	}
     	
-    	return legs.stream().map(l -> (Persistable) l).toList();
+    	return listCache.get(ListResponseCache.key(Legislator.class.getSimpleName(), storageBucket, index, ascending, pageSize, startKey, sortKey),
+    			() -> ddb.query(Legislator.class, pageSize, index, ascending, startKey, sortKey, storageBucket, Legislator.LIST_PROJECTION));
     }
     
     @GET
@@ -277,25 +320,15 @@ public class Lambda {
     	Integer year = _year == null ? Integer.valueOf(PoliscoreUtil.DEPLOYMENT_YEAR) : _year;
     	String storageBucket = Bill.ID_CLASS_PREFIX + "/" + LegislativeNamespace.US_CONGRESS.getNamespace() + "/" + CongressionalSession.fromYear(year).getNumber();
     	
-    	val cacheable = StringUtils.isBlank(startKey) && pageSize == 25 && StringUtils.isBlank(sortKey) && !index.startsWith(TRACKED_ISSUE_INDEX) && !index.equals(Persistable.OBJECT_BY_ISSUE_IMPACT_INDEX) && !index.equals(Persistable.OBJECT_BY_ISSUE_RATING_INDEX);
-    	val cacheKey = storageBucket + "-" + index + "-" + ascending.toString();
-    	if (cacheable && cachedBills.containsKey(cacheKey)) return cachedBills.get(cacheKey).stream().map(l -> (Persistable) l).toList();
-    	
-    	List<Bill> bills;
     	if (index.equals(Persistable.OBJECT_BY_ISSUE_IMPACT_INDEX) || index.equals(Persistable.OBJECT_BY_ISSUE_RATING_INDEX)) {
-    		storageBucket = BillIssueStat.getIndexPrimaryKey(TrackedIssue.valueOf(sortKey));
-    		sortKey = null;
-    		val bii = ddb.query(BillIssueStat.class, pageSize, index, ascending, startKey, sortKey, storageBucket);
-    		return bii.stream().map(l -> (Persistable) l).toList();
-    	} else {
-    		bills = ddb.query(Bill.class, pageSize, index, ascending, startKey, sortKey, storageBucket);
-    	}
-    	
-    	if (cacheable) {
-    		cachedBills.put(cacheKey, bills);
+    		val issueBucket = BillIssueStat.getIndexPrimaryKey(TrackedIssue.valueOf(sortKey));
+    		
+    		return listCache.get(ListResponseCache.key(BillIssueStat.class.getSimpleName(), issueBucket, index, ascending, pageSize, startKey),
+    				() -> ddb.query(BillIssueStat.class, pageSize, index, ascending, startKey, null, issueBucket));
     	}
     	
-    	return bills.stream().map(l -> (Persistable) l).toList();
+    	return listCache.get(ListResponseCache.key(Bill.class.getSimpleName(), storageBucket, index, ascending, pageSize, startKey, sortKey),
+    			() -> ddb.query(Bill.class, pageSize, index, ascending, startKey, sortKey, storageBucket, Bill.LIST_PROJECTION));
     }
     
     @SuppressWarnings("unchecked")
@@ -318,17 +351,51 @@ public class Lambda {
     	return allBillsIndex;
     }
     
+    /**
+     * The bills index prebuilt into a TrigramIndex by the databuilder, or built from bills.index if it hasn't been generated yet.
+     */
+    @SneakyThrows
+    public TrigramIndex getBillsSearch() {
+    	if (billsSearch == null) {
+    		try (val is = Lambda.class.getResourceAsStream("/bills.search")) {
+    			billsSearch = is == null ? TrigramIndex.build(getBillsIndex()) : TrigramIndex.read(new BufferedInputStream(is));
+    		}
+    	}
+    	
+    	return billsSearch;
+    }
+    
     @GET
     @Path("/queryBills")
     public List<List<String>> queryBills(@RestQuery("text") String text) {
-    	val bills = new ArrayList<List<String>>(getBillsIndex());
+    	val search = getBillsSearch();
+    	val results = new ArrayList<List<String>>();
     	
 //    	bills.addAll(Arrays.asList(TrackedIssue.values()).stream().map(i -> Arrays.asList(TRACKED_ISSUE_INDEX + i.name(), i.getName() + " (issue)")).toList());
     	
-    	return bills.stream()
-    			.filter(b -> b.get(1).toLowerCase().trim().contains(text.toLowerCase().trim()) || b.get(0).toLowerCase().trim().contains(text.toLowerCase().trim()))
-    			.sorted((a,b) -> LevenshteinDistance.getDefaultInstance().apply(a.get(1), text) - LevenshteinDistance.getDefaultInstance().apply(b.get(1), text))
-    			.limit(30)
-    			.collect(Collectors.toList());
+    	for (val i : search.query(text, 30)) {
+    		results.add(Arrays.asList(search.getIds()[i], search.getNames()[i]));
+    	}
+    	
+    	return results;
+    }
+    
+    /**
+     * Ranked full-text search over bill and legislator interpretations, paged the same way as getLegislatorInteractions. Returns empty pages
+     * until the databuilder's WebappDataGenerator has generated the interpretations.search resource.
+     */
+    @GET
+    @Path("/search")
+    public Page<SearchHit> search(@RestQuery("text") String text, @RestQuery("pageSize") Integer _pageSize, @RestQuery("exclusiveStartKey") Integer _exclusiveStartKey) {
+    	var pageSize = _pageSize == null ? 25 : _pageSize;
+    	int exclusiveStartKey = (_exclusiveStartKey == null) ? -1 : _exclusiveStartKey;
+    	
+    	val hits = search.search(text, exclusiveStartKey + 1, pageSize + 1);
+    	
+    	Page<SearchHit> page = new Page<SearchHit>();
+    	page.setExclusiveStartKey(exclusiveStartKey);
+    	page.setHasMoreData(hits.size() > pageSize);
+    	page.setData(hits.size() > pageSize ? hits.subList(0, pageSize) : hits);
+    	return page;
     }
 }
@@ -0,0 +1,63 @@
+package us.poliscore.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+import io.quarkus.logging.Log;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import us.poliscore.model.DataVersion;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+import us.poliscore.service.storage.DynamoDbPersistenceService.DdbPage;
+
+/**
+ * Tracks the DataVersion marker which the DatabaseBuilder bumps at the end of every build, for the caches which have to drop what they hold
+ * when the data changes. The marker is a single GetItem, read at most once per CHECK_INTERVAL, and every listener is told the current
+ * version after each read (which is also when they log their stats).
+ */
+@ApplicationScoped
+public class DataVersionService {
+	
+	public static Duration CHECK_INTERVAL = Duration.ofSeconds(30);
+	
+	@Inject
+	private DynamoDbPersistenceService ddb;
+	
+	private volatile long version = -1;
+	
+	private volatile long checkedAt = 0;
+	
+	private final List<LongConsumer> listeners = new CopyOnWriteArrayList<LongConsumer>();
+	
+	public void onCheck(LongConsumer listener)
+	{
+		listeners.add(listener);
+	}
+	
+	/**
+	 * The current data version, re-read from DynamoDb once CHECK_INTERVAL has passed. 0 if no build has written the marker yet.
+	 */
+	public long getVersion()
+	{
+		if (System.currentTimeMillis() - checkedAt < CHECK_INTERVAL.toMillis()) return version;
+		
+		synchronized (this) {
+			if (System.currentTimeMillis() - checkedAt < CHECK_INTERVAL.toMillis()) return version;
+			
+			try {
+				version = ddb.get(DataVersion.ID, DataVersion.class, DdbPage.HEAD).map(DataVersion::getVersion).orElse(0L);
+			} catch (Exception e) {
+				// Keep serving what we have and try again next interval
+				Log.error("Unable to read the data version", e);
+			}
+			
+			checkedAt = System.currentTimeMillis();
+			
+			if (version != -1) listeners.forEach(l -> l.accept(version));
+			
+			return version;
+		}
+	}
+}
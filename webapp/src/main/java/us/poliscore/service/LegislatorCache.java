@@ -0,0 +1,253 @@
+package us.poliscore.service;
+
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.Data;
+import lombok.Getter;
+import lombok.val;
+import us.poliscore.LegislatorBillLinker;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.LegislatorBillInteraction;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+import us.poliscore.service.storage.DynamoDbPersistenceService.DdbPage;
+import us.poliscore.service.storage.SingleFlight;
+
+/**
+ * Keeps decoded legislators for as long as the container stays warm, so that the back to back getLegislator and getLegislatorInteractions
+ * calls of a legislator page, and every page of scrolling after them, are served without going back to DynamoDb or decoding anything.
+ *
+ * A legislator is cached as its head item, with the full interactions list and the precomputed interaction orders each loaded the first
+ * time a request needs them. Everything cached is shared between requests and must not be modified.
+ *
+ * The cache is bounded to MAX_BYTES of estimated decoded size, evicting the least recently used legislators past that, and is cleared when
+ * the data version changes (see DataVersionService).
+ */
+@ApplicationScoped
+public class LegislatorCache {
+	
+	public static long MAX_BYTES = 64L * 1024 * 1024;
+	
+	@Inject
+	private DynamoDbPersistenceService ddb;
+	
+	@Inject
+	private DataVersionService versions;
+	
+	/**
+	 * Legislators by id, in access order. Guards totalBytes, version and each legislator's recordedWeight.
+	 */
+	private final LinkedHashMap<String, CachedLegislator> entries = new LinkedHashMap<String, CachedLegislator>(16, 0.75f, true);
+	
+	private long totalBytes = 0;
+	
+	/**
+	 * The data version the entries were loaded at.
+	 */
+	private long version = -1;
+	
+	private final SingleFlight loads = new SingleFlight();
+	
+	@Getter
+	private final CacheStats stats = new CacheStats();
+	
+	@Data
+	public static class CacheStats {
+		private final AtomicLong hits = new AtomicLong();
+		
+		private final AtomicLong misses = new AtomicLong();
+		
+		private final AtomicLong listLoads = new AtomicLong();
+		
+		private final AtomicLong evictions = new AtomicLong();
+		
+		private final AtomicLong invalidations = new AtomicLong();
+		
+		public double getHitRate()
+		{
+			val total = hits.get() + misses.get();
+			return total == 0 ? 0 : hits.get() / (double) total;
+		}
+	}
+	
+	/**
+	 * A legislator's head item, plus its interactions and their orders once loaded. The head's own interactions are always empty, and its
+	 * interactions preview is null for legislators written before previews existed.
+	 */
+	public class CachedLegislator {
+		@Getter
+		private final Legislator head;
+		
+		private LegislatorBillInteractionList interactions;
+		
+		private Optional<LegislatorInteractionOrders> orders;
+		
+		/**
+		 * The weight this legislator is counted at in totalBytes.
+		 */
+		private long recordedWeight;
+		
+		private CachedLegislator(Legislator head, LegislatorBillInteractionList interactions)
+		{
+			this.head = head;
+			this.interactions = interactions;
+		}
+		
+		/**
+		 * Every interaction, in the order they're stored.
+		 */
+		public synchronized LegislatorBillInteractionList getInteractions()
+		{
+			if (interactions == null) {
+				stats.listLoads.incrementAndGet();
+				interactions = ddb.<Legislator, LegislatorBillInteraction>streamList(head.getId(), Legislator.class, "interactions").collect(Collectors.toCollection(LegislatorBillInteractionList::new));
+				reweigh(this);
+			}
+			
+			return interactions;
+		}
+		
+		/**
+		 * The precomputed interaction orders, if they were written and match the interactions.
+		 */
+		public synchronized Optional<LegislatorInteractionOrders> getOrders()
+		{
+			if (orders == null) {
+				orders = ddb.get(head.getId(), Legislator.class, DdbPage.of(Legislator.INTERACTION_ORDERS_PAGE)).map(Legislator::getInteractionOrders);
+				reweigh(this);
+			}
+			
+			return orders.filter(o -> o.getSize() == getInteractions().size());
+		}
+		
+		/**
+		 * A rough estimate of the decoded size, in the same terms as MemoryObjectService's legislator weigher.
+		 */
+		private synchronized long weight()
+		{
+			long weight = 4096 + (head.getInteractionsPreview() == null ? 0 : 768L * head.getInteractionsPreview().size());
+			
+			if (interactions != null) weight += 768L * interactions.size();
+			if (orders != null && orders.isPresent()) weight += 4L * orders.get().getOrders().values().stream().mapToInt(o -> o.length).sum();
+			
+			return weight;
+		}
+	}
+	
+	@PostConstruct
+	void init()
+	{
+		versions.onCheck(this::checked);
+	}
+	
+	public Optional<CachedLegislator> get(String id)
+	{
+		val version = versions.getVersion();
+		
+		synchronized (entries) {
+			val cached = entries.get(id);
+			
+			if (cached != null)
+			{
+				stats.hits.incrementAndGet();
+				return Optional.of(cached);
+			}
+		}
+		
+		stats.misses.incrementAndGet();
+		
+		return loads.load(id, () -> load(id, version));
+	}
+	
+	private Optional<CachedLegislator> load(String id, long version)
+	{
+		val op = ddb.get(id, Legislator.class, DdbPage.HEAD);
+		if (op.isEmpty()) return Optional.empty();
+		
+		var head = op.get();
+		LegislatorBillInteractionList interactions = null;
+		
+		if (head.getInteractionsPreview() == null) {
+			// Written before interactions were stored in display order, so everything has to be loaded and the interpretation linked here
+			head = ddb.get(id, Legislator.class).orElseThrow();
+			LegislatorBillLinker.linkInterpBills(head);
+			
+			interactions = head.getInteractions();
+			head.setInteractions(new LegislatorBillInteractionList());
+		}
+		
+		val cached = new CachedLegislator(head, interactions);
+		val weight = cached.weight();
+		
+		synchronized (entries) {
+			// Don't cache a legislator which the build may have changed out from under us
+			if (version == this.version)
+			{
+				val previous = entries.put(id, cached);
+				if (previous != null) totalBytes -= previous.recordedWeight;
+				
+				cached.recordedWeight = weight;
+				totalBytes += weight;
+				evict();
+			}
+		}
+		
+		return Optional.of(cached);
+	}
+	
+	/**
+	 * Accounts for the interactions or orders a cached legislator has just loaded. Called holding the legislator's lock, so its weight is
+	 * taken before locking entries, and nothing holding entries ever takes a legislator's lock.
+	 */
+	private void reweigh(CachedLegislator cached)
+	{
+		val weight = cached.weight();
+		
+		synchronized (entries) {
+			if (entries.get(cached.getHead().getId()) != cached) return;
+			
+			totalBytes += weight - cached.recordedWeight;
+			cached.recordedWeight = weight;
+			evict();
+		}
+	}
+	
+	private void evict()
+	{
+		val it = entries.entrySet().iterator();
+		
+		while (totalBytes > MAX_BYTES && it.hasNext()) {
+			val e = it.next();
+			
+			totalBytes -= e.getValue().recordedWeight;
+			it.remove();
+			stats.evictions.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Clears the cache if the data version has changed.
+	 */
+	private void checked(long latest)
+	{
+		synchronized (entries) {
+			if (latest != version)
+			{
+				if (version != -1) stats.invalidations.addAndGet(entries.size());
+				entries.clear();
+				totalBytes = 0;
+				version = latest;
+			}
+			
+			Log.info("Legislator cache stats: " + stats + ", hit rate " + String.format("%.2f", stats.getHitRate()) + ", " + loads + ", " + (totalBytes / (1024 * 1024)) + " MB cached at data version " + version);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package us.poliscore.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.val;
+import us.poliscore.model.Persistable;
+import us.poliscore.service.storage.SingleFlight;
+
+/**
+ * Caches the results of the list endpoints for as long as the container stays warm, keyed on the full normalized query (see key).
+ *
+ * Entries are dropped once the DataVersion marker changes (see DataVersionService), which the DatabaseBuilder bumps at the end of every
+ * build. Entries also expire after TTL as a backstop, and the cache is bounded to MAX_WEIGHT objects across all entries, evicting the
+ * least recently used entries past that. Concurrent misses on the same key share one query.
+ */
+@ApplicationScoped
+public class ListResponseCache {
+	
+	public static long MAX_WEIGHT = 20_000;
+	
+	public static Duration TTL = Duration.ofHours(12);
+	
+	@Inject
+	private DataVersionService versions;
+	
+	/**
+	 * Entries by key, in access order. Guards totalWeight.
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private long totalWeight = 0;
+	
+	/**
+	 * The data version the entries were loaded at.
+	 */
+	private long version = -1;
+	
+	private final SingleFlight loads = new SingleFlight();
+	
+	@Getter
+	private final CacheStats stats = new CacheStats();
+	
+	@Data
+	public static class CacheStats {
+		private final AtomicLong hits = new AtomicLong();
+		
+		private final AtomicLong misses = new AtomicLong();
+		
+		private final AtomicLong expirations = new AtomicLong();
+		
+		private final AtomicLong evictions = new AtomicLong();
+		
+		private final AtomicLong invalidations = new AtomicLong();
+		
+		public double getHitRate()
+		{
+			val total = hits.get() + misses.get();
+			return total == 0 ? 0 : hits.get() / (double) total;
+		}
+	}
+	
+	@AllArgsConstructor
+	private static class Entry {
+		private final List<Persistable> value;
+		
+		private final long version;
+		
+		private final long expiresAt;
+		
+		private long weight() { return value.size() + 1; }
+	}
+	
+	@PostConstruct
+	void init()
+	{
+		versions.onCheck(this::checked);
+	}
+	
+	/**
+	 * Builds a cache key out of every parameter which affects a query's results. Null and blank parameters are normalized to the same key.
+	 */
+	public static String key(Object... parts)
+	{
+		return Stream.of(parts).map(p -> p == null ? "" : p.toString().trim()).collect(Collectors.joining("|"));
+	}
+	
+	/**
+	 * The cached result for the key if it's still current, otherwise the result of the loader, which is then cached.
+	 */
+	public List<Persistable> get(String key, Supplier<List<? extends Persistable>> loader)
+	{
+		val version = versions.getVersion();
+		
+		synchronized (entries) {
+			val entry = entries.get(key);
+			
+			if (entry != null && entry.version == version && entry.expiresAt > System.currentTimeMillis())
+			{
+				stats.hits.incrementAndGet();
+				return entry.value;
+			}
+			
+			if (entry != null)
+			{
+				if (entry.version == version) stats.expirations.incrementAndGet();
+				remove(key);
+			}
+		}
+		
+		stats.misses.incrementAndGet();
+		
+		return loads.load(key, () -> {
+			val entry = new Entry(List.copyOf(loader.get()), version, System.currentTimeMillis() + TTL.toMillis());
+			
+			synchronized (entries) {
+				// Don't cache a result which the build may have changed out from under us
+				if (version == this.version) put(key, entry);
+			}
+			
+			return entry.value;
+		});
+	}
+	
+	/**
+	 * Clears the cache if the data version has changed.
+	 */
+	private void checked(long latest)
+	{
+		synchronized (entries) {
+			if (latest != version)
+			{
+				if (version != -1) stats.invalidations.addAndGet(entries.size());
+				entries.clear();
+				totalWeight = 0;
+				version = latest;
+			}
+			
+			Log.info("List response cache stats: " + stats + ", hit rate " + String.format("%.2f", stats.getHitRate()) + ", " + loads + ", " + totalWeight + " objects cached at data version " + version);
+		}
+	}
+	
+	private void put(String key, Entry entry)
+	{
+		remove(key);
+		
+		entries.put(key, entry);
+		totalWeight += entry.weight();
+		
+		val it = entries.entrySet().iterator();
+		
+		while (totalWeight > MAX_WEIGHT && it.hasNext()) {
+			val e = it.next();
+			
+			// A single result too large to fit is still served, just not kept
+			totalWeight -= e.getValue().weight();
+			it.remove();
+			stats.evictions.incrementAndGet();
+		}
+	}
+	
+	private void remove(String key)
+	{
+		val previous = entries.remove(key);
+		if (previous != null) totalWeight -= previous.weight();
+	}
+}
@@ -0,0 +1,71 @@
+package us.poliscore.service;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.SneakyThrows;
+import lombok.val;
+import us.poliscore.search.FullTextIndex;
+import us.poliscore.search.SearchHit;
+
+/**
+ * Searches the full-text index of bill and legislator interpretations which the databuilder packages as a resource. The index is memory mapped
+ * when the container starts rather than read onto the heap. A resource inside the jar or native image can't be mapped where it is, so it's
+ * copied out to a temp file first.
+ */
+@Startup
+@ApplicationScoped
+public class SearchService {
+	
+	public static final String RESOURCE = "/interpretations.search";
+	
+	private FullTextIndex index;
+	
+	@PostConstruct
+	@SneakyThrows
+	void init()
+	{
+		val url = SearchService.class.getResource(RESOURCE);
+		
+		if (url == null) {
+			Log.warn("No full-text index at " + RESOURCE + ", searches will find nothing");
+			return;
+		}
+		
+		Path path;
+		if ("file".equals(url.getProtocol())) {
+			path = Path.of(url.toURI());
+		} else {
+			path = Files.createTempFile("interpretations", ".search");
+			path.toFile().deleteOnExit();
+			
+			try (val is = url.openStream()) {
+				Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		
+		try (val channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			index = FullTextIndex.of(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+		
+		Log.info("Mapped a full-text index of " + index.size() + " documents");
+	}
+	
+	/**
+	 * The hits ranked start through start + count - 1, best first.
+	 */
+	public List<SearchHit> search(String text, int start, int count)
+	{
+		return index == null ? new ArrayList<SearchHit>() : index.search(text, start, count);
+	}
+}
@@ -0,0 +1,54 @@
+package us.poliscore.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+/**
+ * A data version which tests set directly, instead of it being read from DynamoDb. Listeners are told the version whenever it's set, as the
+ * real service tells them after each read.
+ */
+public class FakeDataVersionService extends DataVersionService {
+
+	private long version = -1;
+
+	private final List<LongConsumer> listeners = new ArrayList<LongConsumer>();
+
+	@Override
+	public void onCheck(LongConsumer listener)
+	{
+		listeners.add(listener);
+	}
+
+	@Override
+	public long getVersion()
+	{
+		return version;
+	}
+
+	public void setVersion(long version)
+	{
+		this.version = version;
+		listeners.forEach(l -> l.accept(version));
+	}
+
+	/**
+	 * Injects this as the cache's DataVersionService and registers the cache's listener, as the container would.
+	 */
+	@SneakyThrows
+	public <T> T attach(T cache)
+	{
+		val f = cache.getClass().getDeclaredField("versions");
+		f.setAccessible(true);
+		f.set(cache, this);
+
+		val init = cache.getClass().getDeclaredMethod("init");
+		init.setAccessible(true);
+		init.invoke(cache);
+
+		return cache;
+	}
+}
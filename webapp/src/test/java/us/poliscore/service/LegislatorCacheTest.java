@@ -0,0 +1,230 @@
+package us.poliscore.service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import us.poliscore.model.IssueStats;
+import us.poliscore.model.Persistable;
+import us.poliscore.model.TrackedIssue;
+import us.poliscore.model.legislator.Legislator;
+import us.poliscore.model.legislator.Legislator.LegislatorBillInteractionList;
+import us.poliscore.model.legislator.Legislator.LegislatorName;
+import us.poliscore.model.legislator.LegislatorBillInteraction.LegislatorBillSponsor;
+import us.poliscore.model.legislator.LegislatorInteractionOrders;
+import us.poliscore.service.storage.DynamoDbPersistenceService;
+
+public class LegislatorCacheTest {
+
+	/**
+	 * Serves legislators as their head item, interactions list and orders page, counting each kind of read.
+	 */
+	private static class FakeDdb extends DynamoDbPersistenceService {
+		private final Map<String, LegislatorBillInteractionList> interactions = new HashMap<String, LegislatorBillInteractionList>();
+
+		private final Map<String, LegislatorInteractionOrders> orders = new HashMap<String, LegislatorInteractionOrders>();
+
+		private final AtomicInteger heads = new AtomicInteger();
+
+		private final AtomicInteger lists = new AtomicInteger();
+
+		private final AtomicInteger orderReads = new AtomicInteger();
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T extends Persistable> Optional<T> get(String id, Class<T> clazz, DdbPage page)
+		{
+			if (!interactions.containsKey(id)) return Optional.empty();
+
+			val leg = legislator(id.substring(id.lastIndexOf('/') + 1));
+
+			if (page.equals(DdbPage.HEAD)) {
+				heads.incrementAndGet();
+
+				val preview = new LegislatorBillInteractionList();
+				preview.add(interactions.get(id).get(0));
+				leg.setInteractionsPreview(preview);
+			} else if (page.equals(DdbPage.of(Legislator.INTERACTION_ORDERS_PAGE))) {
+				orderReads.incrementAndGet();
+				leg.setInteractionOrders(orders.get(id));
+			} else {
+				throw new UnsupportedOperationException(page.getPage());
+			}
+
+			return Optional.of((T) leg);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T extends Persistable, E> Stream<E> streamList(String id, Class<T> clazz, String attribute)
+		{
+			lists.incrementAndGet();
+			return (Stream<E>) interactions.get(id).stream();
+		}
+	}
+
+	private final long maxBytes = LegislatorCache.MAX_BYTES;
+
+	private final FakeDdb ddb = new FakeDdb();
+
+	private final FakeDataVersionService versions = new FakeDataVersionService();
+
+	private LegislatorCache cache;
+
+	@BeforeEach
+	@SneakyThrows
+	public void setUp()
+	{
+		cache = new LegislatorCache();
+
+		val f = LegislatorCache.class.getDeclaredField("ddb");
+		f.setAccessible(true);
+		f.set(cache, ddb);
+
+		versions.attach(cache);
+		versions.setVersion(0);
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		LegislatorCache.MAX_BYTES = maxBytes;
+	}
+
+	private static Legislator legislator(String bioguideId)
+	{
+		val leg = new Legislator();
+		leg.setName(new LegislatorName("First", bioguideId, "First " + bioguideId));
+		leg.setSession(118);
+		leg.setBioguideId(bioguideId);
+		return leg;
+	}
+
+	/**
+	 * Adds a legislator with the given number of interactions and returns its id.
+	 */
+	private String add(String bioguideId, int count)
+	{
+		val id = legislator(bioguideId).getId();
+		val list = new LegislatorBillInteractionList();
+
+		for (int i = 0; i < count; ++i) {
+			val interact = new LegislatorBillSponsor();
+			interact.setLegId(id);
+			interact.setBillId("BIL/us/congress/118/hr/" + i);
+			interact.setDate(LocalDate.of(2023, 1, 1).plusDays(i));
+
+			val stats = new IssueStats();
+			stats.setStat(TrackedIssue.OverallBenefitToSociety, i);
+			interact.setIssueStats(stats);
+
+			list.add(interact);
+		}
+
+		ddb.interactions.put(id, list);
+		ddb.orders.put(id, LegislatorInteractionOrders.of(list));
+
+		return id;
+	}
+
+	@Test
+	public void testServesRepeatsFromTheCache()
+	{
+		val id = add("A000001", 3);
+
+		val first = cache.get(id).orElseThrow();
+		val second = cache.get(id).orElseThrow();
+
+		Assertions.assertSame(first, second);
+		Assertions.assertEquals(1, ddb.heads.get());
+		Assertions.assertEquals(1, cache.getStats().getHits().get());
+		Assertions.assertEquals(1, cache.getStats().getMisses().get());
+		Assertions.assertEquals(1, first.getHead().getInteractionsPreview().size());
+	}
+
+	@Test
+	public void testMissingLegislatorsAreNotCached()
+	{
+		val id = legislator("B000001").getId();
+
+		Assertions.assertTrue(cache.get(id).isEmpty());
+		Assertions.assertTrue(cache.get(id).isEmpty());
+		Assertions.assertEquals(0, cache.getStats().getHits().get());
+	}
+
+	@Test
+	public void testInteractionsAndOrdersLoadOnce()
+	{
+		val id = add("A000001", 5);
+		val cached = cache.get(id).orElseThrow();
+
+		Assertions.assertEquals(0, ddb.lists.get());
+		Assertions.assertEquals(5, cached.getInteractions().size());
+		Assertions.assertEquals(5, cached.getInteractions().size());
+		Assertions.assertEquals(1, ddb.lists.get());
+		Assertions.assertEquals(1, cache.getStats().getListLoads().get());
+
+		Assertions.assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, cached.getOrders().orElseThrow().get(Persistable.OBJECT_BY_DATE_INDEX, null).orElseThrow());
+		cached.getOrders();
+		Assertions.assertEquals(1, ddb.orderReads.get());
+	}
+
+	@Test
+	public void testOrdersForADifferentListAreIgnored()
+	{
+		val id = add("A000001", 5);
+
+		// Written by a build which got as far as the orders but not the interactions
+		ddb.orders.put(id, LegislatorInteractionOrders.of(ddb.interactions.get(id).subList(0, 4)));
+
+		Assertions.assertTrue(cache.get(id).orElseThrow().getOrders().isEmpty());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed()
+	{
+		// A head with a one interaction preview is estimated at 4096 + 768 bytes, so two fit
+		LegislatorCache.MAX_BYTES = 10_000;
+
+		val a = add("A000001", 1);
+		val b = add("A000002", 1);
+		val c = add("A000003", 1);
+
+		cache.get(a);
+		cache.get(b);
+		cache.get(a);
+		cache.get(c);
+		Assertions.assertEquals(3, ddb.heads.get());
+		Assertions.assertEquals(1, cache.getStats().getEvictions().get());
+
+		cache.get(a);
+		cache.get(c);
+		Assertions.assertEquals(3, ddb.heads.get());
+
+		cache.get(b);
+		Assertions.assertEquals(4, ddb.heads.get());
+	}
+
+	@Test
+	public void testNewDataVersionClearsEverything()
+	{
+		val id = add("A000001", 1);
+
+		cache.get(id);
+		versions.setVersion(1);
+		cache.get(id);
+
+		Assertions.assertEquals(2, ddb.heads.get());
+		Assertions.assertEquals(1, cache.getStats().getInvalidations().get());
+	}
+}
@@ -0,0 +1,160 @@
+package us.poliscore.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.val;
+import us.poliscore.model.Persistable;
+
+public class ListResponseCacheTest {
+
+	@Data
+	@AllArgsConstructor
+	public static class Item implements Persistable {
+		private String id;
+
+		private String storageBucket;
+	}
+
+	private final long maxWeight = ListResponseCache.MAX_WEIGHT;
+
+	private final Duration ttl = ListResponseCache.TTL;
+
+	private final FakeDataVersionService versions = new FakeDataVersionService();
+
+	private ListResponseCache cache;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp()
+	{
+		cache = versions.attach(new ListResponseCache());
+		versions.setVersion(0);
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		ListResponseCache.MAX_WEIGHT = maxWeight;
+		ListResponseCache.TTL = ttl;
+	}
+
+	/**
+	 * Gets a result of the given size, counting a load if the cache misses.
+	 */
+	private List<Persistable> get(String key, int size)
+	{
+		return cache.get(key, () -> {
+			loads.incrementAndGet();
+
+			val items = new ArrayList<Item>();
+			for (int i = 0; i < size; ++i) {
+				items.add(new Item(key + "/" + i, key));
+			}
+
+			return items;
+		});
+	}
+
+	@Test
+	public void testServesRepeatsFromTheCache()
+	{
+		val first = get("a", 3);
+		val second = get("a", 3);
+
+		Assertions.assertEquals(1, loads.get());
+		Assertions.assertSame(first, second);
+		Assertions.assertEquals(1, cache.getStats().getHits().get());
+		Assertions.assertEquals(1, cache.getStats().getMisses().get());
+	}
+
+	@Test
+	public void testKeysNormalizeBlankParameters()
+	{
+		Assertions.assertEquals(ListResponseCache.key("a", null, 5), ListResponseCache.key(" a ", "", "5"));
+		Assertions.assertNotEquals(ListResponseCache.key("a", "b"), ListResponseCache.key("a", "c"));
+	}
+
+	@Test
+	public void testNewDataVersionClearsEverything()
+	{
+		get("a", 3);
+		get("b", 3);
+
+		versions.setVersion(1);
+		get("a", 3);
+		get("b", 3);
+
+		Assertions.assertEquals(4, loads.get());
+		Assertions.assertEquals(2, cache.getStats().getInvalidations().get());
+	}
+
+	@Test
+	public void testResultLoadedAcrossAVersionChangeIsNotKept()
+	{
+		// The build finishes while the query is running, so its result may be from either version
+		val result = cache.get("a", () -> {
+			loads.incrementAndGet();
+			versions.setVersion(1);
+			return List.of(new Item("a/0", "a"));
+		});
+		Assertions.assertEquals(1, result.size());
+
+		get("a", 1);
+		get("a", 1);
+		Assertions.assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed()
+	{
+		// A result weighs its size plus one
+		ListResponseCache.MAX_WEIGHT = 10;
+
+		get("a", 4);
+		get("b", 4);
+		get("a", 4);
+		get("c", 4);
+		Assertions.assertEquals(3, loads.get());
+		Assertions.assertEquals(1, cache.getStats().getEvictions().get());
+
+		get("a", 4);
+		get("c", 4);
+		Assertions.assertEquals(3, loads.get());
+
+		get("b", 4);
+		Assertions.assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void testResultTooLargeToKeepIsStillServed()
+	{
+		ListResponseCache.MAX_WEIGHT = 10;
+
+		Assertions.assertEquals(20, get("a", 20).size());
+		Assertions.assertEquals(20, get("a", 20).size());
+		Assertions.assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testEntriesExpire()
+	{
+		ListResponseCache.TTL = Duration.ZERO;
+
+		get("a", 1);
+		get("a", 1);
+
+		Assertions.assertEquals(2, loads.get());
+		Assertions.assertEquals(1, cache.getStats().getExpirations().get());
+	}
+}